@@ -43,6 +43,16 @@ repositories {
     mavenCentral()
 }
 
+// JMH benchmarks live in their own source set so that they can reuse the test utilities and data sets without
+// being run as part of the normal test suite
+val jmh: SourceSet by sourceSets.creating {
+    compileClasspath += sourceSets["main"].output + sourceSets["test"].output
+    runtimeClasspath += sourceSets["main"].output + sourceSets["test"].output
+}
+
+configurations["jmhImplementation"].extendsFrom(configurations["testImplementation"])
+configurations["jmhRuntimeOnly"].extendsFrom(configurations["testRuntimeOnly"])
+
 dependencies {
     implementation("com.google.guava:guava:19.0")
     implementation("com.jakewharton.picnic:picnic:0.5.0")
@@ -61,6 +71,9 @@ dependencies {
             type = "jar"
         }
     }
+
+    "jmhImplementation"("org.openjdk.jmh:jmh-core:1.37")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:1.37")
 }
 
 tasks.withType<Test> {
@@ -71,6 +84,24 @@ tasks.withType<Test> {
     }
 }
 
+// Run with e.g. ./gradlew jmh -PjmhArgs="LatticeFillBenchmark -p engine=BASIC" to select benchmarks and parameters
+tasks.register<JavaExec>("jmh") {
+    description = "Runs the JMH benchmarks, reporting throughput and GC allocation rates"
+    group = "verification"
+    classpath = jmh.runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    // some data sets are UTF-8, which is not the default charset everywhere; forks inherit this setting
+    jvmArgs("-Dfile.encoding=UTF-8")
+    // benchmarks load the bundled data sets relative to the project root
+    workingDir = projectDir
+    val resultsFile = file("$buildDir/reports/jmh/results.csv")
+    val extraArgs = (project.findProperty("jmhArgs") as String?)?.split(" ")?.filter { it.isNotBlank() } ?: emptyList()
+    args = listOf("-prof", "gc", "-rf", "csv", "-rff", resultsFile.path) + extraArgs
+    doFirst {
+        resultsFile.parentFile.mkdirs()
+    }
+}
+
 testlogger {
     theme = com.adarshr.gradle.testlogger.theme.ThemeType.MOCHA_PARALLEL
     showStandardStreams = true
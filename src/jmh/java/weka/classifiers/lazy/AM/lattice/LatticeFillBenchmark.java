@@ -0,0 +1,108 @@
+package weka.classifiers.lazy.AM.lattice;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import weka.classifiers.lazy.AM.TestUtils;
+import weka.classifiers.lazy.AM.data.SubcontextList;
+import weka.classifiers.lazy.AM.data.Supracontext;
+import weka.classifiers.lazy.AM.label.LabelPartitioning;
+import weka.classifiers.lazy.AM.label.Labeler;
+import weka.classifiers.lazy.AM.label.LabelerFactory;
+import weka.classifiers.lazy.AM.label.MissingDataCompare;
+import weka.classifiers.lazy.AM.label.PartitionStrategy;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Measures how quickly each {@link Lattice} implementation can be filled with the subcontexts of a single test item.
+ * The first item of each data set is classified using the remaining items as exemplars, after the data set has been
+ * reduced to the number of features given after the slash in {@link #item}; items without a slash use the whole data
+ * set. Only reductions to fewer features than the data set has are listed, so that no benchmark is run twice.
+ * <p>
+ * Labels of fewer than 5 features have a single partition, so the distributed lattice splits them in two instead.
+ *
+ * Run via {@code ./gradlew jmh}, which also enables the GC profiler so that allocation rates are reported next to the
+ * throughput of each engine.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LatticeFillBenchmark {
+
+	public enum Engine {
+		BASIC(BasicLattice::new),
+		DISTRIBUTED(() -> new DistributedLattice(ForkJoinPool.commonPool(), LatticeFillBenchmark::atLeastTwoPartitions)),
+		// only the first label partition is filled, which is what each DistributedLattice worker does
+		HETEROGENEOUS(() -> new HeterogeneousLattice(0)),
+		JOHNSEN_JOHANSSON(() -> new JohnsenJohanssonLattice(TestUtils.getDeterministicRandomProvider())),
+		SPARSE(SparseLattice::new);
+
+		private final Supplier<Lattice> latticeSupplier;
+
+		Engine(Supplier<Lattice> latticeSupplier) {
+			this.latticeSupplier = latticeSupplier;
+		}
+	}
+
+	@Param({TestUtils.CHAPTER_3_DATA,
+			TestUtils.FINNVERB + "/4", TestUtils.FINNVERB + "/8", TestUtils.FINNVERB,
+			TestUtils.SPANISH_STRESS + "/4", TestUtils.SPANISH_STRESS + "/8", TestUtils.SPANISH_STRESS,
+			TestUtils.SOYBEAN + "/4", TestUtils.SOYBEAN + "/8", TestUtils.SOYBEAN + "/12", TestUtils.SOYBEAN + "/16",
+			TestUtils.AUDIOLOGY + "/4", TestUtils.AUDIOLOGY + "/8", TestUtils.AUDIOLOGY + "/12", TestUtils.AUDIOLOGY + "/16"})
+	public String item;
+
+	@Param
+	public Engine engine;
+
+	private SubcontextList subList;
+
+	@Setup(Level.Trial)
+	public void createSubcontextList() throws Exception {
+		String[] parts = item.split("/");
+		String dataSet = parts[0];
+		Instances data = TestUtils.getDataSet(dataSet);
+		if (parts.length > 1) {
+			// the class is the last attribute; keep it along with the first features
+			int numFeatures = data.numAttributes() - 1;
+			data = TestUtils.getReducedDataSet(dataSet, (Integer.parseInt(parts[1]) + 1) + "-" + numFeatures);
+		}
+		Instance test = data.remove(0);
+
+		Labeler labeler = new LabelerFactory.CardinalityBasedLabelerFactory().createLabeler(test, false, MissingDataCompare.VARIABLE);
+		subList = new SubcontextList(labeler, data, false);
+	}
+
+	/**
+	 * @return the partitions of the labeler, or two partitions if the labeler has only one
+	 */
+	private static LabelPartitioning atLeastTwoPartitions(SubcontextList subList) {
+		LabelPartitioning partitioning = PartitionStrategy.CONTIGUOUS.partition(subList);
+		if (partitioning.numPartitions() > 1) return partitioning;
+		return LabelPartitioning.balanced(subList.getCardinality(), 2);
+	}
+
+	@Benchmark
+	public Set<Supracontext> fill() throws Exception {
+		Lattice lattice = engine.latticeSupplier.get();
+		lattice.fill(subList);
+		return lattice.getSupracontexts();
+	}
+}
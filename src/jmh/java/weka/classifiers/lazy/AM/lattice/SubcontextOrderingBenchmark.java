@@ -0,0 +1,90 @@
+package weka.classifiers.lazy.AM.lattice;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import weka.classifiers.lazy.AM.TestUtils;
+import weka.classifiers.lazy.AM.data.SubcontextList;
+import weka.classifiers.lazy.AM.data.SubcontextOrdering;
+import weka.classifiers.lazy.AM.data.Supracontext;
+import weka.classifiers.lazy.AM.label.Labeler;
+import weka.classifiers.lazy.AM.label.LabelerFactory;
+import weka.classifiers.lazy.AM.label.MissingDataCompare;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Measures how the order in which subcontexts are added affects the time to fill the lattices that can detect
+ * heterogeneity early. The test item is the same as in {@link LatticeFillBenchmark}, and each data set is reduced to
+ * its first {@link #cardinality} features if it has more.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SubcontextOrderingBenchmark {
+
+	public enum Engine {
+		BASIC(BasicLattice::new),
+		// only the first label partition is filled, which is what each DistributedLattice worker does
+		HETEROGENEOUS(() -> new HeterogeneousLattice(0));
+
+		private final Supplier<Lattice> latticeSupplier;
+
+		Engine(Supplier<Lattice> latticeSupplier) {
+			this.latticeSupplier = latticeSupplier;
+		}
+	}
+
+	@Param({TestUtils.FINNVERB, TestUtils.SOYBEAN, TestUtils.SPANISH_STRESS})
+	public String dataSet;
+
+	@Param({"12", "16"})
+	public int cardinality;
+
+	@Param
+	public Engine engine;
+
+	@Param
+	public SubcontextOrdering ordering;
+
+	private SubcontextList subList;
+
+	@Setup(Level.Trial)
+	public void createSubcontextList() throws Exception {
+		Instances data = TestUtils.getDataSet(dataSet);
+		// the class is the last attribute; keep it along with the first features
+		int numFeatures = data.numAttributes() - 1;
+		if (cardinality < numFeatures) {
+			data = TestUtils.getReducedDataSet(dataSet, (cardinality + 1) + "-" + numFeatures);
+		}
+		Instance test = data.remove(0);
+
+		Labeler labeler = new LabelerFactory.CardinalityBasedLabelerFactory().createLabeler(test, false, MissingDataCompare.VARIABLE);
+		subList = new SubcontextList(labeler, data, false);
+		subList.reorder(ordering, new Random(0));
+	}
+
+	@Benchmark
+	public Set<Supracontext> fill() throws Exception {
+		Lattice lattice = engine.latticeSupplier.get();
+		lattice.fill(subList);
+		return lattice.getSupracontexts();
+	}
+}
@@ -177,10 +177,8 @@ public class AnalogicalModelingOutput extends AbstractOutput {
         withMissing.setDataset(inst.dataset());
         inst = preProcessInstance(withMissing, classifier);
 
-        // when you call the AM classifier, it stores the results for later
-        double[] distribution = am.distributionForInstance(inst);
-
-        AMResults results = am.getResults();
+        AMResults results = am.classifyWithResults(inst);
+        double[] distribution = am.getDistribution(results);
 
         if (getSummary()) {
             append("Classifying instance ");
@@ -0,0 +1,308 @@
+package weka.classifiers.lazy.AM;
+
+import weka.classifiers.lazy.AM.lattice.FillRecorder;
+import weka.classifiers.lazy.AM.lattice.LatticePlan.Engine;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts and latency histograms for the phases of classification, along with the sizes of the structures built along
+ * the way. {@link weka.classifiers.lazy.AnalogicalModeling} records into one of these for every test item it
+ * classifies, and can register it as an MBean (see {@link AMStatsMXBean}) so that it can be watched with JMX tools.
+ * <p>
+ * Histograms have one bucket per power of 2, so percentiles are accurate to within a factor of 2. Recording is
+ * thread-safe and does not block.
+ */
+public class AMStats implements AMStatsMXBean, FillRecorder {
+	/**
+	 * The timed phases of classification
+	 */
+	public enum Phase {
+		/**
+		 * Creating the labeler for the test item
+		 */
+		LABELER,
+		/**
+		 * Labeling the training exemplars and grouping them into subcontexts
+		 */
+		SUBCONTEXT_LIST,
+		/**
+		 * Estimating the cost of each lattice engine and choosing one
+		 */
+		PLAN,
+		/**
+		 * Removing the subcontexts which can only be in heterogeneous supracontexts, when enabled for an exact lattice
+		 */
+		PRUNE,
+		/**
+		 * Filling a {@link weka.classifiers.lazy.AM.lattice.BasicLattice}
+		 */
+		BASIC_FILL,
+		/**
+		 * Filling a {@link weka.classifiers.lazy.AM.lattice.DistributedLattice}, including its partitions and products
+		 */
+		DISTRIBUTED_FILL,
+		/**
+		 * Filling a {@link weka.classifiers.lazy.AM.lattice.JohnsenJohanssonLattice}
+		 */
+		JOHNSEN_JOHANSSON_FILL,
+		/**
+		 * Filling one label partition of a distributed lattice
+		 */
+		PARTITION_FILL,
+		/**
+		 * Combining two sets of supracontexts of a distributed lattice
+		 */
+		PRODUCT,
+		/**
+		 * Computing the analogical set and class probabilities from the filled lattice
+		 */
+		RESULTS;
+
+		/**
+		 * @return the phase of filling a lattice of the given engine
+		 */
+		public static Phase fill(Engine engine) {
+			switch (engine) {
+				case DISTRIBUTED:
+					return DISTRIBUTED_FILL;
+				case JOHNSEN_JOHANSSON:
+					return JOHNSEN_JOHANSSON_FILL;
+				default:
+					return BASIC_FILL;
+			}
+		}
+	}
+
+	private final LongAdder classifications = new LongAdder();
+	private final Map<Phase, Histogram> latencies = new EnumMap<>(Phase.class);
+	private final Histogram subcontexts = new Histogram();
+	private final Histogram supracontexts = new Histogram();
+	private final Histogram productSizes = new Histogram();
+	private final LongAdder heterogeneousPrunes = new LongAdder();
+
+	public AMStats() {
+		for (Phase phase : Phase.values()) {
+			latencies.put(phase, new Histogram());
+		}
+	}
+
+	/**
+	 * Records the time taken by one execution of a phase.
+	 */
+	public void record(Phase phase, long nanos) {
+		latencies.get(phase).add(nanos);
+	}
+
+	/**
+	 * Records the sizes of the structures built for one classified test item.
+	 */
+	public void recordClassification(int numSubcontexts, int numSupracontexts) {
+		classifications.increment();
+		subcontexts.add(numSubcontexts);
+		supracontexts.add(numSupracontexts);
+	}
+
+	@Override
+	public void partitionFilled(long nanos, int numSupracontexts) {
+		record(Phase.PARTITION_FILL, nanos);
+	}
+
+	@Override
+	public void productComputed(long nanos, int numSupracontexts) {
+		record(Phase.PRODUCT, nanos);
+		productSizes.add(numSupracontexts);
+	}
+
+	@Override
+	public void heterogeneousPruned(long count) {
+		heterogeneousPrunes.add(count);
+	}
+
+	@Override
+	public long getClassifications() {
+		return classifications.sum();
+	}
+
+	@Override
+	public Map<String, Snapshot> getPhaseLatencies() {
+		Map<String, Snapshot> snapshots = new LinkedHashMap<>();
+		for (Map.Entry<Phase, Histogram> e : latencies.entrySet()) {
+			snapshots.put(e.getKey().name().toLowerCase(Locale.ROOT), e.getValue().snapshot());
+		}
+		return snapshots;
+	}
+
+	/**
+	 * @return the time taken by the given phase, in nanoseconds
+	 */
+	public Snapshot getLatency(Phase phase) {
+		return latencies.get(phase).snapshot();
+	}
+
+	@Override
+	public Snapshot getSubcontexts() {
+		return subcontexts.snapshot();
+	}
+
+	@Override
+	public Snapshot getSupracontexts() {
+		return supracontexts.snapshot();
+	}
+
+	@Override
+	public Snapshot getProductSizes() {
+		return productSizes.snapshot();
+	}
+
+	@Override
+	public long getHeterogeneousPrunes() {
+		return heterogeneousPrunes.sum();
+	}
+
+	@Override
+	public void reset() {
+		classifications.reset();
+		latencies.values().forEach(Histogram::reset);
+		subcontexts.reset();
+		supracontexts.reset();
+		productSizes.reset();
+		heterogeneousPrunes.reset();
+	}
+
+	/**
+	 * Histogram of non-negative values with one bucket per power of 2: bucket 0 holds 0, and bucket i holds values
+	 * from 2<sup>i-1</sup> to 2<sup>i</sup>-1.
+	 */
+	private static class Histogram {
+		private final AtomicLongArray buckets = new AtomicLongArray(Long.SIZE);
+		private final LongAdder sum = new LongAdder();
+		private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+		void add(long value) {
+			value = Math.max(0, value);
+			buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(value));
+			sum.add(value);
+			max.accumulate(value);
+		}
+
+		void reset() {
+			for (int i = 0; i < buckets.length(); i++) {
+				buckets.set(i, 0);
+			}
+			sum.reset();
+			max.reset();
+		}
+
+		Snapshot snapshot() {
+			long[] counts = new long[buckets.length()];
+			for (int i = 0; i < counts.length; i++) {
+				counts[i] = buckets.get(i);
+			}
+			return new Snapshot(counts, sum.sum(), max.get());
+		}
+	}
+
+	/**
+	 * Values of a histogram at one point in time.
+	 */
+	public static class Snapshot {
+		private final long[] buckets;
+		private final long count;
+		private final long sum;
+		private final long max;
+
+		Snapshot(long[] buckets, long sum, long max) {
+			this.buckets = buckets;
+			long total = 0;
+			for (long bucket : buckets) {
+				total += bucket;
+			}
+			this.count = total;
+			this.sum = sum;
+			this.max = max;
+		}
+
+		/**
+		 * @return the number of recorded values
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * @return the sum of the recorded values
+		 */
+		public long getSum() {
+			return sum;
+		}
+
+		/**
+		 * @return the largest recorded value
+		 */
+		public long getMax() {
+			return max;
+		}
+
+		/**
+		 * @return the mean of the recorded values, or 0 if there are none
+		 */
+		public double getMean() {
+			return count == 0 ? 0 : sum / (double) count;
+		}
+
+		/**
+		 * @return an upper bound on the median
+		 */
+		public long getP50() {
+			return percentile(0.5);
+		}
+
+		/**
+		 * @return an upper bound on the 90th percentile
+		 */
+		public long getP90() {
+			return percentile(0.9);
+		}
+
+		/**
+		 * @return an upper bound on the 99th percentile
+		 */
+		public long getP99() {
+			return percentile(0.99);
+		}
+
+		/**
+		 * @return the number of values in each bucket; bucket 0 holds 0, and bucket i holds values from
+		 * 2<sup>i-1</sup> to 2<sup>i</sup>-1
+		 */
+		public long[] getBuckets() {
+			return buckets.clone();
+		}
+
+		private long percentile(double fraction) {
+			long rank = (long) Math.ceil(fraction * count);
+			long seen = 0;
+			for (int i = 0; i < buckets.length; i++) {
+				seen += buckets[i];
+				if (seen >= rank && seen > 0) {
+					// the upper bound of the bucket, but never more than the largest value
+					return Math.min(max, (1L << i) - 1);
+				}
+			}
+			return 0;
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.ROOT, "count=%d mean=%.1f p50=%d p90=%d p99=%d max=%d",
+					count, getMean(), getP50(), getP90(), getP99(), max);
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package weka.classifiers.lazy.AM;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link AMStats}, for monitoring a classifier through JMX.
+ */
+public interface AMStatsMXBean {
+	/**
+	 * @return the number of test items classified (not counting results taken from the cache)
+	 */
+	long getClassifications();
+
+	/**
+	 * @return the time taken by each phase of classification, in nanoseconds, keyed by phase name
+	 */
+	Map<String, AMStats.Snapshot> getPhaseLatencies();
+
+	/**
+	 * @return the number of subcontexts per classified item
+	 */
+	AMStats.Snapshot getSubcontexts();
+
+	/**
+	 * @return the number of homogeneous supracontexts per classified item
+	 */
+	AMStats.Snapshot getSupracontexts();
+
+	/**
+	 * @return the number of supracontexts in each product computed by distributed lattices
+	 */
+	AMStats.Snapshot getProductSizes();
+
+	/**
+	 * @return the number of heterogeneous supracontexts removed from lattices
+	 */
+	long getHeterogeneousPrunes();
+
+	/**
+	 * Sets all statistics back to zero.
+	 */
+	void reset();
+}
@@ -0,0 +1,35 @@
+package weka.classifiers.lazy.AM;
+
+import weka.classifiers.lazy.AM.Enum2TagUtils.TagInfo;
+
+/**
+ * Strategies for choosing which entry to remove from a {@link ResultsCache} when it is full.
+ */
+public enum CacheEvictionPolicy implements TagInfo {
+	/**
+	 * Evict the entry that was least recently looked up or added
+	 */
+	LRU("lru", "Evict the least recently used classification"),
+	/**
+	 * Evict the entry that was added first, regardless of how often it is used
+	 */
+	FIFO("fifo", "Evict the oldest classification");
+
+	private final String optionString;
+	private final String description;
+
+	CacheEvictionPolicy(String optionString, String description) {
+		this.optionString = optionString;
+		this.description = description;
+	}
+
+	@Override
+	public String getOptionString() {
+		return optionString;
+	}
+
+	@Override
+	public String getDescription() {
+		return description;
+	}
+}
@@ -0,0 +1,110 @@
+package weka.classifiers.lazy.AM;
+
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+/**
+ * Hash map from primitive long keys to non-null values, using open addressing with linear probing. Lattices use it to
+ * find the supracontext of a label by the label's bits, so that looking up the descendants of a subcontext does not
+ * create a {@link weka.classifiers.lazy.AM.label.Label} or box a key for each of them; subcontext lists use it to group
+ * exemplars by label. Not thread-safe.
+ *
+ * @param <V> type of the values
+ */
+public class LongKeyedMap<V> {
+	private static final int INITIAL_CAPACITY = 64;
+
+	private long[] keys;
+	// null marks an empty slot
+	private Object[] values;
+	private int size;
+	// keys are spread over the table by their top bits after multiplying; see slot(long)
+	private int shift;
+
+	public LongKeyedMap() {
+		allocate(INITIAL_CAPACITY);
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new Object[capacity];
+		shift = Long.SIZE - Integer.numberOfTrailingZeros(capacity);
+	}
+
+	/**
+	 * @return the index at which {@code key} is stored, or the empty slot where it would be stored
+	 */
+	private int slot(long key) {
+		// Fibonacci hashing, so that keys differing only in their high bits are spread too
+		int mask = keys.length - 1;
+		int i = (int) ((key * 0x9E3779B97F4A7C15L) >>> shift);
+		while (values[i] != null && keys[i] != key) {
+			i = (i + 1) & mask;
+		}
+		return i;
+	}
+
+	/**
+	 * @return the value for {@code key}, or null if there is none
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+		return (V) values[slot(key)];
+	}
+
+	/**
+	 * Associates {@code value} with {@code key}, replacing any previous value.
+	 *
+	 * @param value must not be null
+	 */
+	public void put(long key, V value) {
+		int i = slot(key);
+		if (values[i] == null) {
+			// keep the load factor at most 1/2
+			if (++size > keys.length / 2) {
+				grow();
+				i = slot(key);
+			}
+			keys[i] = key;
+		}
+		values[i] = value;
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		allocate(keys.length * 2);
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldValues[i] != null) {
+				int j = slot(oldKeys[i]);
+				keys[j] = oldKeys[i];
+				values[j] = oldValues[i];
+			}
+		}
+	}
+
+	/**
+	 * @return the number of keys in the map
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Removes all entries, keeping the current capacity.
+	 */
+	public void clear() {
+		Arrays.fill(values, null);
+		size = 0;
+	}
+
+	/**
+	 * Passes each entry to {@code action}, in no particular order.
+	 */
+	@SuppressWarnings("unchecked")
+	public void forEach(BiConsumer<Long, V> action) {
+		for (int i = 0; i < keys.length; i++) {
+			if (values[i] != null) action.accept(keys[i], (V) values[i]);
+		}
+	}
+}
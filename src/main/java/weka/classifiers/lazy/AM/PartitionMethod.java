@@ -0,0 +1,55 @@
+package weka.classifiers.lazy.AM;
+
+import weka.classifiers.lazy.AM.Enum2TagUtils.TagInfo;
+import weka.classifiers.lazy.AM.label.PartitionStrategy;
+
+import java.util.function.Supplier;
+
+/**
+ * How the labels are split among the sub-lattices of a {@link weka.classifiers.lazy.AM.lattice.DistributedLattice}.
+ * This only affects how long classification takes, not its results.
+ */
+public enum PartitionMethod implements TagInfo {
+	/**
+	 * {@link PartitionStrategy#CONTIGUOUS}
+	 */
+	CONTIGUOUS("contiguous", "Split labels into contiguous spans of nearly equal size",
+			() -> PartitionStrategy.CONTIGUOUS),
+	/**
+	 * {@link PartitionStrategy.Correlated}
+	 */
+	CORRELATED("correlated", "Group features whose matches are correlated across the subcontexts",
+			PartitionStrategy.Correlated::new),
+	/**
+	 * {@link PartitionStrategy.MinimumProduct}
+	 */
+	MINIMUM_PRODUCT("minimum-product", "Choose the span size with the lowest estimated cost of combining sub-lattices",
+			PartitionStrategy.MinimumProduct::new);
+
+	private final String optionString;
+	private final String description;
+	private final Supplier<PartitionStrategy> strategy;
+
+	PartitionMethod(String optionString, String description, Supplier<PartitionStrategy> strategy) {
+		this.optionString = optionString;
+		this.description = description;
+		this.strategy = strategy;
+	}
+
+	/**
+	 * @return the strategy implementing this method
+	 */
+	public PartitionStrategy getStrategy() {
+		return strategy.get();
+	}
+
+	@Override
+	public String getOptionString() {
+		return optionString;
+	}
+
+	@Override
+	public String getDescription() {
+		return description;
+	}
+}
@@ -0,0 +1,188 @@
+package weka.classifiers.lazy.AM;
+
+import weka.classifiers.lazy.AM.data.AMResults;
+import weka.classifiers.lazy.AM.data.ExemplarStore;
+import weka.core.Instance;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of classification results, keyed by the values of the non-class attributes of the classified
+ * item. Classifying the same feature vector twice with the same training data and options always leads to the
+ * same analogical set, so a cached result can be reused for any item with the same features.
+ * <p>
+ * The cache is limited both by its number of entries and by its total weight, where the weight of an entry is
+ * the number of subcontexts and supracontexts it holds onto (see {@link #weigh(AMResults)}). A limit of zero means
+ * that limit is not enforced. The cache is thread-safe.
+ */
+public class ResultsCache {
+	private final int maxSize;
+	private final long maxWeight;
+	private final CacheEvictionPolicy policy;
+	private final LinkedHashMap<Key, AMResults> entries;
+	private long totalWeight;
+	/**
+	 * Incremented by {@link #clear()} so that results computed before clearing are not stored afterwards
+	 */
+	private long generation;
+	private long hits;
+	private long misses;
+
+	/**
+	 * @param maxSize   maximum number of entries, or 0 for no limit
+	 * @param maxWeight maximum total weight of the entries, or 0 for no limit
+	 * @param policy    determines which entries are evicted first when either limit is exceeded
+	 */
+	public ResultsCache(int maxSize, long maxWeight, CacheEvictionPolicy policy) {
+		if (maxSize < 0) throw new IllegalArgumentException("maxSize must not be negative: " + maxSize);
+		if (maxWeight < 0) throw new IllegalArgumentException("maxWeight must not be negative: " + maxWeight);
+		this.maxSize = maxSize;
+		this.maxWeight = maxWeight;
+		this.policy = policy;
+		// an access-ordered map moves entries to the end on every get
+		entries = new LinkedHashMap<>(16, 0.75f, policy == CacheEvictionPolicy.LRU);
+	}
+
+	/**
+	 * @param testItem item to be classified
+	 * @return the cached results for an item with the same features as {@code testItem}, rebound to
+	 * {@code testItem}, or null if there are none
+	 */
+	public synchronized AMResults get(Instance testItem) {
+		AMResults results = entries.get(new Key(testItem));
+		if (results == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return results.forTestItem(testItem);
+	}
+
+	/**
+	 * Stores the results of classifying {@code testItem}, evicting other entries as necessary. Results that would
+	 * exceed the weight limit on their own are not stored.
+	 *
+	 * @param generation the value of {@link #getGeneration()} from before the results were computed; if the cache
+	 *                   has been cleared since then, the results are stale and are not stored
+	 */
+	public synchronized void put(Instance testItem, AMResults results, long generation) {
+		long weight = weigh(results);
+		if (generation != this.generation || (maxWeight != 0 && weight > maxWeight)) {
+			return;
+		}
+		AMResults previous = entries.put(new Key(testItem), results);
+		if (previous != null) {
+			totalWeight -= weigh(previous);
+		}
+		totalWeight += weight;
+		evict();
+	}
+
+	private void evict() {
+		Iterator<AMResults> iterator = entries.values().iterator();
+		while ((maxSize != 0 && entries.size() > maxSize) || (maxWeight != 0 && totalWeight > maxWeight)) {
+			totalWeight -= weigh(iterator.next());
+			iterator.remove();
+		}
+	}
+
+	/**
+	 * Removes all entries. Hit and miss counts are kept.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		totalWeight = 0;
+		generation++;
+	}
+
+	/**
+	 * @return a number identifying the contents of the cache since it was last cleared; see
+	 * {@link #put(Instance, AMResults, long)}
+	 */
+	public synchronized long getGeneration() {
+		return generation;
+	}
+
+	/**
+	 * @return the weight of the given results, which is the number of subcontexts and supracontexts they contain
+	 */
+	public static long weigh(AMResults results) {
+		return (long) results.getSubList().size() + results.getSupraList().size();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long getTotalWeight() {
+		return totalWeight;
+	}
+
+	/**
+	 * @return the number of calls to {@link #get} that found a cached result
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return the number of calls to {@link #get} that did not find a cached result
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public long getMaxWeight() {
+		return maxWeight;
+	}
+
+	public CacheEvictionPolicy getPolicy() {
+		return policy;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "ResultsCache[" + policy.getOptionString() + ", size=" + entries.size() + "/" + maxSize + ", weight="
+				+ totalWeight + "/" + maxWeight + ", hits=" + hits + ", misses=" + misses + "]";
+	}
+
+	/**
+	 * The nominal value indices of an item's non-class attributes, with {@link ExemplarStore#MISSING} for missing
+	 * values.
+	 */
+	private static final class Key {
+		private final int[] values;
+		private final int hash;
+
+		Key(Instance item) {
+			values = new int[item.numAttributes()];
+			for (int i = 0; i < values.length; i++) {
+				if (i == item.classIndex() || item.isMissing(i)) {
+					values[i] = ExemplarStore.MISSING;
+				} else {
+					values[i] = (int) item.value(i);
+				}
+			}
+			hash = Arrays.hashCode(values);
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (this == other) return true;
+			if (!(other instanceof Key)) return false;
+			return Arrays.equals(values, ((Key) other).values);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+}
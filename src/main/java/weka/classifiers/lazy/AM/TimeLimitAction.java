@@ -0,0 +1,36 @@
+package weka.classifiers.lazy.AM;
+
+import weka.classifiers.lazy.AM.Enum2TagUtils.TagInfo;
+
+/**
+ * What to do when filling the lattice for a test item takes longer than the time limit set with
+ * {@link weka.classifiers.lazy.AnalogicalModeling#setTimeLimit(long)}.
+ */
+public enum TimeLimitAction implements TagInfo {
+	/**
+	 * Fail the classification with a {@link java.util.concurrent.TimeoutException}
+	 */
+	FAIL("fail", "Fail the classification"),
+	/**
+	 * Classify the item again with the approximate Johnsen-Johansson lattice, which has no time limit
+	 */
+	APPROXIMATE("approximate", "Classify the item with the approximate Johnsen-Johansson lattice instead");
+
+	private final String optionString;
+	private final String description;
+
+	TimeLimitAction(String optionString, String description) {
+		this.optionString = optionString;
+		this.description = description;
+	}
+
+	@Override
+	public String getOptionString() {
+		return optionString;
+	}
+
+	@Override
+	public String getDescription() {
+		return description;
+	}
+}
@@ -117,13 +117,13 @@ public class AMResults {
                 )
             );
 
-        // find the likelihood for a given outcome based on the pointers
-        for (Instance e : exPointerMap.keySet()) {
-            String className = e.stringValue(e.classAttribute());
-            if (classPointerMap.containsKey(className))
-                classPointerMap.put(className, classPointerMap.get(className).add(exPointerMap.get(e)));
-            else classPointerMap.put(className, exPointerMap.get(e));
-        }
+        // find the likelihood for a given outcome based on the pointers;
+        // sum by class index first so that class names are only looked up once per class
+        Map<Integer, BigInteger> classIndexPointers = new HashMap<>();
+        for (Entry<Instance, BigInteger> e : exPointerMap.entrySet())
+            classIndexPointers.merge((int) e.getKey().classValue(), e.getValue(), BigInteger::add);
+        for (Entry<Integer, BigInteger> e : classIndexPointers.entrySet())
+            classPointerMap.put(testItem.classAttribute().value(e.getKey()), e.getValue());
 
         // set the likelihood of each possible class index to be its share of
         // the total pointers
@@ -148,6 +148,36 @@ public class AMResults {
         }
     }
 
+    /**
+     * Creates a copy of {@code other} for a test item with the same features as the one it was computed for.
+     */
+    private AMResults(AMResults other, Instance testItem) {
+        classifiedExemplar = testItem;
+        supraList = other.supraList;
+        labeler = other.labeler;
+        subList = other.subList;
+        pointerCountingStrategy = other.pointerCountingStrategy;
+        exPointerMap = other.exPointerMap;
+        exEffectMap.putAll(other.exEffectMap);
+        classPointerMap.putAll(other.classPointerMap);
+        classLikelihoodMap.putAll(other.classLikelihoodMap);
+        predictedClasses.addAll(other.predictedClasses);
+        totalPointers = other.totalPointers;
+        classProbability = other.classProbability;
+    }
+
+    /**
+     * Since the analogical set depends only on the features of the test item, the results for one item can be
+     * reused for any other item with the same features (but possibly a different class value).
+     *
+     * @param testItem an item with the same features as {@link #getClassifiedEx()}
+     * @return a copy of these results for {@code testItem}
+     */
+    public AMResults forTestItem(Instance testItem) {
+        if (testItem == classifiedExemplar) return this;
+        return new AMResults(this, testItem);
+    }
+
     /**
      * See page 392 of the red book.
      *
@@ -13,7 +13,9 @@ import java.util.Set;
  * @author Nathan Glenn
  */
 public class BasicSupra implements Supracontext {
-    private BigInteger count = BigInteger.ONE;
+    private long count = 1;
+    // only used if the count does not fit in a long
+    private BigInteger bigCount;
     private final Set<Subcontext> data;
     // cached on first calculation
     private Label context;
@@ -57,15 +59,32 @@ public class BasicSupra implements Supracontext {
 
     @Override
     public BigInteger getCount() {
-        return count;
+        return bigCount != null ? bigCount : BigInteger.valueOf(count);
     }
 
     @Override
     public void setCount(BigInteger count) {
         if (count == null) throw new IllegalArgumentException("count must not be null");
-        if (count.compareTo(BigInteger.ZERO) < 0)
+        if (count.signum() < 0)
             throw new IllegalArgumentException("count must not be less than zero");
+        if (count.bitLength() < Long.SIZE) {
+            this.count = count.longValue();
+            this.bigCount = null;
+        } else {
+            this.bigCount = count;
+        }
+    }
+
+    @Override
+    public long getLongCount() {
+        return bigCount != null ? -1 : count;
+    }
+
+    @Override
+    public void setCount(long count) {
+        if (count < 0) throw new IllegalArgumentException("count must not be less than zero");
         this.count = count;
+        this.bigCount = null;
     }
 
 	@Override
@@ -78,7 +97,10 @@ public class BasicSupra implements Supracontext {
 
 	@Override
     public BasicSupra copy() {
-        return new BasicSupra(data, count);
+        BasicSupra copy = new BasicSupra(data, BigInteger.ONE);
+        copy.count = count;
+        copy.bigCount = bigCount;
+        return copy;
     }
 
     @Override
@@ -105,7 +127,7 @@ public class BasicSupra implements Supracontext {
 
         StringBuilder sb = new StringBuilder();
         sb.append('[');
-        sb.append(count);
+        sb.append(getCount());
         sb.append('x');
         for (Subcontext sub : data) {
             sb.append(sub);
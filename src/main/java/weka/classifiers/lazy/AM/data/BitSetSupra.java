@@ -0,0 +1,230 @@
+package weka.classifiers.lazy.AM.data;
+
+import weka.classifiers.lazy.AM.label.Label;
+
+import java.math.BigInteger;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+
+/**
+ * Implementation of {@link Supracontext} for the subcontexts of a single {@link SubcontextList}, which stores the
+ * {@link Subcontext#getId() IDs} of its subcontexts in a compact bitset instead of a hash set. Supracontexts of the same
+ * list are {@link #intersect intersected} and compared word by word, without looking at the subcontexts themselves.
+ * <p>
+ * Only subcontexts of the list given to the constructor can be added. Equality and hash codes are the same as those
+ * of any other supracontext containing the same subcontexts, such as a {@link BasicSupra}.
+ */
+public class BitSetSupra implements Supracontext {
+	/**
+	 * Indexed by subcontext ID
+	 */
+	private final Subcontext[] subcontexts;
+	private SubcontextIdSet ids;
+	private long count = 1;
+	// only used if the count does not fit in a long
+	private BigInteger bigCount;
+	// cached on first calculation
+	private Label context;
+	private int hash;
+	private boolean hashed;
+
+	/**
+	 * Create a new supracontext with an empty data set.
+	 *
+	 * @param subList the list containing every subcontext which will be added to this supracontext
+	 */
+	public BitSetSupra(SubcontextList subList) {
+		this(subList.subcontextsById(), SubcontextIdSet.empty(subList.subcontextsById().length));
+	}
+
+	/**
+	 * Creates a new supracontext with the given parameters as the contents.
+	 *
+	 * @param subList the list containing every subcontext which will be added to this supracontext
+	 * @param data    The subcontexts contained in the supracontext
+	 * @param count   The count of this supracontext
+	 * @throws IllegalArgumentException if data or count are null, count is less than {@link BigInteger#ZERO}, or the
+	 *                                  data contains subcontexts which are not in {@code subList}
+	 */
+	public BitSetSupra(SubcontextList subList, Set<Subcontext> data, BigInteger count) {
+		this(subList);
+		if (data == null) throw new IllegalArgumentException("data must not be null");
+		setCount(count);
+		for (Subcontext sub : data) {
+			add(sub);
+		}
+	}
+
+	/**
+	 * Creates a supracontext with a count of 1
+	 */
+	private BitSetSupra(Subcontext[] subcontexts, SubcontextIdSet ids) {
+		this.subcontexts = subcontexts;
+		this.ids = ids;
+	}
+
+	/**
+	 * @throws IllegalArgumentException if {@code sub} is not in the list given to the constructor
+	 */
+	@Override
+	public void add(Subcontext sub) {
+		int id = sub.getId();
+		if (id < 0 || id >= subcontexts.length || subcontexts[id] != sub)
+			throw new IllegalArgumentException("Subcontext is not in the list of this supracontext: " + sub);
+		// the cached values are invalidated when new data is added
+		context = null;
+		hashed = false;
+		ids = ids.with(id);
+	}
+
+	/**
+	 * @param other a supracontext of the same list
+	 * @return a new supracontext containing the subcontexts found in both this one and {@code other}, with a count of
+	 * 1, or null if they have no subcontexts in common
+	 * @throws IllegalArgumentException if {@code other} belongs to a different list
+	 */
+	public BitSetSupra intersect(BitSetSupra other) {
+		if (other.subcontexts != subcontexts)
+			throw new IllegalArgumentException("Supracontexts of different subcontext lists cannot be intersected");
+		SubcontextIdSet common = ids.intersect(other.ids);
+		if (common.isEmpty()) return null;
+		return new BitSetSupra(subcontexts, common);
+	}
+
+	@Override
+	public Set<Subcontext> getData() {
+		return new AbstractSet<>() {
+			@Override
+			public Iterator<Subcontext> iterator() {
+				PrimitiveIterator.OfInt it = ids.iterator();
+				return new Iterator<>() {
+					@Override
+					public boolean hasNext() {
+						return it.hasNext();
+					}
+
+					@Override
+					public Subcontext next() {
+						return subcontexts[it.nextInt()];
+					}
+				};
+			}
+
+			@Override
+			public boolean contains(Object o) {
+				if (!(o instanceof Subcontext)) return false;
+				int id = ((Subcontext) o).getId();
+				if (id >= 0 && id < subcontexts.length && subcontexts[id] == o) return ids.contains(id);
+				// an equal subcontext from somewhere else
+				return super.contains(o);
+			}
+
+			@Override
+			public int size() {
+				return ids.size();
+			}
+		};
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return ids.isEmpty();
+	}
+
+	@Override
+	public BigInteger getCount() {
+		return bigCount != null ? bigCount : BigInteger.valueOf(count);
+	}
+
+	@Override
+	public void setCount(BigInteger count) {
+		if (count == null) throw new IllegalArgumentException("count must not be null");
+		if (count.signum() < 0)
+			throw new IllegalArgumentException("count must not be less than zero");
+		if (count.bitLength() < Long.SIZE) {
+			this.count = count.longValue();
+			this.bigCount = null;
+		} else {
+			this.bigCount = count;
+		}
+	}
+
+	@Override
+	public long getLongCount() {
+		return bigCount != null ? -1 : count;
+	}
+
+	@Override
+	public void setCount(long count) {
+		if (count < 0) throw new IllegalArgumentException("count must not be less than zero");
+		this.count = count;
+		this.bigCount = null;
+	}
+
+	@Override
+	public Label getContext() {
+		if (context == null) {
+			context = Supracontext.super.getContext();
+		}
+		return context;
+	}
+
+	@Override
+	public BitSetSupra copy() {
+		// the ID set is immutable and can be shared
+		BitSetSupra copy = new BitSetSupra(subcontexts, ids);
+		copy.count = count;
+		copy.bigCount = bigCount;
+		return copy;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (this == other) return true;
+		if (other == null) return false;
+		if (other instanceof BitSetSupra && ((BitSetSupra) other).subcontexts == subcontexts)
+			return ids.equals(((BitSetSupra) other).ids);
+		if (!(other instanceof Supracontext)) return false;
+		return getData().equals(((Supracontext) other).getData());
+	}
+
+	/**
+	 * @return the sum of the hash codes of the contained subcontexts, as for any other {@link Set}
+	 */
+	@Override
+	public int hashCode() {
+		if (!hashed) {
+			int h = 0;
+			for (PrimitiveIterator.OfInt it = ids.iterator(); it.hasNext(); ) {
+				h += subcontexts[it.nextInt()].hashCode();
+			}
+			hash = h;
+			hashed = true;
+		}
+		return hash;
+	}
+
+	/**
+	 * @return String representation of this supracontext in this form: "[" count "x" sub1.toString() ","
+	 * sub2.toString() ... "]"
+	 */
+	@Override
+	public String toString() {
+		if (isEmpty()) return "[EMPTY]";
+
+		StringBuilder sb = new StringBuilder();
+		sb.append('[');
+		sb.append(getCount());
+		sb.append('x');
+		for (Subcontext sub : getData()) {
+			sb.append(sub);
+			sb.append(',');
+		}
+		// remove last commas
+		sb.deleteCharAt(sb.length() - 1);
+		sb.append(']');
+		return sb.toString();
+	}
+}
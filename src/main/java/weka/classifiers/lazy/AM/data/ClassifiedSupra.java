@@ -59,6 +59,27 @@ public class ClassifiedSupra implements Supracontext {
         supra.setCount(count);
     }
 
+    /**
+     * Creates a supracontext which wraps {@code supra} instead of copying it, with the outcome determined by its
+     * subcontexts. Changes made through this supracontext are made to {@code supra}.
+     *
+     * @param supra The supracontext to wrap, for example a {@link BitSetSupra}
+     */
+    public ClassifiedSupra(Supracontext supra) {
+        if (supra == null) throw new IllegalArgumentException("supra must not be null");
+        this.supra = supra;
+        boolean first = true;
+        for (Subcontext sub : supra.getData()) {
+            if (first) {
+                outcome = sub.getOutcome();
+                first = false;
+            } else if (wouldBeHetero(sub)) {
+                outcome = AMUtils.HETEROGENEOUS;
+                break;
+            }
+        }
+    }
+
     @Override
     public void add(Subcontext sub) {
         if (supra.isEmpty()) outcome = sub.getOutcome();
@@ -140,6 +161,16 @@ public class ClassifiedSupra implements Supracontext {
         supra.setCount(count);
     }
 
+    @Override
+    public long getLongCount() {
+        return supra.getLongCount();
+    }
+
+    @Override
+    public void setCount(long count) {
+        supra.setCount(count);
+    }
+
 	@Override
 	public Label getContext() {
 		return supra.getContext();
@@ -149,6 +180,8 @@ public class ClassifiedSupra implements Supracontext {
     public boolean equals(Object other) {
         if (this == other) return true;
         if (other == null) return false;
+        // compare the wrapped supracontexts directly, so that they can use their own representations
+        if (other instanceof ClassifiedSupra) return supra.equals(((ClassifiedSupra) other).supra);
         return supra.equals(other);
     }
 
@@ -139,6 +139,16 @@ public class Concept<T extends Supracontext> implements Supracontext {
         extent.setCount(count);
     }
 
+    @Override
+    public long getLongCount() {
+        return extent.getLongCount();
+    }
+
+    @Override
+    public void setCount(long count) {
+        extent.setCount(count);
+    }
+
 	@Override
 	public Label getContext() {
 		return intent;
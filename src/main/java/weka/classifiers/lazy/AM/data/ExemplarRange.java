@@ -0,0 +1,54 @@
+package weka.classifiers.lazy.AM.data;
+
+import weka.core.Instance;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.IntFunction;
+
+/**
+ * The exemplars of a {@link Subcontext} created by a {@link SubcontextList}: a range of an exemplar index array shared
+ * by all of the subcontexts in the list. The set cannot be modified.
+ */
+class ExemplarRange extends AbstractSet<Instance> {
+	private final IntFunction<Instance> exemplars;
+	private final int[] indices;
+	private final int from;
+	private final int to;
+
+	/**
+	 * @param exemplars returns the exemplar with a given index
+	 * @param indices   the indices of the exemplars of every subcontext; those from {@code from} (inclusive) to
+	 *                  {@code to} (exclusive) belong to this set, and each index must appear at most once
+	 */
+	ExemplarRange(IntFunction<Instance> exemplars, int[] indices, int from, int to) {
+		this.exemplars = exemplars;
+		this.indices = indices;
+		this.from = from;
+		this.to = to;
+	}
+
+	@Override
+	public Iterator<Instance> iterator() {
+		return new Iterator<>() {
+			private int next = from;
+
+			@Override
+			public boolean hasNext() {
+				return next < to;
+			}
+
+			@Override
+			public Instance next() {
+				if (next >= to) throw new NoSuchElementException();
+				return exemplars.apply(indices[next++]);
+			}
+		};
+	}
+
+	@Override
+	public int size() {
+		return to - from;
+	}
+}
@@ -0,0 +1,189 @@
+package weka.classifiers.lazy.AM.data;
+
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Column-oriented copy of the training exemplars, used so that labeling and
+ * outcome comparisons do not have to go through the {@link Instance} interface
+ * (and its double-valued attributes) for every exemplar of every classification.
+ * <p>
+ * Each attribute is stored as an int column of nominal value indices along with
+ * a bitmap marking the exemplars for which that attribute is missing; the class
+ * values are stored in their own int column. The store also keeps an inverted
+ * index from each attribute value to a bitmap of the exemplars that have it, so
+ * that all exemplars can be compared with a test item one attribute at a time
+ * (see {@link weka.classifiers.lazy.AM.label.Labeler#labelAll(ExemplarStore)}). The original instances are kept
+ * so that results can still be reported in terms of {@link Instance Instances}.
+ * <p>
+ * Exemplars are identified by their index in the store, which is the order in which
+ * they were added.
+ */
+public class ExemplarStore implements Serializable {
+	private static final long serialVersionUID = 2L;
+	private static final int INITIAL_CAPACITY = 16;
+	/**
+	 * Value stored in a column for a missing attribute value
+	 */
+	public static final int MISSING = -1;
+	private static final BitSet EMPTY = new BitSet(0);
+
+	private final int numAttributes;
+	private final int classIndex;
+	/**
+	 * columns[att][exemplar] is the nominal value index of the attribute for the exemplar
+	 */
+	private final int[][] columns;
+	private final BitSet[] missing;
+	/**
+	 * valueIndex[att][value] marks the exemplars whose attribute has the given nominal value index; null or missing
+	 * entries mean that no exemplar has the value
+	 */
+	private final BitSet[][] valueIndex;
+	private int[] classValues;
+	private Instance[] exemplars;
+	private int size;
+
+	/**
+	 * Creates a store containing the given exemplars. Exemplars added later via {@link #add(Instance)} must have the
+	 * same header as {@code data}.
+	 *
+	 * @param data exemplars to store; all must have a known class value
+	 */
+	public ExemplarStore(Instances data) {
+		numAttributes = data.numAttributes();
+		classIndex = data.classIndex();
+		int capacity = Math.max(INITIAL_CAPACITY, data.numInstances());
+		columns = new int[numAttributes][capacity];
+		missing = new BitSet[numAttributes];
+		valueIndex = new BitSet[numAttributes][];
+		for (int i = 0; i < numAttributes; i++) {
+			missing[i] = new BitSet();
+			valueIndex[i] = new BitSet[data.attribute(i).isNominal() ? data.attribute(i).numValues() : 0];
+		}
+		classValues = new int[capacity];
+		exemplars = new Instance[capacity];
+		for (Instance instance : data) {
+			add(instance);
+		}
+	}
+
+	/**
+	 * Adds an exemplar to the end of the store.
+	 *
+	 * @throws IllegalArgumentException if the exemplar has a different number of attributes than the store, or if its
+	 *                                  class is missing
+	 */
+	public void add(Instance exemplar) {
+		if (exemplar.numAttributes() != numAttributes) throw new IllegalArgumentException(
+				"Exemplar has " + exemplar.numAttributes() + " attributes but store has " + numAttributes);
+		if (exemplar.classIsMissing())
+			throw new IllegalArgumentException("Exemplars must have a known class value: " + exemplar);
+		if (size == exemplars.length) {
+			grow();
+		}
+		for (int att = 0; att < numAttributes; att++) {
+			if (exemplar.isMissing(att)) {
+				columns[att][size] = MISSING;
+				missing[att].set(size);
+			} else {
+				int value = (int) exemplar.value(att);
+				columns[att][size] = value;
+				indexValue(att, value);
+			}
+		}
+		classValues[size] = (int) exemplar.classValue();
+		exemplars[size] = exemplar;
+		size++;
+	}
+
+	private void indexValue(int att, int value) {
+		if (value >= valueIndex[att].length) {
+			valueIndex[att] = Arrays.copyOf(valueIndex[att], value + 1);
+		}
+		if (valueIndex[att][value] == null) {
+			valueIndex[att][value] = new BitSet();
+		}
+		valueIndex[att][value].set(size);
+	}
+
+	private void grow() {
+		int capacity = exemplars.length * 2;
+		for (int att = 0; att < numAttributes; att++) {
+			columns[att] = Arrays.copyOf(columns[att], capacity);
+		}
+		classValues = Arrays.copyOf(classValues, capacity);
+		exemplars = Arrays.copyOf(exemplars, capacity);
+	}
+
+	/**
+	 * @return the number of exemplars in the store
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return the number of attributes of each exemplar, including the class attribute
+	 */
+	public int numAttributes() {
+		return numAttributes;
+	}
+
+	/**
+	 * @return the index of the class attribute
+	 */
+	public int classIndex() {
+		return classIndex;
+	}
+
+	/**
+	 * @return the nominal value index of attribute {@code att} for exemplar {@code exemplar}, or {@link #MISSING}
+	 */
+	public int value(int att, int exemplar) {
+		return columns[att][exemplar];
+	}
+
+	/**
+	 * @return true if attribute {@code att} is missing for exemplar {@code exemplar}
+	 */
+	public boolean isMissing(int att, int exemplar) {
+		return missing[att].get(exemplar);
+	}
+
+	/**
+	 * @return the exemplars for which attribute {@code att} is missing. The returned bitmap belongs to the store and must
+	 * not be modified.
+	 */
+	public BitSet getMissing(int att) {
+		return missing[att];
+	}
+
+	/**
+	 * @return the exemplars for which attribute {@code att} has the nominal value index {@code value}. The returned
+	 * bitmap belongs to the store and must not be modified.
+	 */
+	public BitSet getExemplarsWithValue(int att, int value) {
+		BitSet[] index = valueIndex[att];
+		if (value < 0 || value >= index.length || index[value] == null) return EMPTY;
+		return index[value];
+	}
+
+	/**
+	 * @return the class value index of exemplar {@code exemplar}
+	 */
+	public int classValue(int exemplar) {
+		return classValues[exemplar];
+	}
+
+	/**
+	 * @return the original instance for exemplar {@code exemplar}
+	 */
+	public Instance getInstance(int exemplar) {
+		return exemplars[exemplar];
+	}
+}
@@ -34,8 +34,9 @@ import java.util.Set;
 public class Subcontext {
     private final Label label;
     private final String displayLabel;
-    private final Set<Instance> data = new HashSet<>();
-    private double outcome;
+    private final Set<Instance> data;
+    private int outcome;
+    private final int id;
 
     /**
      * Initializes the subcontext by creating a list to hold the data
@@ -46,24 +47,59 @@ public class Subcontext {
     public Subcontext(Label label, String displayLabel) {
         this.label = label;
 		this.displayLabel = displayLabel;
+		this.data = new HashSet<>();
+		this.id = -1;
     }
 
+	/**
+	 * Creates a subcontext whose exemplars are already known; no more can be added.
+	 *
+	 * @param exemplars the exemplars of the subcontext, all of which have the given label
+	 * @param outcome   the index of the common class value of the exemplars, or {@link AMUtils#NONDETERMINISTIC}
+	 * @param id        the {@link #getId() ID} of the subcontext in its list
+	 */
+	Subcontext(Label label, String displayLabel, Set<Instance> exemplars, int outcome, int id) {
+		this.label = label;
+		this.displayLabel = displayLabel;
+		this.data = exemplars;
+		this.outcome = outcome;
+		this.id = id;
+	}
+
     /**
      * Adds an exemplar {@code e} to the subcontext and sets the outcome accordingly. If
      * different outcomes are present in the contained exemplars, the outcome is
      * {@link AMUtils#NONDETERMINISTIC}
      *
+     * @throws UnsupportedOperationException if this subcontext was created by a {@link SubcontextList}
      */
     public void add(Instance e) {
-        if (data.size() != 0) {
-            if (e.classValue() != data.iterator().next().classValue()) outcome = AMUtils.NONDETERMINISTIC;
-        } else {
-            outcome = e.classValue();
-        }
+        add(e, (int) e.classValue());
+    }
+
+    /**
+     * Same as {@link #add(Instance)}, but uses the given class value instead of asking {@code e} for it, e.g. when
+     * the exemplar comes from an {@link ExemplarStore}.
+     *
+     * @param e          exemplar to add
+     * @param classValue the index of the class value of {@code e}
+     */
+    public void add(Instance e, int classValue) {
+        boolean first = data.isEmpty();
         data.add(e);
+        if (first) {
+            outcome = classValue;
+        } else if (classValue != outcome) {
+            // once nondeterministic, the outcome stays that way
+            outcome = (int) AMUtils.NONDETERMINISTIC;
+        }
     }
 
-    public double getOutcome() {
+    /**
+     * @return the index of the class value shared by the exemplars, or {@link AMUtils#NONDETERMINISTIC} if they do
+     * not share one
+     */
+    public int getOutcome() {
         return outcome;
     }
 
@@ -74,6 +110,15 @@ public class Subcontext {
         return label;
     }
 
+	/**
+	 * @return the position of this subcontext among those of the {@link SubcontextList} that created it, from 0 to the
+	 * size of the list minus 1; does not change when the list is {@link SubcontextList#reorder reordered}. -1 if this
+	 * subcontext was not created by a list.
+	 */
+	public int getId() {
+		return id;
+	}
+
 	/**
 	 * @see Labeler#getContextString(Label)
 	 * @return User-friendly label string
@@ -83,7 +128,8 @@ public class Subcontext {
 	}
 
     /**
-     * @return list of Exemplars contained in this subcontext
+     * @return list of Exemplars contained in this subcontext; it cannot be modified if this subcontext was created by a
+     * {@link SubcontextList}
      */
     public Set<Instance> getExemplars() {
         return data;
@@ -91,7 +137,9 @@ public class Subcontext {
 
     /**
      * Two Subcontexts are considered equal if they have the same label and
-     * contain the same instances.
+     * contain the same instances. Subcontexts created by a {@link SubcontextList}
+     * are only compared by label and {@link #getId() ID}, without comparing their
+     * instances, since a list has a single subcontext per label.
      */
     @Override
     public boolean equals(Object other) {
@@ -100,17 +148,17 @@ public class Subcontext {
         if (!(other instanceof Subcontext)) return false;
         Subcontext otherSub = (Subcontext) other;
         if (!label.equals(otherSub.label)) return false;
+        if (id >= 0 && otherSub.id >= 0) return id == otherSub.id;
         return data.equals(otherSub.data);
     }
 
-    private final static int SEED = 37;
-    private int hash = -1;
-
+    /**
+     * Only the label is hashed, so that subcontexts compared by ID and those compared by their instances agree; the
+     * label is as unique within a list as the ID.
+     */
     @Override
     public int hashCode() {
-        if (hash != -1) return hash;
-        hash = SEED * label.hashCode() + data.hashCode();
-        return hash;
+        return label.hashCode();
     }
 
     @Override
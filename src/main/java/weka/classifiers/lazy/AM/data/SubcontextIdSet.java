@@ -0,0 +1,233 @@
+package weka.classifiers.lazy.AM.data;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+/**
+ * An immutable set of {@link Subcontext#getId() subcontext IDs} between 0 and a fixed universe size. Small sets are
+ * stored as a sorted array of IDs and larger ones as a bitset with one bit per ID; the representation is chosen so
+ * that each takes the least space, which means two equal sets always have the same representation. Dense sets are
+ * intersected word by word.
+ */
+final class SubcontextIdSet {
+	private static final int[] NO_IDS = new int[0];
+
+	private final int universe;
+	/**
+	 * One bit per ID, or null if the set is sparse
+	 */
+	private final long[] words;
+	/**
+	 * The IDs in ascending order, or null if the set is dense
+	 */
+	private final int[] ids;
+	private final int size;
+
+	private SubcontextIdSet(int universe, long[] words, int[] ids, int size) {
+		this.universe = universe;
+		this.words = words;
+		this.ids = ids;
+		this.size = size;
+	}
+
+	/**
+	 * @param universe the number of possible IDs, which range from 0 to {@code universe - 1}
+	 * @return an empty set
+	 */
+	static SubcontextIdSet empty(int universe) {
+		return new SubcontextIdSet(universe, null, NO_IDS, 0);
+	}
+
+	private static int numWords(int universe) {
+		return (universe + Long.SIZE - 1) / Long.SIZE;
+	}
+
+	/**
+	 * @return true if a set of the given size is smaller as a bitset than as an array of IDs
+	 */
+	private static boolean isDense(int size, int universe) {
+		return (long) size * Integer.SIZE > (long) numWords(universe) * Long.SIZE;
+	}
+
+	/**
+	 * @param words a bitset which is not modified afterwards
+	 * @param size  the number of bits set in {@code words}
+	 */
+	private static SubcontextIdSet fromWords(int universe, long[] words, int size) {
+		if (isDense(size, universe)) return new SubcontextIdSet(universe, words, null, size);
+		int[] ids = new int[size];
+		int next = 0;
+		for (int w = 0; w < words.length; w++) {
+			for (long word = words[w]; word != 0; word &= word - 1) {
+				ids[next++] = w * Long.SIZE + Long.numberOfTrailingZeros(word);
+			}
+		}
+		return new SubcontextIdSet(universe, null, ids, size);
+	}
+
+	/**
+	 * @return the number of possible IDs
+	 */
+	int getUniverse() {
+		return universe;
+	}
+
+	int size() {
+		return size;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	boolean contains(int id) {
+		if (id < 0 || id >= universe) return false;
+		if (words != null) return (words[id / Long.SIZE] & (1L << id)) != 0;
+		return Arrays.binarySearch(ids, id) >= 0;
+	}
+
+	/**
+	 * @return a set containing the IDs of this set and {@code id}; this set if it already contains {@code id}
+	 * @throws IllegalArgumentException if {@code id} is outside of the universe of this set
+	 */
+	SubcontextIdSet with(int id) {
+		if (id < 0 || id >= universe)
+			throw new IllegalArgumentException("ID " + id + " is not between 0 and " + (universe - 1));
+		if (contains(id)) return this;
+		if (words != null) {
+			long[] newWords = words.clone();
+			newWords[id / Long.SIZE] |= 1L << id;
+			return new SubcontextIdSet(universe, newWords, null, size + 1);
+		}
+		if (isDense(size + 1, universe)) {
+			long[] newWords = new long[numWords(universe)];
+			for (int i : ids) {
+				newWords[i / Long.SIZE] |= 1L << i;
+			}
+			newWords[id / Long.SIZE] |= 1L << id;
+			return new SubcontextIdSet(universe, newWords, null, size + 1);
+		}
+		int insertion = -Arrays.binarySearch(ids, id) - 1;
+		int[] newIds = new int[size + 1];
+		System.arraycopy(ids, 0, newIds, 0, insertion);
+		newIds[insertion] = id;
+		System.arraycopy(ids, insertion, newIds, insertion + 1, size - insertion);
+		return new SubcontextIdSet(universe, null, newIds, size + 1);
+	}
+
+	/**
+	 * @return the IDs contained in both this set and {@code other}
+	 * @throws IllegalArgumentException if the sets have different universes
+	 */
+	SubcontextIdSet intersect(SubcontextIdSet other) {
+		if (other.universe != universe) throw new IllegalArgumentException(
+				"Cannot intersect sets with universes of " + universe + " and " + other.universe);
+		if (words != null && other.words != null) {
+			long[] result = new long[words.length];
+			int resultSize = 0;
+			for (int w = 0; w < words.length; w++) {
+				result[w] = words[w] & other.words[w];
+				resultSize += Long.bitCount(result[w]);
+			}
+			if (resultSize == 0) return empty(universe);
+			return fromWords(universe, result, resultSize);
+		}
+		// at least one set is sparse, and the result is no larger than it, so the result is sparse as well
+		if (words != null) return other.intersect(this);
+		int[] result = new int[Math.min(size, other.size)];
+		int resultSize = 0;
+		if (other.words != null) {
+			for (int id : ids) {
+				if ((other.words[id / Long.SIZE] & (1L << id)) != 0) result[resultSize++] = id;
+			}
+		} else {
+			for (int i = 0, j = 0; i < size && j < other.size; ) {
+				if (ids[i] < other.ids[j]) i++;
+				else if (ids[i] > other.ids[j]) j++;
+				else {
+					result[resultSize++] = ids[i];
+					i++;
+					j++;
+				}
+			}
+		}
+		if (resultSize == 0) return empty(universe);
+		return new SubcontextIdSet(universe, null, resultSize == result.length ? result : Arrays.copyOf(result,
+				resultSize), resultSize);
+	}
+
+	/**
+	 * @return an iterator over the IDs in ascending order
+	 */
+	PrimitiveIterator.OfInt iterator() {
+		if (ids != null) return Arrays.stream(ids).iterator();
+		return new PrimitiveIterator.OfInt() {
+			private int wordIndex = 0;
+			private long word = words.length == 0 ? 0 : words[0];
+
+			@Override
+			public boolean hasNext() {
+				while (word == 0 && wordIndex < words.length - 1) {
+					word = words[++wordIndex];
+				}
+				return word != 0;
+			}
+
+			@Override
+			public int nextInt() {
+				if (!hasNext()) throw new NoSuchElementException();
+				int id = wordIndex * Long.SIZE + Long.numberOfTrailingZeros(word);
+				word &= word - 1;
+				return id;
+			}
+		};
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (this == other) return true;
+		if (!(other instanceof SubcontextIdSet)) return false;
+		SubcontextIdSet otherSet = (SubcontextIdSet) other;
+		// the representation depends only on the size and the universe
+		if (otherSet.universe != universe || otherSet.size != size) return false;
+		return words != null ? Arrays.equals(words, otherSet.words) : Arrays.equals(ids, otherSet.ids);
+	}
+
+	/**
+	 * Computed word by word from the bitset of the IDs, as in {@link java.util.BitSet#hashCode()}, so that it does not
+	 * depend on the representation.
+	 */
+	@Override
+	public int hashCode() {
+		long h = 1234;
+		if (words != null) {
+			for (int w = 0; w < words.length; w++) {
+				h ^= words[w] * (w + 1);
+			}
+		} else {
+			int w = -1;
+			long word = 0;
+			for (int id : ids) {
+				if (id / Long.SIZE != w) {
+					h ^= word * (w + 1);
+					w = id / Long.SIZE;
+					word = 0;
+				}
+				word |= 1L << id;
+			}
+			h ^= word * (w + 1);
+		}
+		return (int) ((h >> 32) ^ h);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("{");
+		for (PrimitiveIterator.OfInt it = iterator(); it.hasNext(); ) {
+			sb.append(it.nextInt());
+			if (it.hasNext()) sb.append(", ");
+		}
+		return sb.append('}').toString();
+	}
+}
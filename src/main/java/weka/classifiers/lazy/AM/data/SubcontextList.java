@@ -15,15 +15,26 @@
  ****************************************************************************/
 package weka.classifiers.lazy.AM.data;
 
+import weka.classifiers.lazy.AM.AMUtils;
+import weka.classifiers.lazy.AM.LongKeyedMap;
+import weka.classifiers.lazy.AM.label.IntLabel;
 import weka.classifiers.lazy.AM.label.Label;
 import weka.classifiers.lazy.AM.label.Labeler;
+import weka.classifiers.lazy.AM.label.LongLabel;
+import weka.classifiers.lazy.AM.lattice.FillMonitor;
 import weka.core.Instance;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
 
 /**
  * This class creates and manages a list of {@link Subcontext subcontexts} from
@@ -31,18 +42,32 @@ import java.util.List;
  *
  * After creating a list of subcontexts, iterate through the subcontexts using
  * the {@link Iterator} returned by {@link #iterator()}.
+ * <p>
+ * The list is built all at once: exemplars are grouped by label in a map keyed by the label bits (for
+ * {@link IntLabel} and {@link LongLabel}), and the exemplars of every subcontext are stored as a range of one shared
+ * array of exemplar indices, so that no per-subcontext collections are created. Each subcontext is given a dense
+ * {@link Subcontext#getId() ID}, which {@link BitSetSupra} uses to store sets of subcontexts as bitsets.
  *
  * @author Nate Glenn
  */
 // TODO: why use an iterator, instead of just returning a list?
 public class SubcontextList implements Iterable<Subcontext> {
 
-    private final HashMap<Label, Subcontext> labelToSubcontext = new HashMap<>();
-
     private final Labeler labeler;
     private final boolean ignoreFullMatches;
 
-    private int consideredExemplarCount;
+    /**
+     * In the order in which their first exemplars were found, unless {@link #reorder reordered}
+     */
+    private final Subcontext[] subcontexts;
+
+    /**
+     * The subcontexts indexed by {@link Subcontext#getId() ID}; lists made by {@link #pruneHeterogeneous()} share this
+     * with the original list, so their IDs are not contiguous
+     */
+    private final Subcontext[] subcontextsById;
+
+    private final int consideredExemplarCount;
 
     /**
      * @return the number of attributes used to predict an outcome
@@ -67,35 +92,225 @@ public class SubcontextList implements Iterable<Subcontext> {
      * @param ignoreFullMatches if true, will not add entirely matching contexts
      */
     public SubcontextList(Labeler labeler, List<Instance> data, boolean ignoreFullMatches) {
+        this(labeler, labelEach(labeler, data), data::get, i -> (int) data.get(i).classValue(), ignoreFullMatches);
+    }
+
+    /**
+     * Creates and stores a list of subcontexts from the exemplars in {@code store}. The result is the same as that of
+     * {@link #SubcontextList(Labeler, List, boolean)} with the store's instances, but the exemplars are labeled from
+     * the store's columns, all at once (see {@link Labeler#labelAll(ExemplarStore)}).
+     *
+     * @param labeler Labeler for assigning labels to items in data
+     * @param store   Training data (exemplars)
+     * @param ignoreFullMatches if true, will not add entirely matching contexts
+     */
+    public SubcontextList(Labeler labeler, ExemplarStore store, boolean ignoreFullMatches) {
+        this(labeler, labeler.labelAll(store), store::getInstance, store::classValue, ignoreFullMatches);
+    }
+
+    /**
+     * @param labels      the label of each exemplar
+     * @param exemplars   returns the exemplar with a given index
+     * @param classValues returns the index of the class value of the exemplar with a given index
+     */
+    private SubcontextList(Labeler labeler, Label[] labels, IntFunction<Instance> exemplars,
+                           IntUnaryOperator classValues, boolean ignoreFullMatches) {
         this.labeler = labeler;
         this.ignoreFullMatches = ignoreFullMatches;
-        for (Instance se : data)
-            add(se);
+
+        // find the subcontext of each exemplar; -1 if it is ignored
+        int[] subcontextIndices = new int[labels.length];
+        List<Label> subcontextLabels = new ArrayList<>();
+        LongKeyedMap<Integer> bitsToIndex = new LongKeyedMap<>();
+        Map<Label, Integer> labelToIndex = new HashMap<>();
+        int considered = 0;
+        for (int i = 0; i < labels.length; i++) {
+            Label label = labels[i];
+            if (ignoreFullMatches && label.allMatching()) {
+                subcontextIndices[i] = -1;
+                continue;
+            }
+            Integer index;
+            if (label instanceof IntLabel || label instanceof LongLabel) {
+                long bits = label instanceof IntLabel ? ((IntLabel) label).labelBits() : ((LongLabel) label).labelBits();
+                index = bitsToIndex.get(bits);
+                if (index == null) {
+                    index = subcontextLabels.size();
+                    bitsToIndex.put(bits, index);
+                    subcontextLabels.add(label);
+                }
+            } else {
+                index = labelToIndex.get(label);
+                if (index == null) {
+                    index = subcontextLabels.size();
+                    labelToIndex.put(label, index);
+                    subcontextLabels.add(label);
+                }
+            }
+            subcontextIndices[i] = index;
+            considered++;
+        }
+        consideredExemplarCount = considered;
+
+        // the exemplars of subcontext s are exemplarIndices[starts[s]] through exemplarIndices[starts[s + 1] - 1]
+        int numSubcontexts = subcontextLabels.size();
+        int[] starts = new int[numSubcontexts + 1];
+        for (int index : subcontextIndices) {
+            if (index >= 0) starts[index + 1]++;
+        }
+        for (int s = 0; s < numSubcontexts; s++) {
+            starts[s + 1] += starts[s];
+        }
+        int[] exemplarIndices = new int[considered];
+        int[] next = Arrays.copyOf(starts, numSubcontexts);
+        int[] outcomes = new int[numSubcontexts];
+        for (int i = 0; i < subcontextIndices.length; i++) {
+            int s = subcontextIndices[i];
+            if (s < 0) continue;
+            int classValue = classValues.applyAsInt(i);
+            if (next[s] == starts[s]) {
+                outcomes[s] = classValue;
+            } else if (outcomes[s] != classValue) {
+                // once nondeterministic, the outcome stays that way
+                outcomes[s] = (int) AMUtils.NONDETERMINISTIC;
+            }
+            exemplarIndices[next[s]++] = i;
+        }
+
+        subcontexts = new Subcontext[numSubcontexts];
+        for (int s = 0; s < numSubcontexts; s++) {
+            Label label = subcontextLabels.get(s);
+            subcontexts[s] = new Subcontext(label, labeler.getContextString(label),
+                new ExemplarRange(exemplars, exemplarIndices, starts[s], starts[s + 1]), outcomes[s], s);
+        }
+        subcontextsById = subcontexts.clone();
     }
 
     /**
-     * Adds {@code exemplar} to the correct subcontext.
+     * Creates a copy of {@code other} containing only the given subcontexts.
      */
-    void add(Instance exemplar) {
-        Label label = labeler.label(exemplar);
-        if(ignoreFullMatches && label.allMatching()) {
-            return;
+    private SubcontextList(SubcontextList other, Subcontext[] subcontexts) {
+        this.labeler = other.labeler;
+        this.ignoreFullMatches = other.ignoreFullMatches;
+        this.consideredExemplarCount = other.consideredExemplarCount;
+        this.subcontexts = subcontexts;
+        this.subcontextsById = other.subcontextsById;
+    }
+
+    private static Label[] labelEach(Labeler labeler, List<Instance> data) {
+        Label[] labels = new Label[data.size()];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = labeler.label(data.get(i));
         }
-        if (!labelToSubcontext.containsKey(label)) {
-			labelToSubcontext.put(label, new Subcontext(label, labeler.getContextString(label)));
-		}
-        labelToSubcontext.get(label).add(exemplar);
-        consideredExemplarCount++;
+        return labels;
     }
 
     /**
-     * Adds the exemplars to the correct subcontexts.
+     * Changes the order in which the subcontexts are {@link #iterator() iterated}, and therefore the order in which they
+     * are added to a lattice.
      *
-     * @param data Exemplars to add
+     * @param random source of randomness for {@link SubcontextOrdering#RANDOM}
      */
-    void addAll(Iterable<Instance> data) {
-        for (Instance d : data)
-            add(d);
+    public void reorder(SubcontextOrdering ordering, Random random) {
+        ordering.sort(subcontexts, random);
+    }
+
+    /**
+     * Removes the subcontexts which can never be part of a homogeneous supracontext. The smallest supracontext
+     * containing a subcontext contains every subcontext whose label is an {@link Label#isDescendantOf ancestor} of its
+     * label, and so does every other supracontext containing it. If those other subcontexts already make a supracontext
+     * heterogeneous (two of them with different outcomes, or a nondeterministic one and any other), then the subcontext
+     * only ever appears in heterogeneous supracontexts, and a lattice does not need to add it to its 2<sup>n</sup>
+     * supracontexts. A lattice filled with the returned list has the same homogeneous supracontexts, with the same
+     * counts, as one filled with this list.
+     * <p>
+     * A subcontext which only conflicts with its ancestors itself, such as one with a single ancestor of a different
+     * outcome, is also always in heterogeneous supracontexts, but it is kept: without it, the supracontexts containing
+     * it would hold only its ancestors and could become homogeneous, which would change the results.
+     * <p>
+     * Ancestors have fewer mismatches than their descendants, so the subcontexts are visited by increasing number of
+     * mismatches, and the outcome of each one combined with those of its ancestors is remembered so that the ancestors
+     * of its descendants do not have to be searched again once a conflict is found. Labels with an int or long
+     * representation are compared by their bits. This still compares each pair of subcontexts in the worst case.
+     *
+     * @return a list without the subcontexts that are always heterogeneous, in the same order; this list if there are
+     * none
+     */
+    public SubcontextList pruneHeterogeneous() {
+        return pruneHeterogeneous(new FillMonitor());
+    }
+
+    /**
+     * Same as {@link #pruneHeterogeneous()}, but stops if {@code monitor} is cancelled or its deadline passes, so that
+     * a time limit on the classification also covers pruning.
+     *
+     * @throws java.util.concurrent.CancellationException if the monitor stopped the pruning
+     */
+    public SubcontextList pruneHeterogeneous(FillMonitor monitor) {
+        int n = subcontexts.length;
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        // ancestors first
+        Arrays.sort(order, Comparator.comparingInt(i -> -subcontexts[i].getLabel().numMatches()));
+        long[] bits = null;
+        if (n > 0 && (subcontexts[0].getLabel() instanceof IntLabel || subcontexts[0].getLabel() instanceof LongLabel)) {
+            bits = new long[n];
+            for (int i = 0; i < n; i++) {
+                Label label = subcontexts[order[i]].getLabel();
+                bits[i] = label instanceof IntLabel ? ((IntLabel) label).labelBits() & 0xFFFFFFFFL :
+                    ((LongLabel) label).labelBits();
+            }
+        }
+
+        // combined[i] is the outcome of the subcontext order[i] together with its ancestors
+        double[] combined = new double[n];
+        boolean[] pruned = new boolean[n];
+        int numPruned = 0;
+        // subcontexts before this index in the order have more matches than the current one
+        int firstWithSameMatches = 0;
+        for (int i = 0; i < n; i++) {
+            monitor.checkpoint();
+            Subcontext sub = subcontexts[order[i]];
+            if (sub.getLabel().numMatches() != subcontexts[order[firstWithSameMatches]].getLabel().numMatches()) {
+                firstWithSameMatches = i;
+            }
+            double ancestors = AMUtils.UNKNOWN;
+            for (int j = 0; j < firstWithSameMatches && ancestors != AMUtils.HETEROGENEOUS; j++) {
+                boolean isAncestor = bits != null ? (bits[j] & ~bits[i]) == 0 :
+                    sub.getLabel().isDescendantOf(subcontexts[order[j]].getLabel());
+                if (isAncestor) ancestors = combine(ancestors, combined[j]);
+            }
+            if (ancestors == AMUtils.HETEROGENEOUS) {
+                pruned[order[i]] = true;
+                numPruned++;
+            }
+            combined[i] = combine(ancestors, sub.getOutcome());
+        }
+        if (numPruned == 0) return this;
+
+        Subcontext[] kept = new Subcontext[n - numPruned];
+        int numKept = 0;
+        for (int i = 0; i < n; i++) {
+            if (!pruned[i]) kept[numKept++] = subcontexts[i];
+        }
+        return new SubcontextList(this, kept);
+    }
+
+    /**
+     * @param outcome1 the outcome of a set of subcontexts, {@link AMUtils#HETEROGENEOUS} if they would form a
+     *                 heterogeneous supracontext, or {@link AMUtils#UNKNOWN} if there are none
+     * @param outcome2 the same for another set of subcontexts
+     * @return the same for the union of the two sets; sets sharing a nondeterministic subcontext must not be
+     * combined unless one of them is already heterogeneous
+     */
+    private static double combine(double outcome1, double outcome2) {
+        if (Double.isNaN(outcome1)) return outcome2;
+        if (Double.isNaN(outcome2)) return outcome1;
+        // a nondeterministic subcontext together with any other is heterogeneous
+        if (outcome1 != outcome2 || outcome1 == AMUtils.NONDETERMINISTIC) return AMUtils.HETEROGENEOUS;
+        return outcome1;
     }
 
     /**
@@ -105,14 +320,14 @@ public class SubcontextList implements Iterable<Subcontext> {
      */
     @Override
     public String toString() {
-        List<Label> sortedLabels = new ArrayList<>(labelToSubcontext.keySet());
+        List<Subcontext> sorted = new ArrayList<>(Arrays.asList(subcontexts));
         // sort the labels by hashcode so that output is consistent for testing
         // purposes
-        sortedLabels.sort(Comparator.comparingInt(Object::hashCode));
+        sorted.sort(Comparator.comparingInt(sub -> sub.getLabel().hashCode()));
 
         StringBuilder s = new StringBuilder();
-        for (Label label : sortedLabels) {
-            s.append(labelToSubcontext.get(label));
+        for (Subcontext sub : sorted) {
+            s.append(sub);
             s.append(',');
         }
         // remove last comma
@@ -130,7 +345,14 @@ public class SubcontextList implements Iterable<Subcontext> {
         if (other == null) return false;
         if (!(other instanceof SubcontextList)) return false;
         SubcontextList otherList = (SubcontextList) other;
-        return labelToSubcontext.equals(otherList.labelToSubcontext);
+        if (!new HashSet<>(Arrays.asList(subcontexts)).equals(new HashSet<>(Arrays.asList(otherList.subcontexts)))) {
+            return false;
+        }
+        // the subcontexts were only compared by label and ID
+        for (Subcontext sub : subcontexts) {
+            if (!sub.getExemplars().equals(otherList.subcontextsById[sub.getId()].getExemplars())) return false;
+        }
+        return true;
     }
 
     /**
@@ -138,30 +360,19 @@ public class SubcontextList implements Iterable<Subcontext> {
      */
     @Override
     public Iterator<Subcontext> iterator() {
+        // the iterator of Arrays.asList does not support removal
+        return Arrays.asList(subcontexts).iterator();
+    }
 
-        return new Iterator<>() {
-
-			final Iterator<Label> keyIterator = labelToSubcontext.keySet().iterator();
-
-			@Override
-			public boolean hasNext() {
-				return keyIterator.hasNext();
-			}
-
-			@Override
-			public Subcontext next() {
-				return labelToSubcontext.get(keyIterator.next());
-			}
-
-			@Override
-			public void remove() {
-				throw new UnsupportedOperationException();
-			}
-		};
+    /**
+     * @return every subcontext which may be in this list, indexed by {@link Subcontext#getId() ID}; must not be modified
+     */
+    Subcontext[] subcontextsById() {
+        return subcontextsById;
     }
 
     public int size() {
-        return labelToSubcontext.size();
+        return subcontexts.length;
     }
 
     /**
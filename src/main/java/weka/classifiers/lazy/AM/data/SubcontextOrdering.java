@@ -0,0 +1,97 @@
+package weka.classifiers.lazy.AM.data;
+
+import weka.classifiers.lazy.AM.Enum2TagUtils.TagInfo;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Orders in which the subcontexts of a {@link SubcontextList} can be given to a lattice. The order does not change the
+ * supracontexts of an exact lattice, but it changes how much work is done to find them: a supracontext is only known
+ * to be heterogeneous once conflicting subcontexts have both been added to it, and the sooner that happens, the fewer
+ * subcontexts are added to it in vain.
+ */
+public enum SubcontextOrdering implements TagInfo {
+	/**
+	 * Keep the order in which the subcontexts were first found in the training data
+	 */
+	NATURAL("natural", "Order of the exemplars in the training data") {
+		@Override
+		void sort(Subcontext[] subcontexts, Random random) {
+		}
+	},
+	/**
+	 * Subcontexts with the most mismatches, and therefore the fewest supracontexts, first
+	 */
+	MOST_MISMATCHES("most-mismatches", "Subcontexts with the most mismatches first") {
+		@Override
+		void sort(Subcontext[] subcontexts, Random random) {
+			Arrays.sort(subcontexts, Comparator.comparingInt(sub -> sub.getLabel().numMatches()));
+		}
+	},
+	/**
+	 * Subcontexts with the fewest mismatches, and therefore the most supracontexts, first
+	 */
+	FEWEST_MISMATCHES("fewest-mismatches", "Subcontexts with the fewest mismatches first") {
+		@Override
+		void sort(Subcontext[] subcontexts, Random random) {
+			Arrays.sort(subcontexts, Comparator.comparingInt(sub -> -sub.getLabel().numMatches()));
+		}
+	},
+	/**
+	 * Nondeterministic subcontexts first, then those whose outcome is shared by the fewest other subcontexts; these are
+	 * the ones that make the most supracontexts heterogeneous
+	 */
+	RARE_OUTCOMES("rare-outcomes", "Nondeterministic subcontexts first, then those with the rarest outcomes") {
+		@Override
+		void sort(Subcontext[] subcontexts, Random random) {
+			Map<Integer, Integer> outcomeCounts = new HashMap<>();
+			for (Subcontext sub : subcontexts) {
+				outcomeCounts.merge(sub.getOutcome(), 1, Integer::sum);
+			}
+			Arrays.sort(subcontexts, Comparator.comparingInt(
+					sub -> sub.isNondeterministic() ? -1 : outcomeCounts.get(sub.getOutcome())));
+		}
+	},
+	/**
+	 * A random order, taken from the given source of randomness
+	 */
+	RANDOM("random", "Random order") {
+		@Override
+		void sort(Subcontext[] subcontexts, Random random) {
+			List<Subcontext> list = Arrays.asList(subcontexts);
+			// shuffles the array itself
+			Collections.shuffle(list, random);
+		}
+	};
+
+	private final String optionString;
+	private final String description;
+
+	SubcontextOrdering(String optionString, String description) {
+		this.optionString = optionString;
+		this.description = description;
+	}
+
+	/**
+	 * Reorders {@code subcontexts} in place. Subcontexts which are equal by this ordering keep their relative order.
+	 *
+	 * @param random source of randomness for {@link #RANDOM}; ignored by the others
+	 */
+	abstract void sort(Subcontext[] subcontexts, Random random);
+
+	@Override
+	public String getOptionString() {
+		return optionString;
+	}
+
+	@Override
+	public String getDescription() {
+		return description;
+	}
+}
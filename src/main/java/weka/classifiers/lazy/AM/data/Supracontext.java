@@ -12,10 +12,13 @@ import java.util.Set;
  * Classifying data sets with analogical modeling tends to create many
  * supracontexts with the exact same set of subcontexts. To save time and space,
  * duplicate supracontexts should be kept track of using the count instead of by
- * saving separate Supracontext objects. The count is stored in a
+ * saving separate Supracontext objects. The count is given as a
  * {@link BigInteger} object and starts out as {@link BigInteger#ONE one} and is
  * never allowed to fall below {@link BigInteger#ZERO zero}, which indicates
- * that the object should be discarded.
+ * that the object should be discarded. Nearly all counts fit in a long, so
+ * they can also be read and written as longs with {@link #getLongCount()} and
+ * {@link #setCount(long)}, which implementations may use to avoid creating
+ * BigIntegers.
  *
  * @author Nathan Glenn
  */
@@ -59,6 +62,24 @@ public interface Supracontext {
      */
     void setCount(BigInteger count);
 
+    /**
+     * @return the count if it fits in a long, or -1 if it does not, in which case {@link #getCount()} must be used
+     */
+    default long getLongCount() {
+        BigInteger count = getCount();
+        return count.bitLength() < Long.SIZE ? count.longValue() : -1;
+    }
+
+    /**
+     * Same as {@link #setCount(BigInteger)}.
+     *
+     * @param count the count
+     * @throws IllegalArgumentException if count is less than zero
+     */
+    default void setCount(long count) {
+        setCount(BigInteger.valueOf(count));
+    }
+
 	/**
 	 * Retrieve the supracontextual context, represented with a {@link Label} object.
 	 * Label mismatches should be interpreted as "contained subcontexts may or may not match
@@ -123,7 +123,8 @@ public class BitSetLabel extends Label {
          */
         public SubsetIterator() {
             card = BitSetLabel.this.getCardinality();
-            current = BitSetLabel.this.labelBits;
+            // labels are immutable, so flip the bits of a copy
+            current = (BitSet) BitSetLabel.this.labelBits.clone();
             gaps = new ArrayList<>();
 
             // iterate over the clear bits and record their locations
@@ -1,5 +1,6 @@
 package weka.classifiers.lazy.AM.label;
 
+import weka.classifiers.lazy.AM.data.ExemplarStore;
 import weka.core.Attribute;
 import weka.core.Instance;
 
@@ -51,6 +52,20 @@ public class BitSetLabeler extends Labeler {
         return new BitSetLabel(label, getCardinality());
     }
 
+	@Override
+	public Label label(ExemplarStore store, int exemplar) {
+		checkCompatible(store);
+		BitSet label = new BitSet();
+		int length = getCardinality();
+		for (int index = 0; index < length; index++) {
+			if (isMismatch(store, exemplar, index))
+				// use length-1-index instead of index so that in binary the
+				// labels show left to right, first to last feature.
+				label.set(length - 1 - index);
+		}
+		return new BitSetLabel(label, length);
+	}
+
 	@Override
 	public Label getLatticeTop() {
 		return new BitSetLabel(new BitSet(), getCardinality());
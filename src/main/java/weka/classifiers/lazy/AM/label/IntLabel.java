@@ -3,6 +3,8 @@ package weka.classifiers.lazy.AM.label;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntConsumer;
 
 /**
  * A {@link Label} implementation that stores match/mismatch data in a single
@@ -17,6 +19,19 @@ public class IntLabel extends Label {
      * number of bits in an integer in Java.
      */
     public static final int MAX_CARDINALITY = 32;
+    /**
+     * Labels of up to this cardinality are {@link #of canonicalized}. This covers the label partitions used by the
+     * distributed lattice, which are the labels created most often. The tables are never released, so the cap bounds
+     * the memory they keep for the life of the JVM: at most 2<sup>11</sup> - 1 labels in all, or roughly 64KB.
+     */
+    public static final int MAX_CANONICAL_CARDINALITY = 10;
+    /**
+     * Canonical labels for each cardinality, indexed by label bits. Tables are created when first needed and shared by
+     * all labelers; the labels in them are created when first requested. Labels are immutable, so racing threads can at
+     * worst create duplicate instances, which are still equal.
+     */
+    private static final AtomicReferenceArray<IntLabel[]> CANONICAL = new AtomicReferenceArray<>(
+        MAX_CANONICAL_CARDINALITY + 1);
 
     private final int labelBits;
     private final int card;
@@ -34,6 +49,31 @@ public class IntLabel extends Label {
         hashCode = calculateHashCode();
     }
 
+    /**
+     * Returns a label with the given bits and cardinality. For cardinalities up to {@link #MAX_CANONICAL_CARDINALITY},
+     * the same instance is returned for the same arguments, so that labels are not allocated over and over and most
+     * equality checks are reference comparisons. Larger labels, or labels with bits set above the cardinality, are
+     * created anew.
+     *
+     * @param labelBits binary label represented by integer
+     * @param cardinality cardinality of the label
+     */
+    public static IntLabel of(int labelBits, int cardinality) {
+        if (cardinality > MAX_CANONICAL_CARDINALITY || cardinality < 0 || (labelBits >>> cardinality) != 0)
+            return new IntLabel(labelBits, cardinality);
+        IntLabel[] table = CANONICAL.get(cardinality);
+        if (table == null) {
+            CANONICAL.compareAndSet(cardinality, null, new IntLabel[1 << cardinality]);
+            table = CANONICAL.get(cardinality);
+        }
+        IntLabel label = table[labelBits];
+        if (label == null) {
+            label = new IntLabel(labelBits, cardinality);
+            table[labelBits] = label;
+        }
+        return label;
+    }
+
     /**
      * Create an IntLabel by copying the contents of another {@link Label}.
      */
@@ -93,7 +133,7 @@ public class IntLabel extends Label {
         if (!(other instanceof IntLabel)) throw new IllegalArgumentException(
             getClass().getSimpleName() + "can only be intersected with other " + getClass().getSimpleName());
         IntLabel otherLabel = (IntLabel) other;
-        return new IntLabel(labelBits | otherLabel.labelBits, getCardinality());
+        return of(labelBits | otherLabel.labelBits, getCardinality());
     }
 
     @Override
@@ -101,7 +141,7 @@ public class IntLabel extends Label {
         if (!(other instanceof IntLabel)) throw new IllegalArgumentException(
             getClass().getSimpleName() + "can only be unioned with another " + getClass().getSimpleName());
         IntLabel otherLabel = (IntLabel) other;
-        return new IntLabel(labelBits & otherLabel.labelBits, getCardinality());
+        return of(labelBits & otherLabel.labelBits, getCardinality());
     }
 
     @Override
@@ -145,6 +185,21 @@ public class IntLabel extends Label {
         return new SubsetIterator();
     }
 
+    /**
+     * Passes the bits of each {@link #descendantIterator() descendant} of this label to {@code action}, without
+     * creating any labels. The descendants are enumerated by counting down through the subsets of the matching bits,
+     * so each one costs a handful of bit operations.
+     *
+     * @param action receives the {@link #labelBits() label bits} of each descendant
+     */
+    public void forEachDescendant(IntConsumer action) {
+        int all = card == MAX_CARDINALITY ? -1 : (1 << card) - 1;
+        int matchBits = ~labelBits & all;
+        for (int subset = matchBits; subset != 0; subset = (subset - 1) & matchBits) {
+            action.accept(labelBits | subset);
+        }
+    }
+
     private class SubsetIterator implements Iterator<Label> {
 
         // each will be all zeros except where one of the zeros in the tested
@@ -209,7 +264,7 @@ public class IntLabel extends Label {
             current ^= gaps[i];
             binCounter--;
             if (binCounter == 0) hasNext = false;
-            return new IntLabel(current, card);
+            return of(current, card);
         }
 
         @Override
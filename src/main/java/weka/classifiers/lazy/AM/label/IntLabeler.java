@@ -17,6 +17,7 @@
 package weka.classifiers.lazy.AM.label;
 
 import weka.core.Attribute;
+import weka.classifiers.lazy.AM.data.ExemplarStore;
 import weka.core.Instance;
 
 /**
@@ -80,12 +81,36 @@ public class IntLabeler extends Labeler {
             }
             index++;
         }
-        return new IntLabel(label, getCardinality());
+        return IntLabel.of(label, getCardinality());
+    }
+
+    @Override
+    public IntLabel label(ExemplarStore store, int exemplar) {
+        checkCompatible(store);
+        int label = 0;
+        int length = getCardinality();
+        for (int index = 0; index < length; index++) {
+            if (isMismatch(store, exemplar, index))
+                // use length-1-index instead of index so that in binary the
+                // labels show left to right, first to last feature.
+                label |= (1 << (length - 1 - index));
+        }
+        return IntLabel.of(label, length);
+    }
+
+    @Override
+    public IntLabel[] labelAll(ExemplarStore store) {
+        long[] words = labelWords(store, 0);
+        IntLabel[] labels = new IntLabel[words.length];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = IntLabel.of((int) words[i], getCardinality());
+        }
+        return labels;
     }
 
     @Override
     public Label getLatticeTop() {
-        return new IntLabel(0, getCardinality());
+        return IntLabel.of(0, getCardinality());
     }
 
     @Override
@@ -95,7 +120,7 @@ public class IntLabeler extends Labeler {
 
     @Override
 	public Label fromBits(int labelBits) {
-    	return new IntLabel(labelBits, getCardinality());
+    	return IntLabel.of(labelBits, getCardinality());
 	}
 
     @Override
@@ -135,7 +160,7 @@ public class IntLabeler extends Labeler {
         }
 
         public IntLabel mask(IntLabel label) {
-            return new IntLabel((maskBits & label.labelBits()) >> startIndex, cardinality);
+            return IntLabel.of((maskBits & label.labelBits()) >> startIndex, cardinality);
         }
 
         @Override
@@ -0,0 +1,183 @@
+package weka.classifiers.lazy.AM.label;
+
+import java.util.Arrays;
+
+/**
+ * A division of the positions of a label into groups, each of which becomes the label of one of the sub-lattices of a
+ * {@link weka.classifiers.lazy.AM.lattice.DistributedLattice}. Unlike the partitions of a {@link Labeler}, the
+ * positions in a group do not have to be contiguous. Groups are chosen by a {@link PartitionStrategy}.
+ * <p>
+ * Position i of a label is the one given by {@link Label#matches(int) matches(i)}. Partition labels are
+ * {@link IntLabel IntLabels} or, for groups of more than 32 positions, {@link LongLabel LongLabels}.
+ */
+public class LabelPartitioning {
+	private final int cardinality;
+	private final int[][] groups;
+	/**
+	 * For each group, the first position if the group's positions are contiguous and ascending, otherwise -1
+	 */
+	private final int[] starts;
+
+	/**
+	 * @param cardinality the cardinality of the labels to be partitioned
+	 * @param groups      the label positions in each partition; every position from 0 to {@code cardinality - 1} must
+	 *                    appear in exactly one group. Bit j of a partition label holds the j-th position of its group.
+	 * @throws IllegalArgumentException if the groups do not cover every position exactly once, or if a group is empty
+	 *                                  or larger than {@link LongLabel#MAX_CARDINALITY}
+	 */
+	public LabelPartitioning(int cardinality, int[][] groups) {
+		boolean[] seen = new boolean[cardinality];
+		int total = 0;
+		starts = new int[groups.length];
+		this.groups = new int[groups.length][];
+		for (int p = 0; p < groups.length; p++) {
+			int[] group = groups[p];
+			if (group.length == 0 || group.length > LongLabel.MAX_CARDINALITY) throw new IllegalArgumentException(
+					"Partition " + p + " has " + group.length + " positions; must have between 1 and "
+							+ LongLabel.MAX_CARDINALITY);
+			for (int index : group) {
+				if (index < 0 || index >= cardinality || seen[index]) throw new IllegalArgumentException(
+						"Position " + index + " is out of range or in more than one partition");
+				seen[index] = true;
+			}
+			total += group.length;
+			this.groups[p] = group.clone();
+			starts[p] = isContiguous(group) ? group[0] : -1;
+		}
+		if (total != cardinality)
+			throw new IllegalArgumentException("Partitions cover " + total + " of " + cardinality + " positions");
+		this.cardinality = cardinality;
+	}
+
+	/**
+	 * @param cardinality the cardinality of the labels to be partitioned
+	 * @param sizes       the number of positions in each partition, which are assigned in order starting from 0
+	 * @return a partitioning into contiguous groups of positions
+	 */
+	public static LabelPartitioning contiguous(int cardinality, int... sizes) {
+		int[][] groups = new int[sizes.length][];
+		int start = 0;
+		for (int p = 0; p < sizes.length; p++) {
+			groups[p] = new int[sizes[p]];
+			for (int j = 0; j < sizes[p]; j++) {
+				groups[p][j] = start + j;
+			}
+			start += sizes[p];
+		}
+		return new LabelPartitioning(cardinality, groups);
+	}
+
+	/**
+	 * @param numPartitions the number of partitions
+	 * @return a partitioning into contiguous groups whose sizes differ by at most 1, larger groups first; this is how
+	 * {@link Labeler} splits labels
+	 */
+	public static LabelPartitioning balanced(int cardinality, int numPartitions) {
+		int[] sizes = new int[numPartitions];
+		for (int p = 0; p < numPartitions; p++) {
+			sizes[p] = cardinality / numPartitions + (p < cardinality % numPartitions ? 1 : 0);
+		}
+		return contiguous(cardinality, sizes);
+	}
+
+	private static boolean isContiguous(int[] group) {
+		for (int j = 1; j < group.length; j++) {
+			if (group[j] != group[0] + j) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the cardinality of the labels that are partitioned
+	 */
+	public int getCardinality() {
+		return cardinality;
+	}
+
+	/**
+	 * @return the number of partitions
+	 */
+	public int numPartitions() {
+		return groups.length;
+	}
+
+	/**
+	 * @return the label positions in partition {@code partitionIndex}, in the order of the bits of its labels
+	 */
+	public int[] getPositions(int partitionIndex) {
+		return groups[partitionIndex].clone();
+	}
+
+	/**
+	 * @return the number of positions in the largest partition
+	 */
+	public int getMaxPartitionSize() {
+		int max = 0;
+		for (int[] group : groups) {
+			max = Math.max(max, group.length);
+		}
+		return max;
+	}
+
+	/**
+	 * @param label          a label of this partitioning's cardinality
+	 * @param partitionIndex which partition to take
+	 * @return a label containing only the positions in the given partition
+	 */
+	public Label partition(Label label, int partitionIndex) {
+		if (label.getCardinality() != cardinality) throw new IllegalArgumentException(
+				"Label cardinality is " + label.getCardinality() + " but partitioning cardinality is " + cardinality);
+		int[] group = groups[partitionIndex];
+		long bits;
+		if (label instanceof IntLabel) {
+			bits = gather(((IntLabel) label).labelBits() & 0xFFFFFFFFL, partitionIndex);
+		} else if (label instanceof LongLabel) {
+			bits = gather(((LongLabel) label).labelBits(), partitionIndex);
+		} else if (label instanceof MultiWordLabel && starts[partitionIndex] >= 0) {
+			bits = ((MultiWordLabel) label).bitsFrom(starts[partitionIndex]);
+		} else {
+			bits = 0;
+			for (int j = 0; j < group.length; j++) {
+				if (!label.matches(group[j])) bits |= 1L << j;
+			}
+		}
+		if (group.length < Long.SIZE) bits &= (1L << group.length) - 1;
+		if (group.length <= IntLabel.MAX_CARDINALITY) return IntLabel.of((int) bits, group.length);
+		return new LongLabel(bits, group.length);
+	}
+
+	/**
+	 * @return the bits of the given partition taken from {@code labelBits}, unmasked if the partition is contiguous
+	 */
+	private long gather(long labelBits, int partitionIndex) {
+		if (starts[partitionIndex] >= 0) return labelBits >>> starts[partitionIndex];
+		int[] group = groups[partitionIndex];
+		long bits = 0;
+		for (int j = 0; j < group.length; j++) {
+			bits |= ((labelBits >>> group[j]) & 1L) << j;
+		}
+		return bits;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (this == other) return true;
+		if (!(other instanceof LabelPartitioning)) return false;
+		LabelPartitioning otherPartitioning = (LabelPartitioning) other;
+		return cardinality == otherPartitioning.cardinality && Arrays.deepEquals(groups, otherPartitioning.groups);
+	}
+
+	@Override
+	public int hashCode() {
+		return 37 * cardinality + Arrays.deepHashCode(groups);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (int[] group : groups) {
+			sb.append(Arrays.toString(group));
+		}
+		return sb.toString();
+	}
+}
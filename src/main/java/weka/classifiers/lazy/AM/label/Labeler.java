@@ -1,9 +1,11 @@
 package weka.classifiers.lazy.AM.label;
 
 import com.google.common.annotations.VisibleForTesting;
+import weka.classifiers.lazy.AM.data.ExemplarStore;
 import weka.core.Instance;
 
 import java.util.*;
+import java.util.stream.IntStream;
 
 /**
  * Analogical Modeling uses labels composed of boolean vectors in order to group
@@ -22,6 +24,14 @@ public abstract class Labeler {
     private final MissingDataCompare mdc;
     private final Instance testInstance;
     private final Set<Integer> ignoreSet;
+    /**
+     * The index of the attribute compared for each label position, first to last
+     */
+    private final int[] labeledAttributes;
+    /**
+     * The nominal value index of the test instance for each label position, or {@link ExemplarStore#MISSING}
+     */
+    private final int[] testValues;
     /**
      * The default (max) size of a label partition
      */
@@ -44,6 +54,14 @@ public abstract class Labeler {
             }
         }
         this.ignoreSet = Collections.unmodifiableSet(ignoreSet);
+
+        // same attribute order as the loops in the label(Instance) implementations
+        labeledAttributes = IntStream.range(0, testInstance.numAttributes()).
+            filter(i -> !isIgnored(i) && i != testInstance.classIndex()).
+            toArray();
+        testValues = Arrays.stream(labeledAttributes).
+            map(i -> testInstance.isMissing(i) ? ExemplarStore.MISSING : (int) testInstance.value(i)).
+            toArray();
     }
 
     /**
@@ -113,6 +131,121 @@ public abstract class Labeler {
      */
     public abstract Label label(Instance data);
 
+    /**
+     * Create a context label for an exemplar in {@code store} by comparing it with the test instance. This gives the
+     * same result as {@link #label(Instance)} for the corresponding instance, but reads the attribute values from the
+     * store's columns instead of from the instance. The default implementation simply labels the stored instance.
+     *
+     * @param store    Exemplars with the same attributes as the test instance
+     * @param exemplar Index of the exemplar in {@code store} to be labeled
+     * @return the label for the context that the exemplar belongs to
+     */
+    public Label label(ExemplarStore store, int exemplar) {
+        return label(store.getInstance(exemplar));
+    }
+
+    /**
+     * Labels every exemplar in {@code store}, giving the same labels as calling {@link #label(ExemplarStore, int)} for
+     * each of them. The default implementation does exactly that; implementations with bit-vector labels instead
+     * compare all exemplars at once for each label position, using the store's index of attribute values (see
+     * {@link #labelWords(ExemplarStore, int)}).
+     *
+     * @param store Exemplars with the same attributes as the test instance
+     * @return the label of each exemplar, in the order of the store
+     */
+    public Label[] labelAll(ExemplarStore store) {
+        Label[] labels = new Label[store.size()];
+        for (int i = 0; i < labels.length; i++) {
+            labels[i] = label(store, i);
+        }
+        return labels;
+    }
+
+    /**
+     * Finds the exemplars that match the test instance at one label position, using the store's bitmaps of the
+     * exemplars that have each value and of those that are missing the attribute.
+     *
+     * @param store      Exemplars with the same attributes as the test instance
+     * @param labelIndex Index of the label position (not the attribute index), counting from the first feature
+     * @return a new bitmap of the exemplars that do not mismatch at the given position
+     */
+    protected BitSet matchingExemplars(ExemplarStore store, int labelIndex) {
+        int att = labeledAttributes[labelIndex];
+        int testValue = testValues[labelIndex];
+        BitSet missing = store.getMissing(att);
+        BitSet matching = new BitSet(store.size());
+        if (testValue == ExemplarStore.MISSING) {
+            if (mdc.matches(true, false)) {
+                matching.set(0, store.size());
+                matching.andNot(missing);
+            }
+            if (mdc.matches(true, true)) matching.or(missing);
+        } else {
+            matching.or(store.getExemplarsWithValue(att, testValue));
+            if (mdc.matches(false, true)) matching.or(missing);
+        }
+        return matching;
+    }
+
+    /**
+     * Computes 64 bits of the label of every exemplar in {@code store} at once. Every bit starts as a mismatch, and the
+     * bit is then cleared for the exemplars {@link #matchingExemplars matching} at that position, so the work is
+     * proportional to the number of matches rather than to the number of exemplars times the cardinality.
+     *
+     * @param store Exemplars with the same attributes as the test instance
+     * @param word  which 64 bits of the labels to compute; word 0 holds label bits 0 to 63
+     * @return the requested bits of each exemplar's label, in the order of the store
+     */
+    protected long[] labelWords(ExemplarStore store, int word) {
+        checkCompatible(store);
+        int length = getCardinality();
+        int from = word * Long.SIZE;
+        int to = Math.min(from + Long.SIZE, length);
+        long[] words = new long[store.size()];
+        if (to <= from) return words;
+        Arrays.fill(words, to - from == Long.SIZE ? -1L : (1L << (to - from)) - 1);
+        for (int bit = from; bit < to; bit++) {
+            // bits are numbered from the last feature, so that in binary the labels show first to last feature
+            BitSet matching = matchingExemplars(store, length - 1 - bit);
+            long mask = ~(1L << (bit - from));
+            for (int i = matching.nextSetBit(0); i >= 0; i = matching.nextSetBit(i + 1)) {
+                words[i] &= mask;
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Compares one attribute of a stored exemplar with that of the test instance, for use in implementations of
+     * {@link #label(ExemplarStore, int)}.
+     *
+     * @param store      Exemplars with the same attributes as the test instance
+     * @param exemplar   Index of the exemplar in {@code store} to be compared
+     * @param labelIndex Index of the label position (not the attribute index), counting from the first feature
+     * @return true if the exemplar and the test instance do not match at the given label position
+     */
+    protected boolean isMismatch(ExemplarStore store, int exemplar, int labelIndex) {
+        int att = labeledAttributes[labelIndex];
+        int testValue = testValues[labelIndex];
+        boolean dataMissing = store.isMissing(att, exemplar);
+        // use mdc if we are comparing a missing attribute
+        if (testValue == ExemplarStore.MISSING || dataMissing) {
+            return !mdc.matches(testValue == ExemplarStore.MISSING, dataMissing);
+        }
+        return testValue != store.value(att, exemplar);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the exemplars in {@code store} do not have the same attributes as the
+     *                                  test instance
+     */
+    protected void checkCompatible(ExemplarStore store) {
+        if (store.numAttributes() != testInstance.numAttributes() || store.classIndex() != testInstance.classIndex())
+            throw new IllegalArgumentException("Exemplar store has " + store.numAttributes()
+                    + " attributes with class index " + store.classIndex() + " but test instance has "
+                    + testInstance.numAttributes() + " attributes with class index " + testInstance.classIndex());
+    }
+
 
 	/**
 	 * Returns a string representing the context. If the input test instance attributes are "A C D Z R",
@@ -226,6 +359,14 @@ public abstract class Labeler {
      */
     public abstract Label partition(Label label, int partitionIndex);
 
+    /**
+     * @return the partitions used by {@link #partition}, as a {@link LabelPartitioning}; this is the partitioning
+     * chosen by {@link PartitionStrategy#CONTIGUOUS}
+     */
+    public LabelPartitioning getPartitioning() {
+        return LabelPartitioning.balanced(getCardinality(), numPartitions());
+    }
+
     /**
      * @return The number of label partitions available via {@link #partition}
      */
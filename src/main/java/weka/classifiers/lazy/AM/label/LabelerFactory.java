@@ -54,6 +54,12 @@ public interface LabelerFactory {
 			return new BitSetLabeler(testInstance, ignoreUnknowns, mdc);
 		}
 	}
+	class MultiWordLabelerFactory implements LabelerFactory {
+		@Override
+		public Labeler createLabeler(Instance testInstance, boolean ignoreUnknowns, MissingDataCompare mdc) {
+			return new MultiWordLabeler(testInstance, ignoreUnknowns, mdc);
+		}
+	}
 
 	/**
 	 * {@inheritDoc}
@@ -71,7 +77,7 @@ public interface LabelerFactory {
 			if (cardinality <= IntLabel.MAX_CARDINALITY) labeler = new IntLabeler(testInstance, ignoreUnknowns, mdc);
 			else if (cardinality <= LongLabel.MAX_CARDINALITY)
 				labeler = new LongLabeler(testInstance, ignoreUnknowns, mdc);
-			else labeler = new BitSetLabeler(testInstance, ignoreUnknowns, mdc);
+			else labeler = new MultiWordLabeler(testInstance, ignoreUnknowns, mdc);
 
 			return labeler;
 		}
@@ -3,6 +3,7 @@ package weka.classifiers.lazy.AM.label;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.function.LongConsumer;
 
 /**
  * A {@link Label} implementation that stores match/mismatch data in a single
@@ -138,6 +139,21 @@ public class LongLabel extends Label {
         return new SubsetIterator();
     }
 
+    /**
+     * Passes the bits of each {@link #descendantIterator() descendant} of this label to {@code action}, without
+     * creating any labels. The descendants are enumerated by counting down through the subsets of the matching bits,
+     * so each one costs a handful of bit operations.
+     *
+     * @param action receives the {@link #labelBits() label bits} of each descendant
+     */
+    public void forEachDescendant(LongConsumer action) {
+        long all = card == MAX_CARDINALITY ? -1 : (1L << card) - 1;
+        long matchBits = ~labelBits & all;
+        for (long subset = matchBits; subset != 0; subset = (subset - 1) & matchBits) {
+            action.accept(labelBits | subset);
+        }
+    }
+
     private class SubsetIterator implements Iterator<Label> {
 
         // each will be all zeros except where one of the zeros in the tested
@@ -1,5 +1,6 @@
 package weka.classifiers.lazy.AM.label;
 
+import weka.classifiers.lazy.AM.data.ExemplarStore;
 import weka.core.Attribute;
 import weka.core.Instance;
 
@@ -57,6 +58,30 @@ public class LongLabeler extends Labeler {
         return new LongLabel(label, getCardinality());
     }
 
+	@Override
+	public LongLabel label(ExemplarStore store, int exemplar) {
+		checkCompatible(store);
+		long label = 0;
+		int length = getCardinality();
+		for (int index = 0; index < length; index++) {
+			if (isMismatch(store, exemplar, index))
+				// use length-1-index instead of index so that in binary the
+				// labels show left to right, first to last feature.
+				label |= (1L << (length - 1 - index));
+		}
+		return new LongLabel(label, length);
+	}
+
+	@Override
+	public LongLabel[] labelAll(ExemplarStore store) {
+		long[] words = labelWords(store, 0);
+		LongLabel[] labels = new LongLabel[words.length];
+		for (int i = 0; i < labels.length; i++) {
+			labels[i] = new LongLabel(words[i], getCardinality());
+		}
+		return labels;
+	}
+
 	@Override
 	public Label getLatticeTop() {
 		return new LongLabel(0L, getCardinality());
@@ -113,7 +138,7 @@ public class LongLabeler extends Labeler {
 
             // int labels are faster and smaller, so use them if the cardinality
             // turns out to be small enough
-            if (cardinality <= IntLabel.MAX_CARDINALITY) return new IntLabel(longLabel);
+            if (cardinality <= IntLabel.MAX_CARDINALITY) return IntLabel.of((int) longLabel.labelBits(), cardinality);
             return longLabel;
         }
 
@@ -29,6 +29,11 @@ public enum MissingDataCompare implements TagInfo {
             return true;
         }
 
+        @Override
+        public boolean matches(boolean testMissing, boolean dataMissing) {
+            return true;
+        }
+
     },
 
     /**
@@ -40,6 +45,11 @@ public enum MissingDataCompare implements TagInfo {
             return false;
         }
 
+        @Override
+        public boolean matches(boolean testMissing, boolean dataMissing) {
+            return false;
+        }
+
     },
 
     /**
@@ -55,6 +65,11 @@ public enum MissingDataCompare implements TagInfo {
             return i1.isMissing(att) && i2.isMissing(att);
         }
 
+        @Override
+        public boolean matches(boolean testMissing, boolean dataMissing) {
+            return testMissing && dataMissing;
+        }
+
     };
 
     // string used on command line to indicate the use of this strategy
@@ -98,4 +113,14 @@ public enum MissingDataCompare implements TagInfo {
      * algorithm.
      */
     public abstract boolean matches(Instance i1, Instance i2, Attribute att);
+
+    /**
+     * Same as {@link #matches(Instance, Instance, Attribute)}, but for callers that have already determined which
+     * of the two values is missing. It is assumed that at least one of them is.
+     *
+     * @param testMissing true if the value of the instance being classified is missing
+     * @param dataMissing true if the value of the exemplar being compared with it is missing
+     * @return true if the attributes match, false if they do not
+     */
+    public abstract boolean matches(boolean testMissing, boolean dataMissing);
 }
@@ -0,0 +1,236 @@
+package weka.classifiers.lazy.AM.label;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A {@link Label} implementation that stores match/mismatch data in a fixed
+ * array of longs, so there is no limit on the cardinality. Unlike
+ * {@link BitSetLabel}, the array always has exactly enough words for the
+ * cardinality, so labels are combined word by word without any resizing, and
+ * the hash code is computed once when the label is created.
+ */
+public class MultiWordLabel extends Label {
+    private final long[] words;
+    private final int card;
+    private final int hashCode;
+
+    /**
+     * @param bits        binary label whose set bits represent mismatches and clear bits represent matches; bit i is
+     *                    bit {@code i % 64} of {@code bits[i / 64]}. Missing words are treated as 0, and bits at or
+     *                    above the cardinality are ignored.
+     * @param cardinality cardinality of the label
+     */
+    public MultiWordLabel(long[] bits, int cardinality) {
+        this(Arrays.copyOf(bits, numWords(cardinality)), cardinality, true);
+    }
+
+    /**
+     * Create a {@link MultiWordLabel} by copying the contents of {@code other}.
+     */
+    public MultiWordLabel(Label other) {
+        this(copyBits(other), other.getCardinality(), false);
+    }
+
+    /**
+     * @param words     taken as is; must not be modified afterwards
+     * @param needsMask true if bits above the cardinality may be set and need to be cleared
+     */
+    private MultiWordLabel(long[] words, int cardinality, boolean needsMask) {
+        if (needsMask && words.length > 0) words[words.length - 1] &= lastWordMask(cardinality);
+        this.words = words;
+        this.card = cardinality;
+        this.hashCode = 37 * cardinality + Arrays.hashCode(words);
+    }
+
+    private static int numWords(int cardinality) {
+        return (cardinality + Long.SIZE - 1) / Long.SIZE;
+    }
+
+    /**
+     * @return the bits in use in the last word of a label of the given cardinality
+     */
+    private static long lastWordMask(int cardinality) {
+        int rem = cardinality % Long.SIZE;
+        return rem == 0 ? -1L : (1L << rem) - 1;
+    }
+
+    private static long[] copyBits(Label other) {
+        if (other instanceof MultiWordLabel) return ((MultiWordLabel) other).words;
+        long[] words = new long[numWords(other.getCardinality())];
+        for (int i = 0; i < other.getCardinality(); i++)
+            if (!other.matches(i)) words[i / Long.SIZE] |= 1L << i;
+        return words;
+    }
+
+    /**
+     * @return A copy of the words of this label, whose 1 bits represent the mismatches and 0 bits represent the
+     * matches; bit i of the label is bit {@code i % 64} of word {@code i / 64}.
+     */
+    public long[] labelBits() {
+        return words.clone();
+    }
+
+    /**
+     * @return the 64 bits of this label starting at index {@code from}; bits past the cardinality are 0
+     */
+    long bitsFrom(int from) {
+        int word = from / Long.SIZE;
+        int offset = from % Long.SIZE;
+        if (word >= words.length) return 0;
+        long bits = words[word] >>> offset;
+        if (offset != 0 && word + 1 < words.length) bits |= words[word + 1] << (Long.SIZE - offset);
+        return bits;
+    }
+
+    @Override
+    public int getCardinality() {
+        return card;
+    }
+
+    @Override
+    public boolean matches(int index) {
+        if (index > getCardinality() - 1 || index < 0) throw new IllegalArgumentException("Illegal index: " + index);
+        return (words[index / Long.SIZE] & (1L << index)) == 0;
+    }
+
+    @Override
+    public int numMatches() {
+        int mismatches = 0;
+        for (long word : words) {
+            mismatches += Long.bitCount(word);
+        }
+        return getCardinality() - mismatches;
+    }
+
+    @Override
+    public Label intersect(Label other) {
+        MultiWordLabel otherLabel = checkCompatible(other, "intersected with");
+        long[] result = new long[words.length];
+        for (int i = 0; i < words.length; i++) {
+            result[i] = words[i] | otherLabel.words[i];
+        }
+        return new MultiWordLabel(result, getCardinality(), false);
+    }
+
+    @Override
+    public Label union(Label other) {
+        MultiWordLabel otherLabel = checkCompatible(other, "unioned with");
+        long[] result = new long[words.length];
+        for (int i = 0; i < words.length; i++) {
+            result[i] = words[i] & otherLabel.words[i];
+        }
+        return new MultiWordLabel(result, getCardinality(), false);
+    }
+
+    private MultiWordLabel checkCompatible(Label other, String operation) {
+        if (!(other instanceof MultiWordLabel)) throw new IllegalArgumentException(
+            getClass().getSimpleName() + " can only be " + operation + " another " + getClass().getSimpleName());
+        if (other.getCardinality() != getCardinality()) throw new IllegalArgumentException(
+            "Label cardinality is " + other.getCardinality() + " but expected " + getCardinality());
+        return (MultiWordLabel) other;
+    }
+
+    @Override
+    public boolean allMatching() {
+        for (long word : words) {
+            if (word != 0) return false;
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(getCardinality());
+        for (int i = getCardinality() - 1; i >= 0; i--) {
+            sb.append(matches(i) ? '0' : '1');
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) return true;
+        if (other == null) return false;
+        if (!(other instanceof MultiWordLabel)) {
+            return false;
+        }
+        MultiWordLabel otherLabel = (MultiWordLabel) other;
+        return otherLabel.hashCode == hashCode && otherLabel.getCardinality() == getCardinality() &&
+            Arrays.equals(otherLabel.words, words);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public Iterator<Label> descendantIterator() {
+        return new SubsetIterator();
+    }
+
+    /**
+     * Iterates over the non-empty subsets of the matching bits by repeatedly computing
+     * {@code subset = (subset - 1) & matchBits}, with the subtraction carried across words.
+     */
+    private class SubsetIterator implements Iterator<Label> {
+        private final long[] matchBits;
+        private final long[] subset;
+        private boolean hasNext;
+
+        SubsetIterator() {
+            matchBits = new long[words.length];
+            for (int i = 0; i < words.length; i++) {
+                matchBits[i] = ~words[i];
+            }
+            if (words.length > 0) matchBits[words.length - 1] &= lastWordMask(card);
+            subset = matchBits.clone();
+            hasNext = !isZero(subset);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return hasNext;
+        }
+
+        @Override
+        public Label next() {
+            if (!hasNext) throw new NoSuchElementException();
+            long[] descendant = new long[words.length];
+            for (int i = 0; i < words.length; i++) {
+                descendant[i] = words[i] | subset[i];
+            }
+            // subtract 1 from the subset, borrowing from higher words while a word is 0
+            for (int i = 0; i < subset.length; i++) {
+                if (subset[i]-- != 0) break;
+            }
+            for (int i = 0; i < subset.length; i++) {
+                subset[i] &= matchBits[i];
+            }
+            hasNext = !isZero(subset);
+            return new MultiWordLabel(descendant, card, false);
+        }
+
+        private boolean isZero(long[] bits) {
+            for (long word : bits) {
+                if (word != 0) return false;
+            }
+            return true;
+        }
+    }
+
+    @Override
+    public boolean isDescendantOf(Label possibleAncestor) {
+        if (!(possibleAncestor instanceof MultiWordLabel) || possibleAncestor.getCardinality() != getCardinality()) {
+            return false;
+        }
+        MultiWordLabel otherLabel = (MultiWordLabel) possibleAncestor;
+        // this label needs to have all of the same ones (and optionally more ones)
+        for (int i = 0; i < words.length; i++) {
+            if ((otherLabel.words[i] & ~words[i]) != 0) return false;
+        }
+        return true;
+    }
+}
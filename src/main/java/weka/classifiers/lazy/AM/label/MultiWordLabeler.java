@@ -0,0 +1,135 @@
+package weka.classifiers.lazy.AM.label;
+
+import weka.classifiers.lazy.AM.data.ExemplarStore;
+import weka.core.Attribute;
+import weka.core.Instance;
+
+import java.util.Arrays;
+
+/**
+ * A {@link Labeler} implementation that creates {@link MultiWordLabel
+ * MultiWordLabels}, for instances with too many features for a {@link LongLabel}.
+ */
+public class MultiWordLabeler extends Labeler {
+    private final Partition[] spans;
+
+    public MultiWordLabeler(Instance test, boolean ignoreUnknowns, MissingDataCompare mdc) {
+        super(test, ignoreUnknowns, mdc);
+        spans = partitions();
+    }
+
+    @Override
+    public MultiWordLabel label(Instance data) {
+        if (!data.equalHeaders(getTestInstance()))
+            throw new IllegalArgumentException("Input instance is not compatible with the test instance");
+        int length = getCardinality();
+        long[] label = new long[(length + Long.SIZE - 1) / Long.SIZE];
+        Attribute att;
+        int index = 0;
+        for (int i = 0; i < getTestInstance().numAttributes(); i++) {
+            // skip ignored attributes and the class attribute
+            if (isIgnored(i)) continue;
+            if (i == getTestInstance().classIndex()) continue;
+            att = getTestInstance().attribute(i);
+            // use mdc if we are comparing a missing attribute
+            if (getTestInstance().isMissing(att) || data.isMissing(att)) {
+                if (!getMissingDataCompare().matches(getTestInstance(), data, att))
+                    // use length-1-index instead of index so that in binary the
+                    // labels show left to right, first to last feature.
+                    setBit(label, length - 1 - index);
+            } else if (getTestInstance().value(att) != data.value(att)) {
+                // same as above
+                setBit(label, length - 1 - index);
+            }
+            index++;
+        }
+        return new MultiWordLabel(label, length);
+    }
+
+	@Override
+	public MultiWordLabel label(ExemplarStore store, int exemplar) {
+		checkCompatible(store);
+		int length = getCardinality();
+		long[] label = new long[(length + Long.SIZE - 1) / Long.SIZE];
+		for (int index = 0; index < length; index++) {
+			if (isMismatch(store, exemplar, index))
+				// use length-1-index instead of index so that in binary the
+				// labels show left to right, first to last feature.
+				setBit(label, length - 1 - index);
+		}
+		return new MultiWordLabel(label, length);
+	}
+
+	@Override
+	public MultiWordLabel[] labelAll(ExemplarStore store) {
+		int numWords = (getCardinality() + Long.SIZE - 1) / Long.SIZE;
+		long[][] bits = new long[store.size()][numWords];
+		for (int word = 0; word < numWords; word++) {
+			long[] words = labelWords(store, word);
+			for (int i = 0; i < words.length; i++) {
+				bits[i][word] = words[i];
+			}
+		}
+		MultiWordLabel[] labels = new MultiWordLabel[bits.length];
+		for (int i = 0; i < labels.length; i++) {
+			labels[i] = new MultiWordLabel(bits[i], getCardinality());
+		}
+		return labels;
+	}
+
+	private static void setBit(long[] label, int index) {
+		label[index / Long.SIZE] |= 1L << index;
+	}
+
+	@Override
+	public Label getLatticeTop() {
+		return new MultiWordLabel(new long[0], getCardinality());
+	}
+
+	@Override
+	public Label getLatticeBottom() {
+		long[] bottom = new long[(getCardinality() + Long.SIZE - 1) / Long.SIZE];
+		Arrays.fill(bottom, -1L);
+		return new MultiWordLabel(bottom, getCardinality());
+	}
+
+	@Override
+	public Label fromBits(int labelBits) {
+		return new MultiWordLabel(new long[]{labelBits & 0xFFFFFFFFL}, getCardinality());
+	}
+
+    @Override
+    public Label partition(Label label, int partitionIndex) {
+        if (partitionIndex > numPartitions() || partitionIndex < 0)
+            throw new IllegalArgumentException("Illegal partition index: " + partitionIndex);
+        if (label.getCardinality() != getCardinality()) throw new IllegalArgumentException(
+            "Label cardinality is " + label.getCardinality() + " but labeler cardinality is " + getCardinality());
+        if (!(label instanceof MultiWordLabel)) throw new IllegalArgumentException(
+            "This labeler can only handle " + MultiWordLabel.class.getCanonicalName()
+            + "s; input label was an instance of " + label.getClass().getCanonicalName());
+        MultiWordLabel multiWordLabel = (MultiWordLabel) label;
+
+        Partition span = spans[partitionIndex];
+        int cardinality = span.getCardinality();
+        // int and long labels are faster and smaller, so use them if the
+        // cardinality turns out to be small enough
+        if (cardinality <= IntLabel.MAX_CARDINALITY) {
+            return IntLabel.of((int) mask(multiWordLabel.bitsFrom(span.getStartIndex()), cardinality), cardinality);
+        }
+        if (cardinality <= LongLabel.MAX_CARDINALITY) {
+            return new LongLabel(mask(multiWordLabel.bitsFrom(span.getStartIndex()), cardinality), cardinality);
+        }
+        long[] bits = new long[(cardinality + Long.SIZE - 1) / Long.SIZE];
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = multiWordLabel.bitsFrom(span.getStartIndex() + i * Long.SIZE);
+        }
+        return new MultiWordLabel(bits, cardinality);
+    }
+
+    /**
+     * @return the lowest {@code cardinality} bits of {@code bits}
+     */
+    private static long mask(long bits, int cardinality) {
+        return cardinality == Long.SIZE ? bits : bits & ((1L << cardinality) - 1);
+    }
+}
@@ -0,0 +1,217 @@
+package weka.classifiers.lazy.AM.label;
+
+import weka.classifiers.lazy.AM.data.Subcontext;
+import weka.classifiers.lazy.AM.data.SubcontextList;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Chooses how the labels of a {@link SubcontextList} are split among the sub-lattices of a
+ * {@link weka.classifiers.lazy.AM.lattice.DistributedLattice}. The number of supracontexts in each sub-lattice, and
+ * therefore the work of combining them, depends on which label positions share a partition.
+ */
+public interface PartitionStrategy {
+	/**
+	 * @param subList the subcontexts that will fill the lattice
+	 * @return the partitioning to use for {@code subList}
+	 */
+	LabelPartitioning partition(SubcontextList subList);
+
+	/**
+	 * Uses the {@link Labeler#getPartitioning() partitions of the labeler}: contiguous groups of at most 5 positions.
+	 */
+	PartitionStrategy CONTIGUOUS = subList -> subList.getLabeler().getPartitioning();
+
+	/**
+	 * @return the labels of the subcontexts in {@code subList}
+	 */
+	static List<Label> labels(SubcontextList subList) {
+		List<Label> labels = new ArrayList<>(subList.size());
+		for (Subcontext sub : subList) {
+			labels.add(sub.getLabel());
+		}
+		return labels;
+	}
+
+	/**
+	 * Keeps the number and sizes of the labeler's partitions, but groups together the positions whose matches and
+	 * mismatches are most strongly correlated across the subcontexts. Correlated positions split across partitions
+	 * produce the same distinctions in several sub-lattices, which multiplies the number of combinations that have to be
+	 * tried when the sub-lattices are combined.
+	 */
+	class Correlated implements PartitionStrategy {
+		@Override
+		public LabelPartitioning partition(SubcontextList subList) {
+			Labeler labeler = subList.getLabeler();
+			LabelPartitioning sizes = labeler.getPartitioning();
+			if (sizes.numPartitions() == 1) return sizes;
+			int cardinality = subList.getCardinality();
+			double[][] correlations = correlations(labels(subList), cardinality);
+
+			boolean[] assigned = new boolean[cardinality];
+			int[][] groups = new int[sizes.numPartitions()][];
+			for (int p = 0; p < groups.length; p++) {
+				int[] group = new int[sizes.getPositions(p).length];
+				// seed each group with the position most correlated with the remaining ones, then add the positions
+				// most correlated with the group
+				boolean[] members = new boolean[cardinality];
+				for (int j = 0; j < group.length; j++) {
+					group[j] = mostCorrelated(correlations, assigned, j == 0 ? complement(assigned) : members);
+					assigned[group[j]] = true;
+					members[group[j]] = true;
+				}
+				groups[p] = group;
+			}
+			return new LabelPartitioning(cardinality, groups);
+		}
+
+		/**
+		 * @param excluded positions which may not be chosen
+		 * @param targets  positions whose correlation with the candidate is summed
+		 * @return the position with the highest total absolute correlation with the targets, ties going to the lowest
+		 * position
+		 */
+		private static int mostCorrelated(double[][] correlations, boolean[] excluded, boolean[] targets) {
+			int best = -1;
+			double bestScore = -1;
+			for (int i = 0; i < correlations.length; i++) {
+				if (excluded[i]) continue;
+				double score = 0;
+				for (int j = 0; j < correlations.length; j++) {
+					if (targets[j]) score += Math.abs(correlations[i][j]);
+				}
+				if (score > bestScore) {
+					best = i;
+					bestScore = score;
+				}
+			}
+			return best;
+		}
+
+		private static boolean[] complement(boolean[] set) {
+			boolean[] complement = new boolean[set.length];
+			for (int i = 0; i < set.length; i++) {
+				complement[i] = !set[i];
+			}
+			return complement;
+		}
+
+		/**
+		 * @return the phi coefficient of each pair of label positions, computed over the matches of the labels;
+		 * positions which are the same in every label have a correlation of 0 with all others
+		 */
+		static double[][] correlations(List<Label> labels, int cardinality) {
+			BitSet[] matches = new BitSet[cardinality];
+			for (int i = 0; i < cardinality; i++) {
+				matches[i] = new BitSet(labels.size());
+			}
+			int n = labels.size();
+			for (int s = 0; s < n; s++) {
+				for (int i = 0; i < cardinality; i++) {
+					if (labels.get(s).matches(i)) matches[i].set(s);
+				}
+			}
+			double[][] correlations = new double[cardinality][cardinality];
+			for (int i = 0; i < cardinality; i++) {
+				double pi = matches[i].cardinality() / (double) n;
+				for (int j = i + 1; j < cardinality; j++) {
+					double pj = matches[j].cardinality() / (double) n;
+					BitSet both = (BitSet) matches[i].clone();
+					both.and(matches[j]);
+					double variance = pi * (1 - pi) * pj * (1 - pj);
+					double phi = variance == 0 ? 0 : (both.cardinality() / (double) n - pi * pj) / Math.sqrt(variance);
+					correlations[i][j] = phi;
+					correlations[j][i] = phi;
+				}
+			}
+			return correlations;
+		}
+	}
+
+	/**
+	 * Splits labels into contiguous groups of equal size, trying each group size from 2 up to a maximum and choosing
+	 * the one with the lowest estimated cost of filling the sub-lattices and combining them. Small groups make small
+	 * sub-lattices but many combinations; large ones the reverse.
+	 * <p>
+	 * The number of supracontexts in a sub-lattice is estimated by the number of nodes its subcontexts visit, at most
+	 * 2<sup>size</sup>. The sub-lattices are assumed to be combined one after another, each combination costing the
+	 * product of the sizes of its inputs, and producing no more supracontexts than the subcontexts would visit in a
+	 * lattice of the combined positions.
+	 */
+	class MinimumProduct implements PartitionStrategy {
+		/**
+		 * The largest group size that is tried by default
+		 */
+		public static final int DEFAULT_MAX_SIZE = 10;
+		private final int maxSize;
+
+		public MinimumProduct() {
+			this(DEFAULT_MAX_SIZE);
+		}
+
+		/**
+		 * @param maxSize the largest number of positions in a partition
+		 */
+		public MinimumProduct(int maxSize) {
+			if (maxSize < 2) throw new IllegalArgumentException("Maximum partition size must be at least 2: " + maxSize);
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		public LabelPartitioning partition(SubcontextList subList) {
+			LabelPartitioning best = subList.getLabeler().getPartitioning();
+			if (best.numPartitions() == 1) return best;
+			int cardinality = subList.getCardinality();
+			List<Label> labels = labels(subList);
+			double bestCost = estimateCost(best, labels);
+			for (int size = 2; size <= Math.min(maxSize, cardinality - 1); size++) {
+				LabelPartitioning candidate = LabelPartitioning.balanced(cardinality,
+						(cardinality + size - 1) / size);
+				double cost = estimateCost(candidate, labels);
+				if (cost < bestCost) {
+					best = candidate;
+					bestCost = cost;
+				}
+			}
+			return best;
+		}
+
+		/**
+		 * @return the estimated number of supracontexts visited while filling the sub-lattices and combining them
+		 */
+		static double estimateCost(LabelPartitioning partitioning, List<Label> labels) {
+			int numPartitions = partitioning.numPartitions();
+			// matches[s][p] is the number of matches of subcontext s in partition p
+			int[][] matches = new int[labels.size()][numPartitions];
+			for (int s = 0; s < labels.size(); s++) {
+				for (int p = 0; p < numPartitions; p++) {
+					matches[s][p] = partitioning.partition(labels.get(s), p).numMatches();
+				}
+			}
+			double cost = 0;
+			double combinedSize = 0;
+			// accumulated[s] is the number of matches of subcontext s in the partitions combined so far
+			int[] accumulated = new int[labels.size()];
+			for (int p = 0; p < numPartitions; p++) {
+				double visits = 0;
+				double combinedVisits = 0;
+				for (int s = 0; s < labels.size(); s++) {
+					visits += Math.pow(2, matches[s][p]);
+					accumulated[s] += matches[s][p];
+					combinedVisits += Math.pow(2, accumulated[s]);
+				}
+				cost += visits;
+				double size = Math.min(visits, Math.pow(2, partitioning.getPositions(p).length));
+				if (p == 0) {
+					combinedSize = size;
+				} else {
+					cost += combinedSize * size;
+					combinedSize = Math.min(combinedSize * size, combinedVisits);
+				}
+			}
+			return cost;
+		}
+	}
+}
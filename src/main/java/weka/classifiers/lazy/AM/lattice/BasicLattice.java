@@ -17,18 +17,27 @@
 package weka.classifiers.lazy.AM.lattice;
 
 import weka.classifiers.lazy.AM.AMUtils;
+import weka.classifiers.lazy.AM.LongKeyedMap;
 import weka.classifiers.lazy.AM.data.ClassifiedSupra;
 import weka.classifiers.lazy.AM.data.Subcontext;
 import weka.classifiers.lazy.AM.data.SubcontextList;
 import weka.classifiers.lazy.AM.data.Supracontext;
+import weka.classifiers.lazy.AM.label.IntLabel;
 import weka.classifiers.lazy.AM.label.Label;
+import weka.classifiers.lazy.AM.label.LongLabel;
 
 import java.math.BigInteger;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * This class holds the supracontextual lattice and does the work of filling
@@ -38,10 +47,23 @@ import java.util.Set;
  * lattice is a boolean algebra which models supra- and subcontexts for the AM
  * algorithm. Using boolean algebra allows efficient computation of these as
  * well as traversal of all subcontexts within a supracontext.
+ * <p>
+ * When the labels are {@link IntLabel IntLabels} or {@link LongLabel LongLabels} of small enough cardinality (see
+ * {@link SupraTable#useDense}), the positions are stored in an array indexed by label bits, and the supracontexts in a
+ * {@link SupraTable}; otherwise they are stored in a map. Given a pool, large lattices of the first kind are filled in
+ * parallel, with each thread owning the positions whose highest bits are in a certain range.
  *
  * @author Nate Glenn
  */
 public class BasicLattice implements Lattice {
+	/**
+	 * Dense lattices visiting fewer positions than this are filled on one thread by default
+	 */
+	static final double DEFAULT_MIN_PARALLEL_VISITS = 1 << 16;
+	/**
+	 * Number of shards of a lattice filled in parallel per thread of the pool
+	 */
+	private static final int SHARDS_PER_THREAD = 4;
 	/**
 	 * points to nothing, has no data or outcome.
 	 */
@@ -54,111 +76,323 @@ public class BasicLattice implements Lattice {
     /**
      * Lattice is a 2^n array of Supracontexts
      */
-    private final Map<Label, LinkedLatticeNode<ClassifiedSupra>> lattice;
+    private Map<Label, LinkedLatticeNode<ClassifiedSupra>> lattice;
+    /**
+     * Same as {@link #lattice}, but keyed by label bits when labels are {@link IntLabel}s or {@link LongLabel}s
+     */
+    private LongKeyedMap<LinkedLatticeNode<ClassifiedSupra>> bitsLattice;
+    /**
+     * When the labels are small enough, the supracontexts created from the {@link DenseShard DenseShards} once the
+     * lattice is filled; otherwise null, and {@link #lattice} or {@link #bitsLattice} is used
+     */
+    private Set<Supracontext> denseSupras;
+    /**
+     * Fills large dense lattices in parallel if not null
+     */
+    private final ForkJoinPool pool;
+    /**
+     * Dense lattices visiting fewer positions than this are filled on one thread, even if there is a pool
+     */
+    private final double minParallelVisits;
+    /**
+     * Supracontexts whose count reached zero during the current insertion
+     */
+    private List<LinkedLatticeNode<ClassifiedSupra>> zeroCountSupras;
+    /**
+     * True to fill the lattice using the {@link LatticeArena} of the current thread
+     */
+    private final boolean reuseStorage;
+    /**
+     * Provides the storage above while the lattice is being filled
+     */
+    private LatticeArena arena;
 	private boolean filled;
     // the current number of the subcontext being added
     private int index = -1;
+    private FillMonitor monitor;
+    // number of supracontexts visited, used to check the monitor regularly within large insertions
+    private long visits;
+    private long numHeterogeneous;
 
     /**
      * Initializes Supracontextual lattice to a 2^n length array of
      * Supracontexts, as well as the empty and heterogeneous supracontexts.
      */
     BasicLattice() {
+		this(null, false);
+    }
+
+    /**
+     * @param pool         pool in which large lattices are filled in parallel; null to always use the current thread.
+     *                     It is not shut down by this lattice.
+     * @param reuseStorage true to fill the lattice using storage kept by each thread from previous lattices (see
+     *                     {@link LatticeArena}), instead of allocating new storage
+     */
+    BasicLattice(ForkJoinPool pool, boolean reuseStorage) {
+		this(pool, DEFAULT_MIN_PARALLEL_VISITS, reuseStorage);
+    }
+
+    /**
+     * @param minParallelVisits lattices whose subcontexts visit fewer positions than this are filled on the current
+     *                          thread
+     */
+    BasicLattice(ForkJoinPool pool, double minParallelVisits, boolean reuseStorage) {
 		// TODO: dangit, now we have to support a blank constructor.
 		emptySupracontext = new LinkedLatticeNode<>(new ClassifiedSupra());
 		emptySupracontext.setNext(emptySupracontext);
-
-		lattice = new HashMap<>();
+		this.pool = pool;
+		this.minParallelVisits = minParallelVisits;
+		this.reuseStorage = reuseStorage;
     }
 
     @Override
-	public void fill(SubcontextList subList) {
+	public void fill(SubcontextList subList, FillMonitor monitor) throws InterruptedException, ExecutionException {
 		if (filled) {
 			throw new IllegalStateException("Lattice is already filled and cannot be filled again.");
 		}
 		filled = true;
-		// Fill the lattice with all of the subcontexts
-		for (Subcontext sub : subList) {
-			index++;
-			insert(sub);
+		this.monitor = monitor;
+		LatticeFillEvent event = new LatticeFillEvent();
+		event.begin();
+		arena = reuseStorage ? LatticeArena.acquire() : new LatticeArena();
+		lattice = arena.labelMap();
+		bitsLattice = arena.bitsMap();
+		zeroCountSupras = arena.zeroCountSupras();
+		try {
+			Iterator<Subcontext> subs = subList.iterator();
+			Label first = subs.hasNext() ? subs.next().getLabel() : null;
+			boolean denseLabels = first != null && SupraTable.toDenseLabel(first) != null;
+			double numVisits = denseLabels ? countVisits(subList) : 0;
+			if (denseLabels && SupraTable.useDense(first.getCardinality(), numVisits)) {
+				if (pool != null && pool.getParallelism() > 1 && numVisits >= minParallelVisits) {
+					fillSharded(subList);
+				} else {
+					fillDense(subList);
+				}
+			} else {
+				// Fill the lattice with all of the subcontexts
+				for (Subcontext sub : subList) {
+					index++;
+					insert(sub);
+					monitor.progress((index + 1) / (double) subList.size());
+				}
+			}
+		} finally {
+			// the supracontexts are all linked from the empty one or in denseSupras, so the storage is not needed
+			if (reuseStorage) {
+				arena.release();
+				lattice = null;
+				bitsLattice = null;
+				zeroCountSupras = null;
+			}
+			arena = null;
 		}
+		monitor.getRecorder().heterogeneousPruned(numHeterogeneous);
+		event.finish(this, subList);
 	}
 
+    private static double countVisits(SubcontextList subList) {
+        List<Label> labels = new ArrayList<>(subList.size());
+        for (Subcontext sub : subList) {
+            labels.add(sub.getLabel());
+        }
+        return SupraTable.countVisits(labels);
+    }
+
+    /**
+     * Fills the lattice with positions stored in an array indexed by label bits, and supracontexts stored in a
+     * {@link SupraTable}. The steps are the same as those of {@link #insert(Subcontext)}.
+     */
+    private void fillDense(SubcontextList subList) {
+        DenseShard shard = new DenseShard(0, subList.getCardinality(), arena, monitor);
+        for (Subcontext sub : subList) {
+            index++;
+            shard.insert(sub, index);
+            monitor.progress((index + 1) / (double) subList.size());
+        }
+        numHeterogeneous = shard.numHeterogeneous;
+        denseSupras = new HashSet<>(shard.getSupracontexts());
+    }
+
+    /**
+     * Fills the lattice in parallel in {@link #pool}. The positions are divided by their highest bits among several
+     * {@link DenseShard DenseShards}, each of which inserts every subcontext into the positions it owns, with its own
+     * supracontexts; no position or supracontext is shared between threads, so no locking is needed. A supracontext
+     * can be made by several shards, which only differ in their counts, so the counts are added up at the end.
+     */
+    private void fillSharded(SubcontextList subList) throws InterruptedException, ExecutionException {
+        int cardinality = subList.getCardinality();
+        // more shards than threads, since shards owning positions with more mismatches have more work
+        int shardBits = Math.min(cardinality,
+                31 - Integer.numberOfLeadingZeros(pool.getParallelism() * SHARDS_PER_THREAD));
+        int numShards = 1 << shardBits;
+        // the shards only check for cancellation; progress is reported from this thread as they finish
+        FillMonitor taskMonitor = monitor.withoutProgress();
+        CompletionService<DenseShard> completionService = new ExecutorCompletionService<>(pool);
+        for (int s = 0; s < numShards; s++) {
+            int shardIndex = s;
+            completionService.submit(() -> fillShard(subList, shardIndex, cardinality - shardBits, taskMonitor));
+        }
+        Map<ClassifiedSupra, ClassifiedSupra> supras = new HashMap<>();
+        for (int s = 0; s < numShards; s++) {
+            DenseShard shard = monitor.await(completionService.take());
+            numHeterogeneous += shard.numHeterogeneous;
+            for (ClassifiedSupra supra : shard.getSupracontexts()) {
+                supras.merge(supra, supra, (s1, s2) -> {
+                    DistributedLattice.addCount(s1, s2);
+                    return s1;
+                });
+            }
+            monitor.progress((s + 1) / (double) numShards);
+        }
+        index = subList.size() - 1;
+        denseSupras = new HashSet<>(supras.values());
+    }
+
+    /**
+     * Inserts every subcontext into the positions of one shard, using the storage of the current thread if
+     * {@link #reuseStorage} is set
+     */
+    private DenseShard fillShard(SubcontextList subList, int shardIndex, int lowBits, FillMonitor monitor) {
+        LatticeArena shardArena = reuseStorage ? LatticeArena.acquire() : new LatticeArena();
+        try {
+            DenseShard shard = new DenseShard(shardIndex, lowBits, shardArena, monitor);
+            int subIndex = 0;
+            for (Subcontext sub : subList) {
+                shard.insert(sub, subIndex++);
+            }
+            // make the supracontexts before the storage is reset
+            shard.getSupracontexts();
+            return shard;
+        } finally {
+            if (reuseStorage) shardArena.release();
+        }
+    }
+
     /**
      * Inserts sub into the lattice.
      *
      * @param sub Subcontext to be inserted
      */
     private void insert(Subcontext sub) {
-        // skip this if the supracontext to be added to is already
-        // heterogeneous;
-        // it would not be possible to make any non-heterogeneous supracontexts.
-        if (lattice.get(sub.getLabel()) == heteroSupra) return;
-        // add the sub to its label position
-        addToContext(sub, sub.getLabel());
-        // then add the sub to all of the children of its label position
-        Iterator<Label> si = sub.getLabel().descendantIterator();
-        while (si.hasNext()) {
-            addToContext(sub, si.next());
+        Label label = sub.getLabel();
+        // labels that fit in an int or long are looked up by their bits, so that no label is created per descendant
+        if (label instanceof IntLabel || label instanceof LongLabel) {
+            long labelBits = label instanceof IntLabel ? ((IntLabel) label).labelBits() & 0xFFFFFFFFL :
+                    ((LongLabel) label).labelBits();
+            long all = label.getCardinality() == Long.SIZE ? -1 : (1L << label.getCardinality()) - 1;
+            addToSubtree(sub, labelBits, ~labelBits & all);
+        } else {
+            if (lattice.get(label) == heteroSupra) return;
+            // add the sub to its label position
+            addToContext(sub, label);
+            // then add the sub to all of the children of its label position
+            Iterator<Label> si = label.descendantIterator();
+            while (si.hasNext()) {
+                addToContext(sub, si.next());
+                if ((++visits & FillMonitor.CHECKPOINT_MASK) == 0) monitor.checkpoint();
+            }
         }
         // remove supracontexts with count = 0 after every pass
         cleanSupra();
     }
 
+    /**
+     * Adds {@code sub} to the position with the given label bits and to its descendants, in a depth-first traversal
+     * which sets one more of the {@code matchBits} at each level, always above the ones set before, so that each
+     * descendant is reached once. Every descendant of a heterogeneous position is heterogeneous as well, so the
+     * subtree below a position which was already heterogeneous is skipped; one which only becomes heterogeneous now
+     * is still descended into, since its descendants have to be marked too.
+     *
+     * @param labelBits bits of the label of the supracontext to add the subcontext to
+     * @param matchBits the match bits which can be set to reach the positions below this one
+     */
+    private void addToSubtree(Subcontext sub, long labelBits, long matchBits) {
+        LinkedLatticeNode<ClassifiedSupra> supra = bitsLattice.get(labelBits);
+        if (supra == heteroSupra) return;
+        bitsLattice.put(labelBits, addToSupra(sub, supra));
+        if ((++visits & FillMonitor.CHECKPOINT_MASK) == 0) monitor.checkpoint();
+        for (long rest = matchBits; rest != 0; ) {
+            long bit = rest & -rest;
+            rest ^= bit;
+            // only higher bits are left in rest
+            addToSubtree(sub, labelBits | bit, rest);
+        }
+    }
+
     /**
      * @param sub subcontext to be added
      * @param label label of supracontext to add the subcontext to
      */
     private void addToContext(Subcontext sub, Label label) {
+        lattice.put(label, addToSupra(sub, lattice.get(label)));
+    }
+
+    /**
+     * @param sub subcontext to be added
+     * @param supra the node currently at the lattice location, or null if there is none
+     * @return the node that the lattice location should point to after adding the subcontext
+     */
+    private LinkedLatticeNode<ClassifiedSupra> addToSupra(Subcontext sub, LinkedLatticeNode<ClassifiedSupra> supra) {
         // the default value is the empty supracontext (leave null until now to
         // save time/space)
-        if (!lattice.containsKey(label)) {
-            lattice.put(label, emptySupracontext);
+        if (supra == null) {
+            supra = emptySupracontext;
         }
 
         // if the Supracontext is heterogeneous, ignore it
-        if (lattice.get(label) == heteroSupra) {
-            return;
+        if (supra == heteroSupra) {
+            return heteroSupra;
         }
         // if the following supracontext matches the current index, just
         // re-point to that one; this is a supracontext that was made in
         // the final else statement below this one.
-        else if (lattice.get(label).getNext().getIndex() == index) {
-            assert (lattice.get(label).getNext().getData().containsAll(lattice.get(label).getData()));
+        else if (supra.getNext().getIndex() == index) {
+            assert (supra.getNext().getData().containsAll(supra.getData()));
             // don't decrement count on emptySupracontext!
-            if (lattice.get(label) != emptySupracontext) lattice.get(label).decrementCount();
-            lattice.put(label, lattice.get(label).getNext());
-            lattice.get(label).incrementCount();
+            if (supra != emptySupracontext) decrementCount(supra);
+            supra = supra.getNext();
+            supra.incrementCount();
+            return supra;
         }
         // we now know that we will have to make a new Supracontext to contain
         // this subcontext; don't bother making heterogeneous supracontexts
-        else if (lattice.get(label).getSupracontext().wouldBeHetero(sub)) {
-            lattice.get(label).decrementCount();
-            lattice.put(label, heteroSupra);
-            return;
+        else if (supra.getSupracontext().wouldBeHetero(sub)) {
+            decrementCount(supra);
+            numHeterogeneous++;
+            return heteroSupra;
         }
         // otherwise make a new Supracontext and add it
         else {
             // don't decrement the count for the emptySupracontext!
-            if (lattice.get(label) != emptySupracontext) lattice.get(label).decrementCount();
-            lattice.put(label, lattice.get(label).insertAfter(sub, index));
+            if (supra != emptySupracontext) decrementCount(supra);
+            return supra.insertAfter(sub, index);
         }
     }
 
     /**
-     * Cycles through the the supracontexts and deletes ones with count=0
+     * Decrements the count of {@code supra}, remembering it for {@link #cleanSupra()} if the count reaches zero
+     */
+    private void decrementCount(LinkedLatticeNode<ClassifiedSupra> supra) {
+        if (supra.decrementCount()) zeroCountSupras.add(supra);
+    }
+
+    /**
+     * Unlinks the supracontexts whose counts reached zero while inserting the last subcontext. They cannot be unlinked
+     * right away, because the new supracontexts made during an insertion are linked after the ones they were copied
+     * from.
      */
     private void cleanSupra() {
-        for (LinkedLatticeNode<ClassifiedSupra> supra = emptySupracontext; supra.getNext() != emptySupracontext; ) {
-            if (supra.getNext().getCount().equals(BigInteger.ZERO)) {
-                supra.setNext(supra.getNext().getNext());
-            } else supra = supra.getNext();
+        for (LinkedLatticeNode<ClassifiedSupra> supra : zeroCountSupras) {
+            supra.unlink();
         }
+        zeroCountSupras.clear();
         assert (noZeroSupras());
     }
 
     @Override
     public Set<Supracontext> getSupracontexts() {
+        if (denseSupras != null) return new HashSet<>(denseSupras);
         Set<Supracontext> supList = new HashSet<>();
         LinkedLatticeNode<ClassifiedSupra> supra = emptySupracontext.getNext();
         while (supra != emptySupracontext) {
@@ -168,6 +402,117 @@ public class BasicLattice implements Lattice {
         return supList;
     }
 
+    /**
+     * The positions of a dense lattice whose highest bits are the index of the shard, stored in an array indexed by
+     * the remaining bits, and their supracontexts, stored in a {@link SupraTable}. A lattice filled on one thread has a
+     * single shard containing all of its positions.
+     */
+    private static final class DenseShard {
+        /**
+         * Marks heterogeneous positions in {@link #positions}
+         */
+        private static final int HETERO_SLOT = -1;
+
+        private final int shardBits;
+        private final int lowMask;
+        /**
+         * The {@link SupraTable} slot of each position of this shard, indexed by the low bits of the position label, or
+         * {@link #HETERO_SLOT}
+         */
+        private int[] positions;
+        private SupraTable table;
+        private final FillMonitor monitor;
+        // the current number of the subcontext being added
+        private int index = -1;
+        // number of positions visited, used to check the monitor regularly within large insertions
+        private long visits;
+        private long numHeterogeneous;
+        private List<ClassifiedSupra> supras;
+
+        /**
+         * @param shardIndex the highest bits of the positions in this shard
+         * @param lowBits    the number of bits of a position which are not determined by the shard
+         * @param arena      provides the storage of this shard
+         */
+        DenseShard(int shardIndex, int lowBits, LatticeArena arena, FillMonitor monitor) {
+            this.shardBits = shardIndex << lowBits;
+            this.lowMask = (1 << lowBits) - 1;
+            this.positions = arena.positions(1 << lowBits);
+            this.table = arena.table();
+            this.monitor = monitor;
+        }
+
+        /**
+         * Adds {@code sub} to the positions of this shard which are descendants of its label. The steps are the same as
+         * those of {@link BasicLattice#insert(Subcontext)}.
+         *
+         * @param subIndex the index of {@code sub} in the subcontext list
+         */
+        void insert(Subcontext sub, int subIndex) {
+            index = subIndex;
+            int labelBits = SupraTable.toDenseLabel(sub.getLabel()).labelBits();
+            // the mismatches of the label outside of the low bits must all be mismatches of this shard
+            if ((labelBits & ~lowMask & ~shardBits) != 0) return;
+            // start from the lowest descendant in this shard
+            addToSubtree(sub, labelBits & lowMask, ~labelBits & lowMask);
+            table.clean();
+        }
+
+        /**
+         * Same as {@link BasicLattice#addToSubtree(Subcontext, long, long)} for the position with the given low bits.
+         */
+        private void addToSubtree(Subcontext sub, int position, int matchBits) {
+            if (!addToPosition(sub, position)) return;
+            if ((++visits & FillMonitor.CHECKPOINT_MASK) == 0) monitor.checkpoint();
+            for (int rest = matchBits; rest != 0; ) {
+                int bit = rest & -rest;
+                rest ^= bit;
+                addToSubtree(sub, position | bit, rest);
+            }
+        }
+
+        /**
+         * Same as {@link BasicLattice#addToSupra(Subcontext, LinkedLatticeNode)} for the position with the given low
+         * bits.
+         *
+         * @return false if the position was already heterogeneous
+         */
+        private boolean addToPosition(Subcontext sub, int position) {
+            int slot = positions[position];
+            if (slot == HETERO_SLOT) return false;
+            int next = table.getNext(slot);
+            if (table.getIndex(next) == index) {
+                if (slot != SupraTable.EMPTY) table.decrementCount(slot);
+                table.incrementCount(next);
+                positions[position] = next;
+            } else if (table.wouldBeHetero(slot, sub)) {
+                table.decrementCount(slot);
+                numHeterogeneous++;
+                positions[position] = HETERO_SLOT;
+            } else {
+                if (slot != SupraTable.EMPTY) table.decrementCount(slot);
+                positions[position] = table.insertAfter(slot, sub, index);
+            }
+            return true;
+        }
+
+        /**
+         * @return the supracontexts of this shard; the first call must be made before its storage is reused
+         */
+        List<ClassifiedSupra> getSupracontexts() {
+            if (supras == null) {
+                supras = new ArrayList<>();
+                for (int slot = table.getNext(SupraTable.EMPTY); slot != SupraTable.EMPTY; slot = table.getNext(slot)) {
+                    supras.add(new ClassifiedSupra(table.getData(slot), BigInteger.valueOf(table.getCount(slot))));
+                }
+                // the storage is not needed anymore
+                positions = null;
+                table = null;
+            }
+            return supras;
+        }
+    }
+
 	/*
      * Below methods are for private debugging and asserting
 	 */
@@ -175,20 +520,27 @@ public class BasicLattice implements Lattice {
     // useful for private debugging on occasion
     @SuppressWarnings("unused")
     private String dumpLattice() {
+        // the positions are gone once the lattice is filled with reused storage
+        if (lattice == null) return "";
         StringBuilder sb = new StringBuilder();
         for (Map.Entry<Label, LinkedLatticeNode<ClassifiedSupra>> e : lattice.entrySet()) {
-            sb.append(e.getKey());
-            sb.append(':');
-            if (e.getValue() == heteroSupra) sb.append("[hetero]");
-            else sb.append(e.getValue());
-            sb.append(AMUtils.LINE_SEPARATOR);
+            dumpEntry(sb, e.getKey(), e.getValue());
         }
+        bitsLattice.forEach((bits, supra) -> dumpEntry(sb, Long.toBinaryString(bits), supra));
         return sb.toString();
     }
 
+    private void dumpEntry(StringBuilder sb, Object label, LinkedLatticeNode<ClassifiedSupra> supra) {
+        sb.append(label);
+        sb.append(':');
+        if (supra == heteroSupra) sb.append("[hetero]");
+        else sb.append(supra);
+        sb.append(AMUtils.LINE_SEPARATOR);
+    }
+
     private boolean noZeroSupras() {
         for (Supracontext supra : getSupracontexts()) {
-            if (supra.getCount().equals(BigInteger.ZERO)) return false;
+            if (supra.getLongCount() == 0) return false;
         }
         return true;
     }
@@ -17,7 +17,9 @@
 package weka.classifiers.lazy.AM.lattice;
 
 import weka.classifiers.lazy.AM.data.*;
+import weka.classifiers.lazy.AM.label.LabelPartitioning;
 import weka.classifiers.lazy.AM.label.Labeler;
+import weka.classifiers.lazy.AM.label.PartitionStrategy;
 
 import java.util.*;
 import java.util.concurrent.*;
@@ -31,6 +33,9 @@ import java.util.stream.Collectors;
  * @author Nathan Glenn
  */
 public class DistributedLattice implements Lattice {
+	private final ForkJoinPool pool;
+	private final PartitionStrategy partitionStrategy;
+	private final boolean reuseStorage;
 	private Set<Supracontext> supras;
 	private boolean filled;
 
@@ -42,18 +47,60 @@ public class DistributedLattice implements Lattice {
         return supras;
     }
 
-	public DistributedLattice(){}
+	/**
+	 * Creates a lattice which does its work in the {@link ForkJoinPool#commonPool() common pool}.
+	 */
+	public DistributedLattice() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param pool pool in which the sub-lattices are filled and combined; it is not shut down by this lattice
+	 */
+	public DistributedLattice(ForkJoinPool pool) {
+		this(pool, PartitionStrategy.CONTIGUOUS);
+	}
+
+	/**
+	 * @param pool              pool in which the sub-lattices are filled and combined; it is not shut down by this
+	 *                          lattice
+	 * @param partitionStrategy chooses which label positions go into each sub-lattice
+	 */
+	public DistributedLattice(ForkJoinPool pool, PartitionStrategy partitionStrategy) {
+		this(pool, partitionStrategy, false);
+	}
+
+	/**
+	 * @param reuseStorage true to fill each sub-lattice using storage kept by the pool thread filling it (see
+	 *                     {@link LatticeArena}), instead of allocating new storage
+	 */
+	DistributedLattice(ForkJoinPool pool, PartitionStrategy partitionStrategy, boolean reuseStorage) {
+		this.pool = pool;
+		this.partitionStrategy = partitionStrategy;
+		this.reuseStorage = reuseStorage;
+	}
+
+	/**
+	 * @param partitioning the partitions of the labels of the subcontext list this lattice will be filled with, which
+	 *                     have already been chosen, e.g. by a {@link LatticePlanner}
+	 */
+	DistributedLattice(ForkJoinPool pool, LabelPartitioning partitioning, boolean reuseStorage) {
+		this(pool, subList -> partitioning, reuseStorage);
+	}
 
     /**
 	 * {@inheritDoc}
-     * The number of sub-lattices is determined via {@link Labeler#numPartitions() subList.getLabeler().numPartitions()}.
+     * The sub-lattices are given by the {@link PartitionStrategy} of this lattice; by default, there is one for each
+     * {@link Labeler#partition label partition}.
+     * Progress is reported each time a sub-lattice is filled or two of them are combined.
      *
      * @param subList list of Subcontexts to add to the lattice
      * @throws ExecutionException If execution is rejected for some reason
      * @throws InterruptedException If any thread is interrupted for any reason (user presses ctrl-C, etc.)
+     * @throws IllegalArgumentException if the partition strategy does not split the labels into at least 2 partitions
      */
     @Override
-	public void fill(SubcontextList subList) throws InterruptedException, ExecutionException {
+	public void fill(SubcontextList subList, FillMonitor monitor) throws InterruptedException, ExecutionException {
 		if (filled) {
 			throw new IllegalStateException("Lattice is already filled and cannot be filled again.");
 		}
@@ -61,44 +108,84 @@ public class DistributedLattice implements Lattice {
 		if (subList.size() == 0) {
 			return;
 		}
-        Labeler labeler = subList.getLabeler();
+        LabelPartitioning partitioning = partitionStrategy.partition(subList);
+        int numLattices = partitioning.numPartitions();
+        if (numLattices < 2) throw new IllegalArgumentException(
+                "Labels of cardinality " + subList.getCardinality() + " were not split into more than one partition");
+        LatticeFillEvent event = new LatticeFillEvent();
+        event.begin();
+        // the tasks only check for cancellation; progress is reported from this thread as they finish
+        FillMonitor taskMonitor = monitor.withoutProgress();
 
-        ExecutorService executor = Executors.newWorkStealingPool(ForkJoinPool.getCommonPoolParallelism());
         // first, create heterogeneous lattices by splitting the labels contained in the subcontext list
-        CompletionService<Set<Supracontext>> taskCompletionService = new ExecutorCompletionService<>(executor);
-        int numLattices = labeler.numPartitions();
+        CompletionService<Set<Supracontext>> taskCompletionService = new ExecutorCompletionService<>(pool);
         for (int i = 0; i < numLattices; i++) {
             // fill each heterogeneous lattice with a given label partition
 			final int partitionIndex = i;
-			taskCompletionService.submit(() -> fillLatticePartition(subList, partitionIndex));
+			taskCompletionService.submit(() -> fillLatticePartition(subList, partitioning, partitionIndex, reuseStorage,
+					taskMonitor));
         }
+        // each lattice is filled once and each pair is combined once
+        int numStages = 2 * numLattices - 1;
+        int stagesDone = 0;
 
 		// then combine them 2 at a time, consolidating duplicate supracontexts
 		if (numLattices > 2) {
 			for (int i = 1; i < numLattices - 1; i++) {
-				Set<Supracontext> supras1 = taskCompletionService.take().get();
-				Set<Supracontext> supras2 = taskCompletionService.take().get();
+				Set<Supracontext> supras1 = monitor.await(taskCompletionService.take());
+				monitor.progress(++stagesDone / (double) numStages);
+				Set<Supracontext> supras2 = monitor.await(taskCompletionService.take());
+				monitor.progress(++stagesDone / (double) numStages);
 				taskCompletionService.submit(() -> latticeProduct(
 						supras1,
 						supras2,
-						IntermediateProduct::new));
+						(supra, others) -> new IntermediateProduct(supra, others, taskMonitor),
+						false,
+						taskMonitor.getRecorder()));
 			}
 		}
         // the final combination creates ClassifiedSupras and ignores the heterogeneous ones.
-        supras = latticeProduct(taskCompletionService.take().get(),
-                                   taskCompletionService.take().get(),
-				FinalizingProduct::new
-        );
-        executor.shutdownNow();
+        Set<Supracontext> supras1 = monitor.await(taskCompletionService.take());
+        monitor.progress(++stagesDone / (double) numStages);
+        Set<Supracontext> supras2 = monitor.await(taskCompletionService.take());
+        monitor.progress(++stagesDone / (double) numStages);
+        // run in the pool so that the product tasks are forked there instead of in the common pool
+        supras = monitor.await(pool.submit(() -> latticeProduct(
+                supras1,
+                supras2,
+                (supra, others) -> new FinalizingProduct(supra, others, taskMonitor),
+                true,
+                taskMonitor.getRecorder())));
+        monitor.progress(1);
+        event.finish(this, subList);
     }
 
 	/**
 	 * Fills a heterogeneous lattice with subcontexts using the given label partition index.
 	 */
-	private static Set<Supracontext> fillLatticePartition(SubcontextList subList, int partitionIndex) {
-		HeterogeneousLattice lattice = new HeterogeneousLattice(partitionIndex);
-		lattice.fill(subList);
-		return lattice.getSupracontexts();
+	private static Set<Supracontext> fillLatticePartition(SubcontextList subList, LabelPartitioning partitioning,
+														 int partitionIndex, boolean reuseStorage,
+														 FillMonitor monitor) {
+		long start = System.nanoTime();
+		HeterogeneousLattice lattice = new HeterogeneousLattice(partitioning, partitionIndex, reuseStorage);
+		lattice.fill(subList, monitor);
+		// the products work directly on the BitSetSupras of the lattice, without the linked nodes wrapping them
+		Set<Supracontext> supras = new HashSet<>();
+		for (Supracontext supra : lattice.getSupracontexts()) {
+			supras.add(toBitSetSupra(supra, subList));
+		}
+		monitor.getRecorder().partitionFilled(System.nanoTime() - start, supras.size());
+		return supras;
+	}
+
+	/**
+	 * @return {@code supra} if it is a {@link BitSetSupra}, the one wrapped by {@code supra} if it is a
+	 * {@link LinkedLatticeNode}, and otherwise a copy of {@code supra}
+	 */
+	private static BitSetSupra toBitSetSupra(Supracontext supra, SubcontextList subList) {
+		if (supra instanceof LinkedLatticeNode) supra = ((LinkedLatticeNode<?>) supra).getSupracontext();
+		if (supra instanceof BitSetSupra) return (BitSetSupra) supra;
+		return new BitSetSupra(subList, supra.getData(), supra.getCount());
 	}
 
     /**
@@ -107,8 +194,13 @@ public class DistributedLattice implements Lattice {
      * step is partitioned and run in several threads.
      *
      * @param supraProductConstructor the constructor of the task which will produce the product of one supracontext with a set of supracontexts
+     * @param finalProduct true if this is the final product, which removes heterogeneous supracontexts
+     * @param recorder receives the time taken and the size of the product
      */
-	private Set<Supracontext> latticeProduct(Set<Supracontext> supras1, Set<Supracontext> supras2, BiFunction<Supracontext, Set<Supracontext>, RecursiveTask<CanonicalizingSet<Supracontext>>> supraProductConstructor) {
+	private Set<Supracontext> latticeProduct(Set<Supracontext> supras1, Set<Supracontext> supras2, BiFunction<Supracontext, Set<Supracontext>, RecursiveTask<CanonicalizingSet<Supracontext>>> supraProductConstructor, boolean finalProduct, FillRecorder recorder) {
+		LatticeProductEvent event = new LatticeProductEvent();
+		event.begin();
+		long start = System.nanoTime();
 		Collection<RecursiveTask<CanonicalizingSet<Supracontext>>> subTasks =
 				supras1.stream().map(supra -> supraProductConstructor.apply(supra, supras2)).
 						collect(Collectors.toList());
@@ -117,9 +209,19 @@ public class DistributedLattice implements Lattice {
 
 		// calling join here signals to the ForkJoinPool that this task is blocking and should
 		// be rescheduled
-		return combined.parallelStream().map(RecursiveTask::join).
+		Set<Supracontext> product = combined.parallelStream().map(RecursiveTask::join).
 				reduce(DistributedLattice::removeDuplicateResults).
 				orElse(CanonicalizingSet.emptySet());
+		recorder.productComputed(System.nanoTime() - start, product.size());
+		event.end();
+		if (event.shouldCommit()) {
+			event.finalProduct = finalProduct;
+			event.leftSize = supras1.size();
+			event.rightSize = supras2.size();
+			event.outputSize = product.size();
+			event.commit();
+		}
+		return product;
 	}
 
 	/**
@@ -137,25 +239,63 @@ public class DistributedLattice implements Lattice {
 			// add to the existing count if the same supra was formed from a
 			// previous combination
 			supras1.merge(supra, (s1, s2) -> {
-				s1.setCount(s1.getCount().add(s2.getCount()));
+				addCount(s1, s2);
 				return s1;
 			});
 		}
 		return supras1;
 	}
 
+	/**
+	 * Adds the count of {@code supra2} to that of {@code supra1}, using long arithmetic unless it overflows.
+	 */
+	static void addCount(Supracontext supra1, Supracontext supra2) {
+		long count1 = supra1.getLongCount();
+		long count2 = supra2.getLongCount();
+		if (count1 >= 0 && count2 >= 0) {
+			try {
+				supra1.setCount(Math.addExact(count1, count2));
+				return;
+			} catch (ArithmeticException e) {
+				// fall through to BigInteger
+			}
+		}
+		supra1.setCount(supra1.getCount().add(supra2.getCount()));
+	}
+
+	/**
+	 * Sets the count of {@code product} to the product of the counts of {@code supra1} and {@code supra2}, using long
+	 * arithmetic unless it overflows.
+	 */
+	private static void setProductCount(Supracontext product, Supracontext supra1, Supracontext supra2) {
+		long count1 = supra1.getLongCount();
+		long count2 = supra2.getLongCount();
+		if (count1 >= 0 && count2 >= 0) {
+			try {
+				product.setCount(Math.multiplyExact(count1, count2));
+				return;
+			} catch (ArithmeticException e) {
+				// fall through to BigInteger
+			}
+		}
+		product.setCount(supra1.getCount().multiply(supra2.getCount()));
+	}
+
 	static class IntermediateProduct extends RecursiveTask<CanonicalizingSet<Supracontext>> {
         private final Supracontext supra1;
         private final Set<Supracontext> supras2;
+        private final FillMonitor monitor;
 
-        IntermediateProduct(Supracontext supra1, Set<Supracontext> supras2) {
+        IntermediateProduct(Supracontext supra1, Set<Supracontext> supras2, FillMonitor monitor) {
             this.supra1 = supra1;
             this.supras2 = supras2;
+            this.monitor = monitor;
         }
 
 		@Override
 		protected CanonicalizingSet<Supracontext> compute() {
-			BasicSupra newSupra;
+			monitor.checkpoint();
+			BitSetSupra newSupra;
 			CanonicalizingSet<Supracontext> combinedSupras = new CanonicalizingSet<>();
 			for (Supracontext supra2 : supras2) {
 				newSupra = product(supra1, supra2);
@@ -163,7 +303,7 @@ public class DistributedLattice implements Lattice {
 					// add to the existing count if the same supra was formed from a
 					// previous combination
 					combinedSupras.merge(newSupra, (s1, s2) -> {
-						s1.setCount(s1.getCount().add(s2.getCount()));
+						addCount(s1, s2);
 						return s1;
 					});
 				}
@@ -181,35 +321,28 @@ public class DistributedLattice implements Lattice {
          * @param supra2 second partial supracontext to combine
          * @return A new partial supracontext, or null if it would have been empty.
          */
-        private BasicSupra product(Supracontext supra1, Supracontext supra2) {
-            Set<Subcontext> smaller;
-            Set<Subcontext> larger;
-            if (supra1.getData().size() > supra2.getData().size()) {
-                larger = supra1.getData();
-                smaller = supra2.getData();
-            } else {
-                smaller = supra1.getData();
-                larger = supra2.getData();
-            }
-            Set<Subcontext> combinedSubs = new HashSet<>(smaller);
-            combinedSubs.retainAll(larger);
-
-            if (combinedSubs.isEmpty()) return null;
-            return new BasicSupra(combinedSubs, supra1.getCount().multiply(supra2.getCount()));
+        private BitSetSupra product(Supracontext supra1, Supracontext supra2) {
+            BitSetSupra combined = ((BitSetSupra) supra1).intersect((BitSetSupra) supra2);
+            if (combined == null) return null;
+            setProductCount(combined, supra1, supra2);
+            return combined;
         }
 	}
 
     static class FinalizingProduct extends RecursiveTask<CanonicalizingSet<Supracontext>> {
         private final Supracontext supra1;
         private final Set<Supracontext> supras2;
+        private final FillMonitor monitor;
 
-        FinalizingProduct(Supracontext supra1, Set<Supracontext> supras2) {
+        FinalizingProduct(Supracontext supra1, Set<Supracontext> supras2, FillMonitor monitor) {
             this.supra1 = supra1;
             this.supras2 = supras2;
+            this.monitor = monitor;
         }
 
 		@Override
 		protected CanonicalizingSet<Supracontext> compute() {
+			monitor.checkpoint();
 			ClassifiedSupra supra;
 			CanonicalizingSet<Supracontext> finalSupras = new CanonicalizingSet<>();
 			for (Supracontext supra2 : supras2) {
@@ -218,7 +351,7 @@ public class DistributedLattice implements Lattice {
 				// add to the existing count if the same supra was formed from a
 				// previous combination
 				finalSupras.merge(supra, (s1, s2) -> {
-					s1.setCount(s1.getCount().add(s2.getCount()));
+					addCount(s1, s2);
 					return s1;
 				});
 			}
@@ -238,27 +371,14 @@ public class DistributedLattice implements Lattice {
          * supracontext is heterogeneous
          */
         private ClassifiedSupra product(Supracontext supra1, Supracontext supra2) {
-            Set<Subcontext> smaller;
-            Set<Subcontext> larger;
-            if (supra1.getData().size() > supra2.getData().size()) {
-                larger = supra1.getData();
-                smaller = supra2.getData();
-            } else {
-                larger = supra2.getData();
-                smaller = supra1.getData();
-            }
-            ClassifiedSupra supra = new ClassifiedSupra();
-            for (Subcontext sub : smaller)
-                if (larger.contains(sub)) {
-                    supra.add(sub);
-                    if (supra.isHeterogeneous()) {
-                        return null;
-                    }
-                }
-            if (supra.isEmpty()) {
+            BitSetSupra combined = ((BitSetSupra) supra1).intersect((BitSetSupra) supra2);
+            if (combined == null) return null;
+            ClassifiedSupra supra = new ClassifiedSupra(combined);
+            if (supra.isHeterogeneous()) {
+                monitor.getRecorder().heterogeneousPruned(1);
                 return null;
             }
-            supra.setCount(supra1.getCount().multiply(supra2.getCount()));
+            setProductCount(supra, supra1, supra2);
             return supra;
         }
     }
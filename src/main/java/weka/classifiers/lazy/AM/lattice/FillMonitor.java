@@ -0,0 +1,151 @@
+package weka.classifiers.lazy.AM.lattice;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.DoubleConsumer;
+
+/**
+ * Observes and controls a {@link Lattice#fill(weka.classifiers.lazy.AM.data.SubcontextList, FillMonitor) lattice
+ * fill}. The lattice reports the fraction of its work that is done, and periodically calls {@link #checkpoint()},
+ * which stops the fill with a {@link CancellationException} if the monitor has been {@link #cancel() cancelled} or its
+ * deadline has passed.
+ * <p>
+ * Cancellation is cooperative: a lattice notices it at its next checkpoint, so a fill may continue for a short time
+ * after it has been cancelled. Multi-threaded lattices check from all of their threads.
+ * <p>
+ * The same monitor can be checked before the fill, while
+ * {@link LatticePlanner#plan(weka.classifiers.lazy.AM.data.SubcontextList, FillMonitor) planning} and
+ * {@link weka.classifiers.lazy.AM.data.SubcontextList#pruneHeterogeneous(FillMonitor) pruning}, so that its deadline
+ * covers the whole classification.
+ * <p>
+ * A monitor may also carry a {@link FillRecorder}, to which lattices report measurements of their internal work.
+ */
+public class FillMonitor {
+	/**
+	 * Lattices check the monitor once per 4096 supracontexts visited (when the visit count masked with this is 0), so
+	 * that the insertion of a single subcontext with many matches can also be stopped
+	 */
+	static final int CHECKPOINT_MASK = (1 << 12) - 1;
+
+	private final DoubleConsumer progressListener;
+	private final FillRecorder recorder;
+	private final AtomicBoolean cancelled;
+	private final boolean hasDeadline;
+	private final long deadline;
+
+	/**
+	 * Creates a monitor with no progress listener and no deadline; the fill can still be {@link #cancel() cancelled}.
+	 */
+	public FillMonitor() {
+		this(null, null, FillRecorder.NONE);
+	}
+
+	/**
+	 * @param progressListener called with the fraction of the fill that is done, between 0 and 1; may be called from
+	 *                         several threads, but not concurrently. May be null.
+	 * @param timeLimit        how long the fill may take, starting now; null for no limit
+	 */
+	public FillMonitor(DoubleConsumer progressListener, Duration timeLimit) {
+		this(progressListener, timeLimit, FillRecorder.NONE);
+	}
+
+	/**
+	 * @param progressListener called with the fraction of the fill that is done; may be null
+	 * @param timeLimit        how long the fill may take, starting now; null for no limit
+	 * @param recorder         receives measurements of the work done during the fill
+	 */
+	public FillMonitor(DoubleConsumer progressListener, Duration timeLimit, FillRecorder recorder) {
+		this(progressListener, recorder, new AtomicBoolean(), timeLimit != null,
+				timeLimit == null ? 0 : System.nanoTime() + timeLimit.toNanos());
+	}
+
+	private FillMonitor(DoubleConsumer progressListener, FillRecorder recorder, AtomicBoolean cancelled,
+						boolean hasDeadline, long deadline) {
+		this.progressListener = progressListener;
+		this.recorder = recorder;
+		this.cancelled = cancelled;
+		this.hasDeadline = hasDeadline;
+		this.deadline = deadline;
+	}
+
+	/**
+	 * @return a monitor which shares the cancellation, deadline and recorder of this one, but does not report
+	 * progress; used for the parts of a fill whose progress is reported as a whole
+	 */
+	FillMonitor withoutProgress() {
+		if (progressListener == null) return this;
+		return new FillMonitor(null, recorder, cancelled, hasDeadline, deadline);
+	}
+
+	/**
+	 * @return the recorder for measurements of the fill; never null
+	 */
+	FillRecorder getRecorder() {
+		return recorder;
+	}
+
+	/**
+	 * Requests that the fill stop at its next checkpoint.
+	 */
+	public void cancel() {
+		cancelled.set(true);
+	}
+
+	/**
+	 * @return true if {@link #cancel()} has been called
+	 */
+	public boolean isCancelled() {
+		return cancelled.get();
+	}
+
+	/**
+	 * @return true if this monitor has a time limit and it has run out
+	 */
+	public boolean isDeadlineExceeded() {
+		return hasDeadline && System.nanoTime() - deadline > 0;
+	}
+
+	/**
+	 * Called by lattices during a fill.
+	 *
+	 * @throws CancellationException if the fill has been cancelled or has run out of time
+	 */
+	public void checkpoint() {
+		if (cancelled.get()) throw new CancellationException("Lattice fill was cancelled");
+		if (isDeadlineExceeded()) throw new CancellationException("Lattice fill ran out of time");
+	}
+
+	/**
+	 * Reports progress to the listener, if there is one, and then {@link #checkpoint() checks} for cancellation.
+	 *
+	 * @param fractionDone the fraction of the fill that is done, between 0 and 1
+	 * @throws CancellationException if the fill has been cancelled or has run out of time
+	 */
+	public void progress(double fractionDone) {
+		if (progressListener != null) progressListener.accept(fractionDone);
+		checkpoint();
+	}
+
+	/**
+	 * Waits for a task that was submitted during a fill. If the task was stopped by a checkpoint of this monitor, the
+	 * {@link CancellationException} is rethrown as is instead of being wrapped in an {@link ExecutionException}.
+	 */
+	<T> T await(Future<T> future) throws InterruptedException, ExecutionException {
+		try {
+			return future.get();
+		} catch (CancellationException e) {
+			checkpoint();
+			throw e;
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof CancellationException) {
+				// rethrow with the reason for stopping
+				checkpoint();
+				throw (CancellationException) e.getCause();
+			}
+			throw e;
+		}
+	}
+}
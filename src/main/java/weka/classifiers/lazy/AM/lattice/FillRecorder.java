@@ -0,0 +1,39 @@
+package weka.classifiers.lazy.AM.lattice;
+
+/**
+ * Receives measurements of the internal work done while filling a lattice, for monitoring. Implementations must be
+ * thread-safe, since multi-threaded lattices record from several threads at once. All methods do nothing by default.
+ */
+public interface FillRecorder {
+	/**
+	 * Records nothing
+	 */
+	FillRecorder NONE = new FillRecorder() {
+	};
+
+	/**
+	 * Called when one label partition of a {@link DistributedLattice} has been filled.
+	 *
+	 * @param nanos            time taken to fill the partition
+	 * @param numSupracontexts number of supracontexts in the filled partition
+	 */
+	default void partitionFilled(long nanos, int numSupracontexts) {
+	}
+
+	/**
+	 * Called when two sets of supracontexts of a {@link DistributedLattice} have been combined.
+	 *
+	 * @param nanos            time taken to combine them
+	 * @param numSupracontexts number of supracontexts in the combination
+	 */
+	default void productComputed(long nanos, int numSupracontexts) {
+	}
+
+	/**
+	 * Called when supracontexts were found to be heterogeneous and removed from a lattice.
+	 *
+	 * @param count the number of heterogeneous supracontexts removed
+	 */
+	default void heterogeneousPruned(long count) {
+	}
+}
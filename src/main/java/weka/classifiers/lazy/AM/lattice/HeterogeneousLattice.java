@@ -16,17 +16,23 @@
 
 package weka.classifiers.lazy.AM.lattice;
 
+import weka.classifiers.lazy.AM.LongKeyedMap;
 import weka.classifiers.lazy.AM.data.BasicSupra;
+import weka.classifiers.lazy.AM.data.BitSetSupra;
 import weka.classifiers.lazy.AM.data.Subcontext;
 import weka.classifiers.lazy.AM.data.SubcontextList;
 import weka.classifiers.lazy.AM.data.Supracontext;
+import weka.classifiers.lazy.AM.label.IntLabel;
 import weka.classifiers.lazy.AM.label.Label;
+import weka.classifiers.lazy.AM.label.LabelPartitioning;
 import weka.classifiers.lazy.AM.label.Labeler;
+import weka.classifiers.lazy.AM.label.LongLabel;
 
 import java.math.BigInteger;
-import java.util.HashMap;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -54,6 +60,10 @@ import java.util.Set;
  * <p>
  * In terms of processing power, more is required to use sublattices. However,
  * using threads the processing of each can be done in parallel.
+ * <p>
+ * Partitions of small enough cardinality (see {@link SupraTable#useDense}), which include all of those made by a
+ * {@link Labeler}, store their positions in an array indexed by label bits and their supracontexts in a
+ * {@link SupraTable}.
  *
  * @author Nate Glenn
  * @author Nathan Glenn
@@ -62,18 +72,53 @@ public class HeterogeneousLattice implements Lattice {
 
 	private final int partitionIndex;
 	/**
+	 * Splits labels into partitions, or null to use the partitions of the labeler
+	 */
+	private final LabelPartitioning partitioning;
+	/**
      * Lattice is a 2^n array of Supracontexts
      */
-    private final Map<Label, LinkedLatticeNode<BasicSupra>> lattice;
+    private Map<Label, LinkedLatticeNode<Supracontext>> lattice;
+    /**
+     * Same as {@link #lattice}, but keyed by label bits when labels are {@link IntLabel}s or {@link LongLabel}s
+     */
+    private LongKeyedMap<LinkedLatticeNode<Supracontext>> bitsLattice;
 
     // the current number of the subcontext being added
     private int index = -1;
 
     /**
-     * All points in the lattice point to the empty supracontext by default.
+     * All points in the lattice point to the empty supracontext by default. When the lattice is filled, this is replaced
+     * with a {@link BitSetSupra} for the subcontexts of the list, so that the supracontexts can be combined quickly by
+     * a {@link DistributedLattice}.
+     */
+    private LinkedLatticeNode<Supracontext> emptySupracontext;
+    /**
+     * When the partition labels are small enough, the {@link SupraTable} slot of each position, indexed by label bits;
+     * otherwise null, and {@link #lattice} or {@link #bitsLattice} is used
+     */
+    private int[] positions;
+    private SupraTable table;
+    /**
+     * The supracontexts created from {@link #table} once the lattice is filled
+     */
+    private Set<Supracontext> denseSupras;
+    /**
+     * Supracontexts whose count reached zero during the current insertion
+     */
+    private List<LinkedLatticeNode<Supracontext>> zeroCountSupras;
+    /**
+     * True to fill the lattice using the {@link LatticeArena} of the current thread
+     */
+    private final boolean reuseStorage;
+    /**
+     * Provides the storage above while the lattice is being filled
      */
-    private final LinkedLatticeNode<BasicSupra> emptySupracontext;
+    private LatticeArena arena;
     private boolean filled;
+    private FillMonitor monitor = new FillMonitor();
+    // number of supracontexts visited, used to check the monitor regularly within large insertions
+    private long visits;
 
     /**
      * Initializes Supracontextual lattice to a 2^n length array of
@@ -82,28 +127,124 @@ public class HeterogeneousLattice implements Lattice {
      * @param partitionIndex       which label partition to use in assigning subcontexts to supracontexts
      */
     public HeterogeneousLattice(int partitionIndex) {
+		this(null, partitionIndex);
+	}
+
+    /**
+     * @param partitioning   how labels are split into partitions; null to use the {@link Labeler#partition partitions of
+     *                       the labeler}
+     * @param partitionIndex which partition of {@code partitioning} to use in assigning subcontexts to supracontexts
+     */
+    public HeterogeneousLattice(LabelPartitioning partitioning, int partitionIndex) {
+		this(partitioning, partitionIndex, false);
+    }
+
+    /**
+     * @param reuseStorage true to fill the lattice using storage kept by the current thread from previous lattices (see
+     *                     {@link LatticeArena}), instead of allocating new storage
+     */
+    HeterogeneousLattice(LabelPartitioning partitioning, int partitionIndex, boolean reuseStorage) {
+		this.partitioning = partitioning;
 		this.partitionIndex = partitionIndex;
+		this.reuseStorage = reuseStorage;
 		emptySupracontext = new LinkedLatticeNode<>(new BasicSupra());
 		emptySupracontext.setNext(emptySupracontext);
-
-		lattice = new HashMap<>();
     }
 
     @Override
-	public void fill(SubcontextList subList) {
+	public void fill(SubcontextList subList, FillMonitor monitor) {
     	if (filled) {
     		throw new IllegalStateException("Lattice is already filled and cannot be filled again.");
 		}
     	filled = true;
+    	this.monitor = monitor;
+		emptySupracontext = new LinkedLatticeNode<>(new BitSetSupra(subList));
+		emptySupracontext.setNext(emptySupracontext);
 		Labeler labeler = subList.getLabeler();
+		LatticeFillEvent event = new LatticeFillEvent();
+		event.begin();
 
-		// Fill the lattice with all of the subcontexts, masking labels
+		// mask the labels
+		List<Label> labels = new ArrayList<>(subList.size());
 		for (Subcontext sub : subList) {
-			index++;
-			insert(sub, labeler.partition(sub.getLabel(), partitionIndex));
+			labels.add(partitioning == null ? labeler.partition(sub.getLabel(), partitionIndex) :
+					partitioning.partition(sub.getLabel(), partitionIndex));
 		}
+		arena = reuseStorage ? LatticeArena.acquire() : new LatticeArena();
+		lattice = arena.labelMap();
+		bitsLattice = arena.bitsMap();
+		zeroCountSupras = arena.zeroCountSupras();
+		try {
+			if (!labels.isEmpty() && SupraTable.toDenseLabel(labels.get(0)) != null &&
+					SupraTable.useDense(labels.get(0).getCardinality(), SupraTable.countVisits(labels))) {
+				fillDense(subList, labels);
+			} else {
+				// Fill the lattice with all of the subcontexts
+				Iterator<Label> labelIterator = labels.iterator();
+				for (Subcontext sub : subList) {
+					index++;
+					insert(sub, labelIterator.next());
+					monitor.progress((index + 1) / (double) subList.size());
+				}
+			}
+		} finally {
+			// the supracontexts are all linked from the empty one or in denseSupras, so the storage is not needed
+			if (reuseStorage) {
+				arena.release();
+				lattice = null;
+				bitsLattice = null;
+				zeroCountSupras = null;
+				positions = null;
+				table = null;
+			}
+			arena = null;
+		}
+		event.partition = partitionIndex;
+		event.finish(this, subList);
 	}
 
+    /**
+     * Fills the lattice with positions stored in an array indexed by label bits, and supracontexts stored in a
+     * {@link SupraTable}. The steps are the same as those of {@link #insert(Subcontext, Label)}.
+     *
+     * @param labels the partition label of each subcontext
+     */
+    private void fillDense(SubcontextList subList, List<Label> labels) {
+        positions = arena.positions(1 << labels.get(0).getCardinality());
+        table = arena.table();
+        Iterator<Label> labelIterator = labels.iterator();
+        for (Subcontext sub : subList) {
+            index++;
+            IntLabel label = SupraTable.toDenseLabel(labelIterator.next());
+            addToDensePosition(sub, label.labelBits());
+            label.forEachDescendant(bits -> {
+                addToDensePosition(sub, bits);
+                if ((++visits & FillMonitor.CHECKPOINT_MASK) == 0) monitor.checkpoint();
+            });
+            table.clean();
+            monitor.progress((index + 1) / (double) subList.size());
+        }
+        denseSupras = new HashSet<>();
+        for (int slot = table.getNext(SupraTable.EMPTY); slot != SupraTable.EMPTY; slot = table.getNext(slot)) {
+            denseSupras.add(new BitSetSupra(subList, table.getData(slot), BigInteger.valueOf(table.getCount(slot))));
+        }
+    }
+
+    /**
+     * Same as {@link #addToSupra(Subcontext, LinkedLatticeNode)} for the position with the given label bits.
+     */
+    private void addToDensePosition(Subcontext sub, int position) {
+        int slot = positions[position];
+        int next = table.getNext(slot);
+        if (slot != SupraTable.EMPTY) table.decrementCount(slot);
+        if (table.getIndex(next) == index) {
+            table.incrementCount(next);
+            positions[position] = next;
+        } else {
+            positions[position] = table.insertAfter(slot, sub, index);
+        }
+    }
+
     /**
      * Inserts sub into the lattice, into location given by label
      *
@@ -111,60 +252,98 @@ public class HeterogeneousLattice implements Lattice {
      * @param label label to be assigned to the subcontext
      */
     public void insert(Subcontext sub, Label label) {
-        addToContext(sub, label);
-        Iterator<Label> si = label.descendantIterator();
-        while (si.hasNext()) {
-            addToContext(sub, si.next());
+        // labels that fit in an int or long are looked up by their bits, so that no label is created per descendant
+        if (label instanceof IntLabel) {
+            IntLabel intLabel = (IntLabel) label;
+            addToContext(sub, intLabel.labelBits());
+            intLabel.forEachDescendant(bits -> addToDescendant(sub, bits));
+        } else if (label instanceof LongLabel) {
+            LongLabel longLabel = (LongLabel) label;
+            addToContext(sub, longLabel.labelBits());
+            longLabel.forEachDescendant(bits -> addToDescendant(sub, bits));
+        } else {
+            addToContext(sub, label);
+            Iterator<Label> si = label.descendantIterator();
+            while (si.hasNext()) {
+                addToContext(sub, si.next());
+                if ((++visits & FillMonitor.CHECKPOINT_MASK) == 0) monitor.checkpoint();
+            }
         }
         // remove supracontexts with count = 0 after every pass
         cleanSupra();
     }
 
+    private void addToDescendant(Subcontext sub, long labelBits) {
+        addToContext(sub, labelBits);
+        if ((++visits & FillMonitor.CHECKPOINT_MASK) == 0) monitor.checkpoint();
+    }
+
     /**
      * Add the given subcontext to the supracontext with the given label
      */
     private void addToContext(Subcontext sub, Label label) {
+        lattice.put(label, addToSupra(sub, lattice.get(label)));
+    }
+
+    /**
+     * Add the given subcontext to the supracontext whose label has the given bits
+     */
+    private void addToContext(Subcontext sub, long labelBits) {
+        bitsLattice.put(labelBits, addToSupra(sub, bitsLattice.get(labelBits)));
+    }
+
+    /**
+     * @param supra the node currently at the lattice location, or null if there is none
+     * @return the node that the lattice location should point to after adding the subcontext
+     */
+    private LinkedLatticeNode<Supracontext> addToSupra(Subcontext sub, LinkedLatticeNode<Supracontext> supra) {
         // the default value is the empty supracontext (leave null until now to
         // save time/space)
-        if (!lattice.containsKey(label)) {
-            lattice.put(label, emptySupracontext);
+        if (supra == null) {
+            supra = emptySupracontext;
         }
 
         // if the following supracontext matches the current index, just repoint
         // to that one; this is a supracontext that was made in the final else
         // statement below this one.
-        if (lattice.get(label).getNext().getIndex() == index) {
-            // assert
-            // (lattice.get(label).getNext().getData().containsAll(lattice
-            // .get(label).getData()));
+        if (supra.getNext().getIndex() == index) {
             // don't decrement count on emptySupracontext!
-            if (lattice.get(label) != emptySupracontext) lattice.get(label).decrementCount();
-            lattice.put(label, lattice.get(label).getNext());
-            lattice.get(label).incrementCount();
+            if (supra != emptySupracontext) decrementCount(supra);
+            supra = supra.getNext();
+            supra.incrementCount();
+            return supra;
         }
         // otherwise make a new Supracontext and add it
         else {
             // don't decrement the count for the emptySupracontext!
-            if (lattice.get(label) != emptySupracontext) lattice.get(label).decrementCount();
-            lattice.put(label, lattice.get(label).insertAfter(sub, index));
+            if (supra != emptySupracontext) decrementCount(supra);
+            return supra.insertAfter(sub, index);
         }
     }
 
     /**
-     * Cycles through the the supracontexts and deletes ones with count=0
+     * Decrements the count of {@code supra}, remembering it for {@link #cleanSupra()} if the count reaches zero
+     */
+    private void decrementCount(LinkedLatticeNode<Supracontext> supra) {
+        if (supra.decrementCount()) zeroCountSupras.add(supra);
+    }
+
+    /**
+     * Unlinks the supracontexts whose counts reached zero while inserting the last subcontext. They cannot be unlinked
+     * right away, because the new supracontexts made during an insertion are linked after the ones they were copied
+     * from.
      */
     private void cleanSupra() {
-        for (LinkedLatticeNode<BasicSupra> supra = emptySupracontext; supra.getNext() != emptySupracontext; ) {
-            if (supra.getNext().getCount().equals(BigInteger.ZERO)) {
-                supra.setNext(supra.getNext().getNext());
-            } else supra = supra.getNext();
+        for (LinkedLatticeNode<Supracontext> supra : zeroCountSupras) {
+            supra.unlink();
         }
+        zeroCountSupras.clear();
         assert (noZeroSupras());
     }
 
     private boolean noZeroSupras() {
         for (Supracontext supra : getSupracontexts()) {
-            if (supra.getCount().equals(BigInteger.ZERO)) return false;
+            if (supra.getLongCount() == 0) return false;
         }
         return true;
     }
@@ -175,10 +354,11 @@ public class HeterogeneousLattice implements Lattice {
      */
     @Override
     public Set<Supracontext> getSupracontexts() {
+        if (denseSupras != null) return new HashSet<>(denseSupras);
         Set<Supracontext> supList = new HashSet<>();
-        LinkedLatticeNode<BasicSupra> supra = emptySupracontext.getNext();
+        LinkedLatticeNode<Supracontext> supra = emptySupracontext.getNext();
         while (supra != emptySupracontext) {
-            assert (!supra.getCount().equals(BigInteger.ZERO));
+            assert supra.getLongCount() != 0;
             supList.add(supra);
             supra = supra.getNext();
         }
@@ -190,7 +370,15 @@ public class HeterogeneousLattice implements Lattice {
      */
     public String supraListToString() {
         StringBuilder sb = new StringBuilder();
-        LinkedLatticeNode<BasicSupra> supra = emptySupracontext.getNext();
+        if (denseSupras != null) {
+            if (denseSupras.isEmpty()) return "EMPTY";
+            for (Supracontext supra : denseSupras) {
+                sb.append(supra);
+                sb.append("->");
+            }
+            return sb.toString();
+        }
+        LinkedLatticeNode<Supracontext> supra = emptySupracontext.getNext();
         if (supra == emptySupracontext) return "EMPTY";
         while (supra != emptySupracontext) {
             sb.append(supra);
@@ -0,0 +1,32 @@
+package weka.classifiers.lazy.AM.lattice;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder event for the approximation of the count of one subcontext by a
+ * {@link JohnsenJohanssonLattice}.
+ */
+@Name("weka.classifiers.lazy.AM.JJApproximation")
+@Label("Johnsen-Johansson Approximation")
+@Category({"Weka", "Analogical Modeling"})
+@Description("Monte Carlo approximation of the pointer count of one subcontext")
+class JJApproximationEvent extends Event {
+	@Label("Matches")
+	@Description("Number of matches in the label of the subcontext")
+	int matches;
+
+	@Label("Heterogeneous Labels")
+	@Description("Size of H(p), the intersections with subcontexts that would make the subcontext heterogeneous")
+	int heterogeneousLabels;
+
+	@Label("Experiments")
+	int experiments;
+
+	@Label("Heterogeneous Ratio")
+	@Description("Fraction of the sampled sets which were heterogeneous")
+	double heterogeneousRatio;
+}
@@ -81,62 +81,86 @@ public class JohnsenJohanssonLattice implements Lattice {
 	private boolean filled;
 	private Label bottom;
 	private final Supplier<Random> randomProvider;
+	private final ExecutorService executor;
 
 	/**
+	 * Creates a lattice which does its work in the {@link ForkJoinPool#commonPool() common pool}.
+	 *
 	 * @param randomProvider Provides randomness used for performing Monte Carlo simulation in child threads
 	 */
 	JohnsenJohanssonLattice(Supplier<Random> randomProvider) {
+		this(randomProvider, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param randomProvider Provides randomness used for performing Monte Carlo simulation in child threads
+	 * @param executor       runs the approximation for each subcontext; it is not shut down by this lattice
+	 */
+	JohnsenJohanssonLattice(Supplier<Random> randomProvider, ExecutorService executor) {
 		this.randomProvider = randomProvider;
+		this.executor = executor;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 * Progress is reported each time the count of a subcontext has been approximated.
+	 */
 	@Override
-	public void fill(SubcontextList sublist) throws InterruptedException, ExecutionException {
+	public void fill(SubcontextList sublist, FillMonitor monitor) throws InterruptedException, ExecutionException {
 		if (filled) {
 			throw new IllegalStateException("Lattice is already filled and cannot be filled again.");
 		}
 		filled = true;
+		LatticeFillEvent event = new LatticeFillEvent();
+		event.begin();
 		bottom = sublist.getLabeler().getLatticeBottom();
         // first organize sub labels by outcome for quick H(p) construction
-        Map<Double, List<Label>> outcomeSubMap = new HashMap<>();
+        Map<Integer, List<Label>> outcomeSubMap = new HashMap<>();
         for (Subcontext s : sublist) {
             List<Label> l = outcomeSubMap.computeIfAbsent(s.getOutcome(), k -> new ArrayList<>());
             l.add(s.getLabel());
         }
         // Estimate the counts for each supracontext in parallel
-        ExecutorService executor = Executors.newWorkStealingPool();
         CompletionService<Supracontext> taskCompletionService = new ExecutorCompletionService<>(executor);
+        FillMonitor taskMonitor = monitor.withoutProgress();
         for (Subcontext p : sublist) {
-            taskCompletionService.submit(new SupraApproximator(p, outcomeSubMap, randomProvider.get()));
+            taskCompletionService.submit(new SupraApproximator(p, outcomeSubMap, randomProvider.get(), taskMonitor));
         }
         for (int i = 0; i < sublist.size(); i++) {
-            supras.add(taskCompletionService.take().get());
+            supras.add(monitor.await(taskCompletionService.take()));
+            monitor.progress((i + 1) / (double) sublist.size());
         }
-        executor.shutdownNow();
+        event.finish(this, sublist);
     }
 
     class SupraApproximator implements Callable<Supracontext> {
         private final Subcontext p;
-        private final Map<Double, List<Label>> outcomeSubMap;
+        private final Map<Integer, List<Label>> outcomeSubMap;
 		private final Random random;
+		private final FillMonitor monitor;
 
-		SupraApproximator(Subcontext p, Map<Double, List<Label>> outcomeSubMap, Random random) {
+		SupraApproximator(Subcontext p, Map<Integer, List<Label>> outcomeSubMap, Random random, FillMonitor monitor) {
             this.p = p;
             this.outcomeSubMap = outcomeSubMap;
 			this.random = random;
+			this.monitor = monitor;
 		}
 
         @Override
         public Supracontext call() {
+            monitor.checkpoint();
             return approximateSupra(p, outcomeSubMap);
         }
 
-		private Supracontext approximateSupra(Subcontext p, Map<Double, List<Label>> outcomeSubMap) {
+		private Supracontext approximateSupra(Subcontext p, Map<Integer, List<Label>> outcomeSubMap) {
+			JJApproximationEvent event = new JJApproximationEvent();
+			event.begin();
 			Label pLabel = p.getLabel();
 			// H(p) is p intersected with labels of any subcontexts with a
 			// different class, or all other sub labels if p is non-deterministic
 			// (combination with these would lead to heterogeneity)
 			List<Label> hp = new ArrayList<>();
-			for (Entry<Double, List<Label>> e : outcomeSubMap.entrySet()) {
+			for (Entry<Integer, List<Label>> e : outcomeSubMap.entrySet()) {
 				if (p.getOutcome() != e.getKey() || p.getOutcome() == AMUtils.HETEROGENEOUS) {
 					for (Label x : e.getValue())
 						hp.add(pLabel.intersect(x));
@@ -171,6 +195,15 @@ public class JohnsenJohanssonLattice implements Lattice {
 			Supracontext approximatedSupra = new ClassifiedSupra();
 			approximatedSupra.add(p);
 			approximatedSupra.setCount(count);
+
+			event.end();
+			if (event.shouldCommit()) {
+				event.matches = pLabel.numMatches();
+				event.heterogeneousLabels = hp.size();
+				event.experiments = NUM_EXPERIMENTS;
+				event.heterogeneousRatio = heteroRatio;
+				event.commit();
+			}
 			return approximatedSupra;
 		}
 
@@ -179,6 +212,7 @@ public class JohnsenJohanssonLattice implements Lattice {
 
 			Map<Label, Boolean> cache = new HashMap<>();
 			for (int i = 0; i < numExperiments; i++) {
+				monitor.checkpoint();
 				// choose x_s, a union of random items from H(p)
 				Label Xs = bottom;
 				Collections.shuffle(hp);
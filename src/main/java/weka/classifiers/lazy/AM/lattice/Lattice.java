@@ -18,7 +18,18 @@ public interface Lattice {
 	 * Fill the lattice with given subcontexts. This is meant to be done only once for a given Lattice instance.
 	 * @throws IllegalStateException if the lattice was already filled
 	 */
-	void fill(SubcontextList sublist) throws InterruptedException, ExecutionException;
+	default void fill(SubcontextList sublist) throws InterruptedException, ExecutionException {
+		fill(sublist, new FillMonitor());
+	}
+
+	/**
+	 * Fill the lattice with given subcontexts, reporting progress to and checking for cancellation with the given
+	 * monitor. This is meant to be done only once for a given Lattice instance.
+	 * @throws IllegalStateException if the lattice was already filled
+	 * @throws java.util.concurrent.CancellationException if the monitor was cancelled or ran out of time; the lattice
+	 * cannot be used afterwards
+	 */
+	void fill(SubcontextList sublist, FillMonitor monitor) throws InterruptedException, ExecutionException;
     /**
      * @return The list of supracontexts that were created by filling the supracontextual lattice. From this, you can
      * compute the analogical set.
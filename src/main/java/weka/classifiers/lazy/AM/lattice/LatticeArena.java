@@ -0,0 +1,99 @@
+package weka.classifiers.lazy.AM.lattice;
+
+import weka.classifiers.lazy.AM.LongKeyedMap;
+import weka.classifiers.lazy.AM.label.Label;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The working storage of a {@link BasicLattice} or {@link HeterogeneousLattice} while it is filled: the maps or array
+ * holding its positions, its {@link SupraTable}, and its list of supracontexts to unlink. None of this is needed once
+ * the lattice is filled, so a thread classifying many items can keep one arena and reset it between lattices instead
+ * of allocating new storage every time. The storage only grows, to the largest size needed so far.
+ * <p>
+ * The supracontexts themselves cannot be reused, since they are the result of filling a lattice.
+ */
+final class LatticeArena {
+	private static final ThreadLocal<LatticeArena> ARENAS = ThreadLocal.withInitial(LatticeArena::new);
+
+	private final Map<Label, Object> labelMap = new HashMap<>();
+	private final LongKeyedMap<Object> bitsMap = new LongKeyedMap<>();
+	private final List<Object> zeroCountSupras = new ArrayList<>();
+	private int[] positions = new int[0];
+	// number of entries of positions used by the last lattice
+	private int positionsUsed;
+	private SupraTable table;
+	private boolean inUse;
+
+	/**
+	 * @return the arena of the current thread if no other lattice is using it, otherwise a new arena which is
+	 * discarded after use; either way, the arena must be {@link #release() released} once the lattice is filled.
+	 * Lattices which do not reuse storage create a new arena instead.
+	 */
+	static LatticeArena acquire() {
+		LatticeArena arena = ARENAS.get();
+		// a lattice filled while another one on the same thread is still being filled gets its own storage
+		if (arena.inUse) arena = new LatticeArena();
+		arena.inUse = true;
+		return arena;
+	}
+
+	/**
+	 * @return a map from labels to lattice positions, which is empty
+	 */
+	@SuppressWarnings("unchecked")
+	<T> Map<Label, T> labelMap() {
+		return (Map<Label, T>) (Map<Label, ?>) labelMap;
+	}
+
+	/**
+	 * @return a map from label bits to lattice positions, which is empty
+	 */
+	@SuppressWarnings("unchecked")
+	<T> LongKeyedMap<T> bitsMap() {
+		return (LongKeyedMap<T>) (LongKeyedMap<?>) bitsMap;
+	}
+
+	/**
+	 * @return an empty list for the supracontexts whose counts reach zero during an insertion
+	 */
+	@SuppressWarnings("unchecked")
+	<T> List<T> zeroCountSupras() {
+		return (List<T>) zeroCountSupras;
+	}
+
+	/**
+	 * @return an array of at least {@code size} positions, all of which are 0
+	 */
+	int[] positions(int size) {
+		if (positions.length < size) positions = new int[size];
+		positionsUsed = size;
+		return positions;
+	}
+
+	/**
+	 * @return a table containing only the empty supracontext
+	 */
+	SupraTable table() {
+		if (table == null) table = new SupraTable();
+		return table;
+	}
+
+	/**
+	 * Empties the storage, so that it does not keep the supracontexts of the last lattice from being collected, and
+	 * makes the arena available to the next lattice filled on this thread.
+	 */
+	void release() {
+		labelMap.clear();
+		bitsMap.clear();
+		zeroCountSupras.clear();
+		Arrays.fill(positions, 0, positionsUsed, 0);
+		positionsUsed = 0;
+		if (table != null) table.reset();
+		inUse = false;
+	}
+}
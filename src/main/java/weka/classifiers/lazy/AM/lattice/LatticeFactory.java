@@ -1,6 +1,7 @@
 package weka.classifiers.lazy.AM.lattice;
 
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Supplier;
 
@@ -17,34 +18,47 @@ public interface LatticeFactory {
 
 	/**
 	 * Chooses the lattice implementation based on the cardinality of
-	 * the instances in the subcontext list.
+	 * the instances in the subcontext list. {@link LatticePlanner} makes
+	 * a better choice by inspecting the subcontexts themselves.
 	 * {@inheritDoc}
 	 */
 	class CardinalityBasedLatticeFactory implements LatticeFactory {
+		/**
+		 * Provides a differently seeded {@link Random} each time
+		 */
+		public static final Supplier<Random> DEFAULT_RANDOM_PROVIDER = () -> new Random(ThreadLocalRandom.current().nextLong());
+
 		private final int cardinality;
 		private final int numPartitions;
 		private final Supplier<Random> randomProvider;
+		private final ForkJoinPool pool;
 
 		public CardinalityBasedLatticeFactory(int cardinality, int numPartitions) {
-			this.cardinality = cardinality;
-			this.numPartitions = numPartitions;
-			this.randomProvider = () -> new Random(ThreadLocalRandom.current().nextLong());
+			this(cardinality, numPartitions, DEFAULT_RANDOM_PROVIDER);
 		}
 
 		public CardinalityBasedLatticeFactory(int cardinality, int numPartitions, Supplier<Random> randomProvider) {
+			this(cardinality, numPartitions, randomProvider, ForkJoinPool.commonPool());
+		}
+
+		/**
+		 * @param pool the pool used by multi-threaded lattice implementations; it is not shut down by the lattices
+		 */
+		public CardinalityBasedLatticeFactory(int cardinality, int numPartitions, Supplier<Random> randomProvider, ForkJoinPool pool) {
 			this.cardinality = cardinality;
 			this.numPartitions = numPartitions;
 			this.randomProvider = randomProvider;
+			this.pool = pool;
 		}
 
 		@Override
 		public Lattice createLattice() {
 			if (cardinality >= 50) {
-				return new JohnsenJohanssonLattice(randomProvider);
+				return new JohnsenJohanssonLattice(randomProvider, pool);
 			} else if (numPartitions > 1) {
 				// TODO: is it weird that the labeler determines the lattice implementation? Choosing the
 				// number of partitions should not be the labeler's responsibility
-				return new DistributedLattice();
+				return new DistributedLattice(pool);
 			} else {
 				return new BasicLattice();
 			}
@@ -0,0 +1,53 @@
+package weka.classifiers.lazy.AM.lattice;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import weka.classifiers.lazy.AM.data.SubcontextList;
+
+/**
+ * Java Flight Recorder event for one {@link Lattice#fill(weka.classifiers.lazy.AM.data.SubcontextList, FillMonitor)
+ * lattice fill}. Disabled events cost next to nothing, so every fill creates one.
+ */
+@Name("weka.classifiers.lazy.AM.LatticeFill")
+@Label("Lattice Fill")
+@Category({"Weka", "Analogical Modeling"})
+@Description("Filling of a supracontextual lattice with the subcontexts of one test item")
+class LatticeFillEvent extends Event {
+	@Label("Engine")
+	@Description("Lattice implementation")
+	String engine;
+
+	@Label("Cardinality")
+	@Description("Number of attributes in the subcontext labels")
+	int cardinality;
+
+	@Label("Partition")
+	@Description("Label partition used by a heterogeneous lattice, or -1 for the full labels")
+	int partition = -1;
+
+	@Label("Subcontexts")
+	int subcontexts;
+
+	@Label("Supracontexts")
+	@Description("Number of supracontexts in the filled lattice")
+	int supracontexts;
+
+	/**
+	 * Commits the event if it is enabled and the fill took long enough to be recorded.
+	 *
+	 * @param lattice the filled lattice, whose supracontexts are only counted if the event is committed
+	 */
+	void finish(Lattice lattice, SubcontextList subList) {
+		end();
+		if (shouldCommit()) {
+			engine = lattice.getClass().getSimpleName();
+			cardinality = subList.getCardinality();
+			subcontexts = subList.size();
+			supracontexts = lattice.getSupracontexts().size();
+			commit();
+		}
+	}
+}
@@ -0,0 +1,204 @@
+package weka.classifiers.lazy.AM.lattice;
+
+import weka.classifiers.lazy.AM.AMUtils;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * The result of {@link LatticePlanner#plan planning} how to fill the lattice for one test item: the chosen
+ * {@link Engine}, the estimated cost of each engine that was considered, and the statistics of the subcontext list
+ * that the estimates were based on. Costs are measured in lattice node visits, and are only meant to be compared with
+ * each other; see {@link LatticePlanner} for how they are estimated.
+ * <p>
+ * A plan is also a {@link LatticeFactory} for the lattice of its chosen engine. {@link #toString()} gives a
+ * human-readable explanation of the plan.
+ */
+public class LatticePlan implements LatticeFactory {
+	/**
+	 * The lattice implementations that the planner chooses between
+	 */
+	public enum Engine {
+		/**
+		 * {@link BasicLattice}; exact
+		 */
+		BASIC,
+		/**
+		 * {@link DistributedLattice}; exact
+		 */
+		DISTRIBUTED,
+		/**
+		 * {@link JohnsenJohanssonLattice}; approximate
+		 */
+		JOHNSEN_JOHANSSON
+	}
+
+	private final Engine engine;
+	private final Map<Engine, Double> costs;
+	private final boolean closureTruncated;
+	private final int cardinality;
+	private final int numPartitions;
+	private final int numSubcontexts;
+	private final int numExemplars;
+	private final int numOutcomes;
+	private final int numNondeterministic;
+	private final double numConcepts;
+	private final int[] matchCounts;
+	private final Supplier<Lattice> latticeSupplier;
+
+	LatticePlan(Engine engine, Map<Engine, Double> costs, boolean closureTruncated, int cardinality, int numPartitions,
+				int numSubcontexts, int numExemplars, int numOutcomes, int numNondeterministic, double numConcepts,
+				int[] matchCounts, Supplier<Lattice> latticeSupplier) {
+		this.engine = engine;
+		this.costs = new EnumMap<>(costs);
+		this.closureTruncated = closureTruncated;
+		this.cardinality = cardinality;
+		this.numPartitions = numPartitions;
+		this.numSubcontexts = numSubcontexts;
+		this.numExemplars = numExemplars;
+		this.numOutcomes = numOutcomes;
+		this.numNondeterministic = numNondeterministic;
+		this.numConcepts = numConcepts;
+		this.matchCounts = matchCounts;
+		this.latticeSupplier = latticeSupplier;
+	}
+
+	/**
+	 * @return a new, empty lattice of the chosen engine
+	 */
+	@Override
+	public Lattice createLattice() {
+		return latticeSupplier.get();
+	}
+
+	/**
+	 * @return the engine chosen by the planner
+	 */
+	public Engine getEngine() {
+		return engine;
+	}
+
+	/**
+	 * @return true if the chosen engine computes the analogical set exactly
+	 */
+	public boolean isExact() {
+		return engine != Engine.JOHNSEN_JOHANSSON;
+	}
+
+	/**
+	 * @return the estimated cost of the chosen engine
+	 */
+	public double getEstimatedCost() {
+		return getEstimatedCost(engine);
+	}
+
+	/**
+	 * @return the estimated cost of the given engine, or {@link Double#POSITIVE_INFINITY} if the engine cannot be used
+	 * for this subcontext list
+	 */
+	public double getEstimatedCost(Engine engine) {
+		return costs.getOrDefault(engine, Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * @return true if the planner stopped counting concepts before reaching the end, in which case
+	 * {@link #getNumConcepts()} is extrapolated
+	 */
+	public boolean isClosureTruncated() {
+		return closureTruncated;
+	}
+
+	/**
+	 * @return the cardinality of the subcontext labels
+	 */
+	public int getCardinality() {
+		return cardinality;
+	}
+
+	/**
+	 * @return the number of label partitions available for distributed processing
+	 */
+	public int getNumPartitions() {
+		return numPartitions;
+	}
+
+	/**
+	 * @return the number of distinct subcontexts
+	 */
+	public int getNumSubcontexts() {
+		return numSubcontexts;
+	}
+
+	/**
+	 * @return the number of exemplars in the subcontexts
+	 */
+	public int getNumExemplars() {
+		return numExemplars;
+	}
+
+	/**
+	 * @return the number of distinct outcomes among the deterministic subcontexts
+	 */
+	public int getNumOutcomes() {
+		return numOutcomes;
+	}
+
+	/**
+	 * @return the number of subcontexts whose exemplars have more than one outcome
+	 */
+	public int getNumNondeterministic() {
+		return numNondeterministic;
+	}
+
+	/**
+	 * @return the number of distinct non-empty supracontexts (before removing heterogeneous ones), or -1 if they were
+	 * not counted because they could not change the choice of engine; the estimated cost of the distributed lattice is
+	 * then a lower bound
+	 */
+	public double getNumConcepts() {
+		return numConcepts;
+	}
+
+	/**
+	 * @return element i is the number of subcontexts whose label has i matches
+	 */
+	public int[] getMatchCounts() {
+		return matchCounts.clone();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("Lattice plan: ").append(engine).append(isExact() ? " (exact)" : " (approximate)");
+		sb.append(AMUtils.LINE_SEPARATOR);
+		sb.append("  cardinality: ").append(cardinality).append(", partitions: ").append(numPartitions);
+		sb.append(AMUtils.LINE_SEPARATOR);
+		sb.append("  subcontexts: ").append(numSubcontexts).append(" (").append(numNondeterministic);
+		sb.append(" nondeterministic), exemplars: ").append(numExemplars).append(", outcomes: ").append(numOutcomes);
+		sb.append(AMUtils.LINE_SEPARATOR);
+		sb.append("  subcontexts by number of matches: ").append(Arrays.toString(matchCounts));
+		sb.append(AMUtils.LINE_SEPARATOR);
+		if (numConcepts >= 0) {
+			sb.append("  supracontexts: ");
+			if (closureTruncated) sb.append(String.format("~%.3g (extrapolated)", numConcepts));
+			else sb.append((long) numConcepts);
+			sb.append(AMUtils.LINE_SEPARATOR);
+		}
+		for (Engine e : Engine.values()) {
+			sb.append("  ").append(e).append(": ");
+			double cost = getEstimatedCost(e);
+			if (Double.isInfinite(cost)) {
+				sb.append("not applicable");
+			} else {
+				if (e == Engine.DISTRIBUTED && numConcepts < 0) sb.append(">= ");
+				else if (e == Engine.DISTRIBUTED && closureTruncated) sb.append("~");
+				sb.append(String.format("%.3g", cost));
+			}
+			if (e == engine) sb.append(" <- chosen");
+			sb.append(AMUtils.LINE_SEPARATOR);
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,355 @@
+package weka.classifiers.lazy.AM.lattice;
+
+import weka.classifiers.lazy.AM.LongKeyedMap;
+import weka.classifiers.lazy.AM.data.Subcontext;
+import weka.classifiers.lazy.AM.data.SubcontextList;
+import weka.classifiers.lazy.AM.label.IntLabel;
+import weka.classifiers.lazy.AM.label.Label;
+import weka.classifiers.lazy.AM.label.LabelPartitioning;
+import weka.classifiers.lazy.AM.label.LongLabel;
+import weka.classifiers.lazy.AM.label.PartitionStrategy;
+import weka.classifiers.lazy.AM.lattice.LatticePlan.Engine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+
+/**
+ * Chooses a {@link Lattice} implementation for a particular {@link SubcontextList} by estimating the cost of filling
+ * each one. Unlike {@link LatticeFactory.CardinalityBasedLatticeFactory}, which only looks at the cardinality, this
+ * inspects the subcontexts themselves, since items of the same cardinality can differ in cost by orders of magnitude.
+ * <p>
+ * The estimates, in lattice node visits, are:
+ * <ul>
+ * <li>{@link BasicLattice}: each subcontext is added to every supracontext below its label, so the cost is the sum
+ * of 2<sup>m</sup> over the subcontexts, where m is the number of matches in the subcontext's label.</li>
+ * <li>{@link DistributedLattice}: the same sum over each label partition for filling the sub-lattices, plus the cost of
+ * combining them. Every combined sub-lattice contains at most as many supracontexts as there are distinct
+ * intersections of subcontext labels (concepts), so each combination costs at most that many supracontexts times the
+ * size of a partition lattice. The concepts are counted until a fixed amount of work has been done, or as much work
+ * as the distributed lattice could save if that is less, after which their number is extrapolated. They are not counted at all if even one concept per subcontext would make this engine
+ * more expensive than the basic lattice, or over the exact budget when the item may be approximated.
+ * This engine is only considered when the labels have more than one partition.</li>
+ * <li>{@link JohnsenJohanssonLattice}: for each subcontext, the labels of the subcontexts that would make it
+ * heterogeneous are combined and sampled a constant number of times, so the cost depends on the number of
+ * subcontexts and on the mix of their outcomes.</li>
+ * </ul>
+ * The cheapest exact engine is chosen. Items with at least {@link #MIN_APPROXIMATE_CARDINALITY} features, which
+ * {@link LatticeFactory.CardinalityBasedLatticeFactory} always classifies approximately, use the approximate
+ * Johnsen-Johansson lattice instead if the cost of the exact engine exceeds the exact budget. Smaller items are always
+ * classified exactly, however expensive they are.
+ */
+public class LatticePlanner {
+	/**
+	 * Fixed cost of using threads for the distributed lattice, estimated from benchmarks of small lattices
+	 */
+	static final double DISTRIBUTED_OVERHEAD = 50_000;
+	/**
+	 * Exact engines costing more than this are abandoned for the approximate one
+	 */
+	public static final double DEFAULT_EXACT_BUDGET = 1L << 28;
+	/**
+	 * Items with fewer features than this are never classified approximately
+	 */
+	public static final int MIN_APPROXIMATE_CARDINALITY = 50;
+	/**
+	 * Counting concepts takes one label intersection per subcontext and concept found so far; the count is
+	 * extrapolated once this many intersections have been made
+	 */
+	static final long CONCEPT_INTERSECTIONS = 1 << 18;
+	/**
+	 * Intersecting labels without an int or long representation allocates, so each counts as this many intersections
+	 */
+	private static final int GENERIC_INTERSECTION_COST = 32;
+	/**
+	 * Seed for the order in which subcontexts are processed by {@link #estimateConcepts}, so that plans are
+	 * reproducible
+	 */
+	private static final long SHUFFLE_SEED = 0x5DEECE66DL;
+	/**
+	 * Number of random samples taken per subcontext by {@link JohnsenJohanssonLattice}
+	 */
+	private static final int JJ_SAMPLES = 10;
+
+	private final Supplier<Random> randomProvider;
+	private final ForkJoinPool pool;
+	private final double exactBudget;
+	private final PartitionStrategy partitionStrategy;
+	private final boolean reuseStorage;
+
+	/**
+	 * Creates a planner whose lattices use the {@link ForkJoinPool#commonPool() common pool}.
+	 */
+	public LatticePlanner() {
+		this(LatticeFactory.CardinalityBasedLatticeFactory.DEFAULT_RANDOM_PROVIDER, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param randomProvider randomness for the approximate lattice
+	 * @param pool           the pool used by multi-threaded lattice implementations
+	 */
+	public LatticePlanner(Supplier<Random> randomProvider, ForkJoinPool pool) {
+		this(randomProvider, pool, DEFAULT_EXACT_BUDGET);
+	}
+
+	/**
+	 * @param exactBudget the highest estimated cost for which an exact engine will be chosen for items with at least
+	 *                    {@link #MIN_APPROXIMATE_CARDINALITY} features
+	 */
+	public LatticePlanner(Supplier<Random> randomProvider, ForkJoinPool pool, double exactBudget) {
+		this(randomProvider, pool, exactBudget, PartitionStrategy.CONTIGUOUS);
+	}
+
+	/**
+	 * @param partitionStrategy splits labels for the distributed lattice; its partitions are also used to estimate the
+	 *                          cost of that lattice
+	 */
+	public LatticePlanner(Supplier<Random> randomProvider, ForkJoinPool pool, double exactBudget,
+						  PartitionStrategy partitionStrategy) {
+		this(randomProvider, pool, exactBudget, partitionStrategy, false);
+	}
+
+	/**
+	 * @param reuseStorage true if the basic and distributed lattices should be filled using storage kept by each thread
+	 *                     from the lattices it filled before (see {@link LatticeArena}). This saves allocating and
+	 *                     collecting the storage for every classification, but each thread keeps the storage needed
+	 *                     by the largest lattice it has filled.
+	 */
+	public LatticePlanner(Supplier<Random> randomProvider, ForkJoinPool pool, double exactBudget,
+						  PartitionStrategy partitionStrategy, boolean reuseStorage) {
+		this.randomProvider = randomProvider;
+		this.pool = pool;
+		this.exactBudget = exactBudget;
+		this.partitionStrategy = partitionStrategy;
+		this.reuseStorage = reuseStorage;
+	}
+
+	/**
+	 * Estimates the cost of filling a lattice with {@code subList} for each engine, and chooses one. This does not fill
+	 * any lattice.
+	 *
+	 * @param subList the subcontexts that will be used to fill the lattice
+	 * @return the plan, which can create the chosen lattice
+	 */
+	public LatticePlan plan(SubcontextList subList) {
+		return plan(subList, new FillMonitor());
+	}
+
+	/**
+	 * Same as {@link #plan(SubcontextList)}, but stops if {@code monitor} is cancelled or its deadline passes, so that
+	 * a time limit on the classification also covers planning.
+	 *
+	 * @throws java.util.concurrent.CancellationException if the monitor stopped the planning
+	 */
+	public LatticePlan plan(SubcontextList subList, FillMonitor monitor) {
+		int cardinality = subList.getCardinality();
+
+		int[] matchCounts = new int[cardinality + 1];
+		Map<Integer, Integer> outcomeCounts = new HashMap<>();
+		int numNondeterministic = 0;
+		int numExemplars = 0;
+		double basicCost = 0;
+		for (Subcontext sub : subList) {
+			Label label = sub.getLabel();
+			matchCounts[label.numMatches()]++;
+			basicCost += Math.pow(2, label.numMatches());
+			if (sub.isNondeterministic()) numNondeterministic++;
+			else outcomeCounts.merge(sub.getOutcome(), 1, Integer::sum);
+			numExemplars += sub.getExemplars().size();
+		}
+		int numSubs = subList.size();
+
+		// each subcontext is compared with those that could make it heterogeneous: all of them if it is
+		// nondeterministic, otherwise those with other outcomes
+		double heteroComparisons = (double) numNondeterministic * numSubs;
+		for (int count : outcomeCounts.values()) {
+			heteroComparisons += (double) count * (numSubs - count);
+		}
+		double jjCost = numSubs + heteroComparisons * (1 + JJ_SAMPLES);
+
+		Map<Engine, Double> costs = new EnumMap<>(Engine.class);
+		costs.put(Engine.BASIC, basicCost);
+		costs.put(Engine.JOHNSEN_JOHANSSON, jjCost);
+
+		// only split labels when the labeler allows it, and don't bother when the basic lattice is cheaper than
+		// starting threads
+		int numPartitions = subList.getLabeler().numPartitions();
+		LabelPartitioning partitioning = numPartitions > 1 && basicCost > DISTRIBUTED_OVERHEAD ?
+				partitionStrategy.partition(subList) : null;
+		monitor.checkpoint();
+		double numConcepts = -1;
+		boolean truncated = false;
+		if (partitioning != null && partitioning.numPartitions() > 1) {
+			numPartitions = partitioning.numPartitions();
+			double partitionCost = 0;
+			for (Subcontext sub : subList) {
+				for (int p = 0; p < numPartitions; p++) {
+					partitionCost += Math.pow(2, partitioning.partition(sub.getLabel(), p).numMatches());
+				}
+			}
+			double productCostPerConcept = (numPartitions - 1) * Math.pow(2, partitioning.getMaxPartitionSize());
+			// every subcontext label is a concept, so the distributed lattice costs at least this much
+			double minDistributedCost = DISTRIBUTED_OVERHEAD + partitionCost
+					+ productCostPerConcept * Math.min(numSubs, basicCost);
+			boolean approximate = cardinality >= MIN_APPROXIMATE_CARDINALITY && basicCost > exactBudget;
+			if (minDistributedCost >= basicCost || (approximate && minDistributedCost > exactBudget)) {
+				// counting the concepts would not change the choice
+				costs.put(Engine.DISTRIBUTED, minDistributedCost);
+			} else {
+				// counting is not allowed to take longer than the distributed lattice could save
+				long maxIntersections = (long) Math.min(CONCEPT_INTERSECTIONS, basicCost - minDistributedCost);
+				ConceptEstimate estimate = estimateConcepts(subList, maxIntersections, monitor);
+				numConcepts = estimate.count;
+				truncated = estimate.extrapolated;
+				// there can't be more concepts than supracontexts visited by the basic lattice
+				numConcepts = Math.min(numConcepts, basicCost);
+				costs.put(Engine.DISTRIBUTED, DISTRIBUTED_OVERHEAD + partitionCost + productCostPerConcept * numConcepts);
+			}
+		}
+
+		Engine engine = Engine.BASIC;
+		double exactCost = basicCost;
+		Double distributedCost = costs.get(Engine.DISTRIBUTED);
+		if (distributedCost != null && distributedCost < exactCost) {
+			engine = Engine.DISTRIBUTED;
+			exactCost = distributedCost;
+		}
+		if (cardinality >= MIN_APPROXIMATE_CARDINALITY && exactCost > exactBudget) {
+			engine = Engine.JOHNSEN_JOHANSSON;
+		}
+
+		Engine chosen = engine;
+		return new LatticePlan(chosen, costs, truncated, cardinality, numPartitions, numSubs, numExemplars,
+				outcomeCounts.size(), numNondeterministic, numConcepts, matchCounts,
+				// don't partition the labels again
+				() -> chosen == Engine.DISTRIBUTED ? new DistributedLattice(pool, partitioning, reuseStorage) :
+						createLattice(chosen));
+	}
+
+	/**
+	 * @return a new, empty lattice of the given engine, regardless of any plan; for example, to approximate a
+	 * classification that took too long with the chosen engine
+	 */
+	public Lattice createLattice(Engine engine) {
+		switch (engine) {
+			case DISTRIBUTED:
+				return new DistributedLattice(pool, partitionStrategy, reuseStorage);
+			case JOHNSEN_JOHANSSON:
+				return new JohnsenJohanssonLattice(randomProvider, pool);
+			default:
+				return new BasicLattice(pool, reuseStorage);
+		}
+	}
+
+	/**
+	 * Estimates the number of distinct labels that can be formed by {@link Label#intersect intersecting} subcontext
+	 * labels, which is the number of distinct non-empty supracontexts in the full lattice. Each subcontext label is
+	 * intersected with every concept found so far. Once {@code maxIntersections} intersections have been made (or an
+	 * eighth as many for labels without an int or long representation), the count is extrapolated from its growth so
+	 * far, assuming that it grows polynomially with the number of subcontexts processed. Since neighbouring subcontexts
+	 * in the list often come from similar exemplars, the subcontexts are processed in a shuffled (but fixed) order so
+	 * that the ones counted exactly are a fair sample.
+	 *
+	 * @param maxIntersections stop counting when this many intersections have been made
+	 * @param monitor          checked after each subcontext
+	 * @return the number of concepts, which is exact unless it was extrapolated
+	 */
+	static ConceptEstimate estimateConcepts(SubcontextList subList, long maxIntersections, FillMonitor monitor) {
+		List<Label> labels = new ArrayList<>(subList.size());
+		for (Subcontext sub : subList) {
+			labels.add(sub.getLabel());
+		}
+		Collections.shuffle(labels, new Random(SHUFFLE_SEED));
+		// counts[k] is the number of concepts formed by the first k subcontexts
+		int[] counts = new int[labels.size() + 1];
+		int k = labels.isEmpty() || labels.get(0) instanceof IntLabel || labels.get(0) instanceof LongLabel ?
+				countBitConcepts(labels, counts, maxIntersections, monitor) :
+				countConcepts(labels, counts, maxIntersections / GENERIC_INTERSECTION_COST, monitor);
+		if (k == labels.size()) return new ConceptEstimate(counts[k], false);
+		double exponent = Math.log((double) counts[k] / counts[k / 2]) / Math.log((double) k / (k / 2));
+		return new ConceptEstimate(counts[k] * Math.pow((double) labels.size() / k, exponent), true);
+	}
+
+	/**
+	 * Counts the concepts of int or long labels, using their bits
+	 *
+	 * @return the number of labels processed, which is at least 2 unless there are fewer
+	 */
+	private static int countBitConcepts(List<Label> labels, int[] counts, long maxIntersections,
+										FillMonitor monitor) {
+		long[] concepts = new long[64];
+		int numConcepts = 0;
+		LongKeyedMap<Boolean> found = new LongKeyedMap<>();
+		long intersections = 0;
+		int k = 0;
+		for (Label label : labels) {
+			long bits = label instanceof IntLabel ? ((IntLabel) label).labelBits() : ((LongLabel) label).labelBits();
+			int end = numConcepts;
+			// the concepts added for this label are intersections with it already, and need not be intersected again
+			for (int c = -1; c < end; c++) {
+				// the label itself is a concept
+				long concept = c < 0 ? bits : concepts[c] | bits;
+				if (found.get(concept) == null) {
+					found.put(concept, Boolean.TRUE);
+					if (numConcepts == concepts.length) concepts = Arrays.copyOf(concepts, numConcepts * 2);
+					concepts[numConcepts++] = concept;
+				}
+			}
+			monitor.checkpoint();
+			intersections += end;
+			counts[++k] = numConcepts;
+			if (intersections >= maxIntersections && k >= 2) break;
+		}
+		return k;
+	}
+
+	/**
+	 * Same as {@link #countBitConcepts} for labels of any type
+	 */
+	private static int countConcepts(List<Label> labels, int[] counts, long maxIntersections,
+									 FillMonitor monitor) {
+		Set<Label> concepts = new HashSet<>();
+		List<Label> added = new ArrayList<>();
+		long intersections = 0;
+		int k = 0;
+		for (Label label : labels) {
+			added.clear();
+			if (concepts.add(label)) added.add(label);
+			for (Label concept : concepts) {
+				Label intersection = concept.intersect(label);
+				if (!concepts.contains(intersection)) added.add(intersection);
+			}
+			monitor.checkpoint();
+			intersections += concepts.size();
+			concepts.addAll(added);
+			counts[++k] = concepts.size();
+			if (intersections >= maxIntersections && k >= 2) break;
+		}
+		return k;
+	}
+
+	/**
+	 * The result of {@link #estimateConcepts}
+	 */
+	static final class ConceptEstimate {
+		final double count;
+		/**
+		 * True if not every subcontext was processed, so that {@link #count} is extrapolated
+		 */
+		final boolean extrapolated;
+
+		ConceptEstimate(double count, boolean extrapolated) {
+			this.count = count;
+			this.extrapolated = extrapolated;
+		}
+	}
+}
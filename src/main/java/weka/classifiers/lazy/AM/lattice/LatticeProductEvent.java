@@ -0,0 +1,29 @@
+package weka.classifiers.lazy.AM.lattice;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Java Flight Recorder event for one combination of two sets of supracontexts in a {@link DistributedLattice}.
+ */
+@Name("weka.classifiers.lazy.AM.LatticeProduct")
+@Label("Lattice Product")
+@Category({"Weka", "Analogical Modeling"})
+@Description("Combination of the supracontexts of two sub-lattices of a distributed lattice")
+class LatticeProductEvent extends Event {
+	@Label("Final")
+	@Description("True for the last combination, which removes heterogeneous supracontexts")
+	boolean finalProduct;
+
+	@Label("Left Size")
+	int leftSize;
+
+	@Label("Right Size")
+	int rightSize;
+
+	@Label("Output Size")
+	int outputSize;
+}
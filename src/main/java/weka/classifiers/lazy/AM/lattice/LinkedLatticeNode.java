@@ -23,6 +23,8 @@ public class LinkedLatticeNode<T extends Supracontext> implements Supracontext {
     // pointer to the next node; this is used during lattice filling to create a
     // circular linked list
     private LinkedLatticeNode<T> next;
+    // the node whose next node this is, so that this node can be unlinked without searching the list
+    private LinkedLatticeNode<T> previous;
 
     /**
      * Create a new node containing the given supracontext. The index is set to
@@ -54,7 +56,7 @@ public class LinkedLatticeNode<T extends Supracontext> implements Supracontext {
         // it's okay to cast to T here because of the contract that
         // Supracontext.copy() return its own type
         @SuppressWarnings("unchecked") T newSupra = (T) getSupracontext().copy();
-        newSupra.setCount(BigInteger.ONE);
+        newSupra.setCount(1L);
         newSupra.add(sub);
         LinkedLatticeNode<T> newNode = new LinkedLatticeNode<>(newSupra, ind);
         newNode.setNext(getNext());
@@ -70,12 +72,24 @@ public class LinkedLatticeNode<T extends Supracontext> implements Supracontext {
     }
 
     /**
-     * Set the next node linked to by this node
+     * Set the next node linked to by this node; this node also becomes the one before {@code next}.
      *
      * @param next the node to link to
      */
     public void setNext(LinkedLatticeNode<T> next) {
         this.next = next;
+        if (next != null) next.previous = this;
+    }
+
+    /**
+     * Removes this node from its list by linking the node before it to the node after it. This node keeps its own link
+     * to the next node.
+     *
+     * @throws IllegalStateException if this node is not in a list
+     */
+    public void unlink() {
+        if (previous == null || previous.next != this) throw new IllegalStateException("Node is not in a list");
+        previous.setNext(next);
     }
 
     /**
@@ -89,18 +103,27 @@ public class LinkedLatticeNode<T extends Supracontext> implements Supracontext {
      * Increases count by one.
      */
     public void incrementCount() {
-        supra.setCount(supra.getCount().add(BigInteger.ONE));
+        long count = supra.getLongCount();
+        if (count >= 0 && count < Long.MAX_VALUE) supra.setCount(count + 1);
+        else supra.setCount(supra.getCount().add(BigInteger.ONE));
     }
 
     /**
      * Decreases the count by one; if this reaches 0, then this Supracontext
-     * should be discarded (by the caller).
+     * should be discarded (by the caller), for example by {@link #unlink() unlinking} it.
      *
+     * @return true if the count reached zero
      * @throws IllegalStateException if the count is already zero.
      */
-    public void decrementCount() {
-        if (supra.getCount().equals(BigInteger.ZERO)) throw new IllegalStateException("Count cannot be less than zero");
+    public boolean decrementCount() {
+        long count = supra.getLongCount();
+        if (count == 0) throw new IllegalStateException("Count cannot be less than zero");
+        if (count > 0) {
+            supra.setCount(count - 1);
+            return count == 1;
+        }
         supra.setCount(supra.getCount().subtract(BigInteger.ONE));
+        return false;
     }
 
     /**
@@ -114,7 +137,8 @@ public class LinkedLatticeNode<T extends Supracontext> implements Supracontext {
     public Supracontext copy() {
         @SuppressWarnings("unchecked") T newSupra = (T) getSupracontext().copy();
         LinkedLatticeNode<T> newNode = new LinkedLatticeNode<>(newSupra, index);
-        newNode.setNext(next);
+        // don't use setNext, which would make the copy the node before next
+        newNode.next = next;
         return newNode;
     }
 
@@ -145,6 +169,16 @@ public class LinkedLatticeNode<T extends Supracontext> implements Supracontext {
         supra.setCount(count);
     }
 
+    @Override
+    public long getLongCount() {
+        return supra.getLongCount();
+    }
+
+    @Override
+    public void setCount(long count) {
+        supra.setCount(count);
+    }
+
 	@Override
 	public Label getContext() {
 		return supra.getContext();
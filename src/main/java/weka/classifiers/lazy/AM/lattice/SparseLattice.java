@@ -40,7 +40,7 @@ public class SparseLattice implements Lattice {
 	}
 
 	@Override
-	public void fill(SubcontextList subList) {
+	public void fill(SubcontextList subList, FillMonitor monitor) {
 		if (filled) {
 			throw new IllegalStateException("Lattice is already filled and cannot be filled again.");
 		}
@@ -48,12 +48,14 @@ public class SparseLattice implements Lattice {
 		if (subList.size() == 0) {
 			return;
 		}
+		LatticeFillEvent event = new LatticeFillEvent();
+		event.begin();
 		// TODO: the top is the bottom? That's confusing :/
         Concept<ClassifiedSupra> bottom = new Concept<>(subList.getLabeler().getLatticeTop(), new ClassifiedSupra());
         lattice.add(bottom);
-        // int i = 0;
+        int numInserted = 0;
         for (Subcontext sub : subList) {
-            // System.err.println(i++);
+            monitor.progress(numInserted++ / (double) subList.size());
             Concept<ClassifiedSupra> generatorConcept = getMaximalConcept(sub.getLabel(), bottom);
             // ignore concepts already declared hetero
             if (generatorConcept.getSupra().isHeterogeneous()) continue;
@@ -61,7 +63,8 @@ public class SparseLattice implements Lattice {
             addExtent(newConcept, sub);
             resetTags();
         }
-        System.out.println(dumpLattice("lattice"));
+        monitor.progress(1);
+        event.finish(this, subList);
     }
 
     private void resetTags() {
@@ -171,6 +174,8 @@ public class SparseLattice implements Lattice {
         }
     }
 
+    // useful for private debugging on occasion
+    @SuppressWarnings("unused")
     private String dumpLattice(String graphName) {
         StringBuilder sb = new StringBuilder();
         sb.append("digraph ").append(graphName).append(" {\nnode [shape=box]\n");
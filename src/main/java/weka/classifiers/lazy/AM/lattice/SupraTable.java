@@ -0,0 +1,257 @@
+package weka.classifiers.lazy.AM.lattice;
+
+import weka.classifiers.lazy.AM.AMUtils;
+import weka.classifiers.lazy.AM.data.Subcontext;
+import weka.classifiers.lazy.AM.label.IntLabel;
+import weka.classifiers.lazy.AM.label.Label;
+import weka.classifiers.lazy.AM.label.LongLabel;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The supracontexts of a lattice whose positions are stored in an array indexed by label bits instead of a map. Like
+ * the {@link LinkedLatticeNode LinkedLatticeNodes} that they replace, the supracontexts form a circular linked list
+ * starting at the empty supracontext, but each one is a slot in a set of parallel arrays holding its count, the slot
+ * after it, the index of the subcontext whose insertion created it, and its subcontexts. The subcontexts are a linked
+ * list shared with the supracontext the slot was copied from, so that creating a supracontext only adds one element.
+ * <p>
+ * Slots whose count falls to 0 are remembered, so that {@link #clean()} can unlink them without searching the list,
+ * and are then reused.
+ */
+final class SupraTable {
+	/**
+	 * Largest label cardinality for which a lattice stores its positions in an array
+	 */
+	static final int MAX_DENSE_CARDINALITY = 24;
+	/**
+	 * Lattices of at most this cardinality always store their positions in an array; the partitions of a
+	 * {@link weka.classifiers.lazy.AM.label.Labeler} are never larger than this
+	 */
+	static final int ALWAYS_DENSE_CARDINALITY = 5;
+	/**
+	 * Above {@link #ALWAYS_DENSE_CARDINALITY}, the array may have at most this many positions per expected visit, so
+	 * that a lattice which only visits a few of its positions does not allocate all of them
+	 */
+	private static final int POSITIONS_PER_VISIT = 4;
+	/**
+	 * The slot of the empty supracontext, which is at the start of the list and is never removed; it is also the
+	 * default value of lattice positions
+	 */
+	static final int EMPTY = 0;
+	private static final int INITIAL_CAPACITY = 64;
+
+	/**
+	 * Number of lattice positions pointing to each slot
+	 */
+	private int[] counts;
+	/**
+	 * The slot after each slot in the list
+	 */
+	private int[] next;
+	/**
+	 * The slot before each slot in the list
+	 */
+	private int[] previous;
+	/**
+	 * Index of the subcontext whose insertion created each slot
+	 */
+	private int[] indices;
+	/**
+	 * Subcontexts of each slot
+	 */
+	private Chain[] data;
+	/**
+	 * Outcome of each slot, as in {@link weka.classifiers.lazy.AM.data.ClassifiedSupra#getOutcome()}
+	 */
+	private double[] outcomes;
+	/**
+	 * Number of slots that have ever been used
+	 */
+	private int size;
+	/**
+	 * Removed slots, which are reused before new ones
+	 */
+	private int[] free = new int[INITIAL_CAPACITY];
+	private int numFree;
+	/**
+	 * Slots whose count reached 0 since the last {@link #clean()}
+	 */
+	private int[] zeroCount = new int[INITIAL_CAPACITY];
+	private int numZeroCount;
+
+	SupraTable() {
+		counts = new int[INITIAL_CAPACITY];
+		next = new int[INITIAL_CAPACITY];
+		previous = new int[INITIAL_CAPACITY];
+		indices = new int[INITIAL_CAPACITY];
+		data = new Chain[INITIAL_CAPACITY];
+		outcomes = new double[INITIAL_CAPACITY];
+		indices[EMPTY] = -1;
+		outcomes[EMPTY] = AMUtils.UNKNOWN;
+		size = 1;
+		reset();
+	}
+
+	/**
+	 * Removes every supracontext except the empty one, keeping the arrays at their current capacity.
+	 */
+	void reset() {
+		// let the subcontexts be collected
+		Arrays.fill(data, 1, size, null);
+		next[EMPTY] = EMPTY;
+		previous[EMPTY] = EMPTY;
+		size = 1;
+		numFree = 0;
+		numZeroCount = 0;
+	}
+
+	/**
+	 * @param cardinality the cardinality of the lattice labels
+	 * @param visits      the expected number of visits to lattice positions while filling the lattice
+	 * @return true if a lattice of the given cardinality should store its positions in an array
+	 */
+	static boolean useDense(int cardinality, double visits) {
+		if (cardinality <= ALWAYS_DENSE_CARDINALITY) return true;
+		return cardinality <= MAX_DENSE_CARDINALITY && (1 << cardinality) <= visits * POSITIONS_PER_VISIT;
+	}
+
+	/**
+	 * @return the bits of {@code label} as an {@link IntLabel}, or null if it is not a label with an int or long
+	 * representation of at most {@link #MAX_DENSE_CARDINALITY}
+	 */
+	static IntLabel toDenseLabel(Label label) {
+		if (label.getCardinality() > MAX_DENSE_CARDINALITY) return null;
+		if (label instanceof IntLabel) return (IntLabel) label;
+		if (label instanceof LongLabel)
+			return IntLabel.of((int) ((LongLabel) label).labelBits(), label.getCardinality());
+		return null;
+	}
+
+	/**
+	 * @return the sum over the labels of the number of positions each one visits: 2<sup>m</sup>, where m is its number
+	 * of matches
+	 */
+	static double countVisits(Iterable<? extends Label> labels) {
+		double visits = 0;
+		for (Label label : labels) {
+			visits += Math.pow(2, label.numMatches());
+		}
+		return visits;
+	}
+
+	int getNext(int slot) {
+		return next[slot];
+	}
+
+	int getIndex(int slot) {
+		return indices[slot];
+	}
+
+	int getCount(int slot) {
+		return counts[slot];
+	}
+
+	void incrementCount(int slot) {
+		counts[slot]++;
+	}
+
+	/**
+	 * Decrements the count of {@code slot}; if it reaches 0, the slot is removed by the next {@link #clean()}.
+	 *
+	 * @throws IllegalStateException if the count is already zero
+	 */
+	void decrementCount(int slot) {
+		if (counts[slot] == 0) throw new IllegalStateException("Count cannot be less than zero");
+		if (--counts[slot] == 0) {
+			if (numZeroCount == zeroCount.length) zeroCount = Arrays.copyOf(zeroCount, numZeroCount * 2);
+			zeroCount[numZeroCount++] = slot;
+		}
+	}
+
+	/**
+	 * Same as {@link weka.classifiers.lazy.AM.data.ClassifiedSupra#wouldBeHetero(Subcontext)} for the supracontext in
+	 * {@code slot}.
+	 */
+	boolean wouldBeHetero(int slot, Subcontext sub) {
+		if (data[slot] == null) return false;
+		if (sub.getOutcome() != outcomes[slot]) return true;
+		return sub.isNondeterministic();
+	}
+
+	/**
+	 * Same as {@link LinkedLatticeNode#insertAfter(Subcontext, int)}: creates a supracontext containing the subcontexts
+	 * of {@code slot} and {@code sub}, with a count of 1, and inserts it into the list after {@code slot}.
+	 *
+	 * @return the new slot
+	 */
+	int insertAfter(int slot, Subcontext sub, int index) {
+		int newSlot = numFree > 0 ? free[--numFree] : newSlot();
+		counts[newSlot] = 1;
+		indices[newSlot] = index;
+		data[newSlot] = new Chain(sub, data[slot]);
+		if (data[slot] == null) outcomes[newSlot] = sub.getOutcome();
+		else outcomes[newSlot] = wouldBeHetero(slot, sub) ? AMUtils.HETEROGENEOUS : outcomes[slot];
+		next[newSlot] = next[slot];
+		previous[next[slot]] = newSlot;
+		next[slot] = newSlot;
+		previous[newSlot] = slot;
+		return newSlot;
+	}
+
+	private int newSlot() {
+		if (size == counts.length) {
+			int capacity = size * 2;
+			counts = Arrays.copyOf(counts, capacity);
+			next = Arrays.copyOf(next, capacity);
+			previous = Arrays.copyOf(previous, capacity);
+			indices = Arrays.copyOf(indices, capacity);
+			data = Arrays.copyOf(data, capacity);
+			outcomes = Arrays.copyOf(outcomes, capacity);
+		}
+		return size++;
+	}
+
+	/**
+	 * Removes the supracontexts whose counts have reached 0 from the list so that their slots can be reused. This is
+	 * called after each insertion rather than as soon as a count reaches 0, because the new supracontexts made during
+	 * an insertion are linked after the ones they were copied from.
+	 */
+	void clean() {
+		for (int i = 0; i < numZeroCount; i++) {
+			int slot = zeroCount[i];
+			next[previous[slot]] = next[slot];
+			previous[next[slot]] = previous[slot];
+			// let the subcontexts be collected
+			data[slot] = null;
+			if (numFree == free.length) free = Arrays.copyOf(free, numFree * 2);
+			free[numFree++] = slot;
+		}
+		numZeroCount = 0;
+	}
+
+	/**
+	 * @return the subcontexts of the supracontext in {@code slot}
+	 */
+	Set<Subcontext> getData(int slot) {
+		Set<Subcontext> subs = new HashSet<>();
+		for (Chain chain = data[slot]; chain != null; chain = chain.rest) {
+			subs.add(chain.sub);
+		}
+		return subs;
+	}
+
+	/**
+	 * An immutable list of subcontexts, which the supracontexts copied from one another share
+	 */
+	private static final class Chain {
+		private final Subcontext sub;
+		private final Chain rest;
+
+		Chain(Subcontext sub, Chain rest) {
+			this.sub = sub;
+			this.rest = rest;
+		}
+	}
+}
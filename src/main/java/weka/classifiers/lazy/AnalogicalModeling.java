@@ -18,25 +18,47 @@ package weka.classifiers.lazy;
 
 import weka.classifiers.Evaluation;
 import weka.classifiers.UpdateableClassifier;
+import weka.classifiers.lazy.AM.AMStats;
+import weka.classifiers.lazy.AM.AMStats.Phase;
 import weka.classifiers.lazy.AM.AMVersion;
+import weka.classifiers.lazy.AM.CacheEvictionPolicy;
 import weka.classifiers.lazy.AM.Enum2TagUtils;
+import weka.classifiers.lazy.AM.PartitionMethod;
+import weka.classifiers.lazy.AM.ResultsCache;
+import weka.classifiers.lazy.AM.TimeLimitAction;
 import weka.classifiers.lazy.AM.data.AMResults;
+import weka.classifiers.lazy.AM.data.ExemplarStore;
 import weka.classifiers.lazy.AM.data.SubcontextList;
+import weka.classifiers.lazy.AM.data.SubcontextOrdering;
 import weka.classifiers.lazy.AM.label.Labeler;
 import weka.classifiers.lazy.AM.label.LabelerFactory;
 import weka.classifiers.lazy.AM.label.MissingDataCompare;
+import weka.classifiers.lazy.AM.lattice.FillMonitor;
 import weka.classifiers.lazy.AM.lattice.JohnsenJohanssonLattice;
 import weka.classifiers.lazy.AM.lattice.Lattice;
-import weka.classifiers.lazy.AM.lattice.LatticeFactory;
+import weka.classifiers.lazy.AM.lattice.LatticePlan;
+import weka.classifiers.lazy.AM.lattice.LatticePlanner;
 import weka.classifiers.lazy.AM.lattice.LatticeFactory.CardinalityBasedLatticeFactory;
 import weka.core.*;
 import weka.core.Capabilities.Capability;
 import weka.core.TechnicalInformation.Type;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 
 /**
@@ -129,6 +151,70 @@ import java.util.function.Supplier;
  * is 'variable'
  * </pre>
  *
+ * <pre>
+ * -threads &lt;num&gt;
+ *    Number of threads used for filling lattices and for classifying batches of test items (default 0, one per
+ * available processor)
+ * </pre>
+ *
+ * <pre>
+ * -cache-size &lt;num&gt;
+ *    Maximum number of classification results to cache, so that test items with the same features as a previous
+ * item are not classified again (default 0, no caching)
+ * </pre>
+ *
+ * <pre>
+ * -cache-weight &lt;num&gt;
+ *    Maximum total number of subcontexts and supracontexts held by cached classification results (default 0, no limit)
+ * </pre>
+ *
+ * <pre>
+ * -cache-policy &lt;policy&gt;
+ *    Policy for evicting cached classification results; the options are lru (least recently used) or fifo (oldest
+ * first). Default is 'lru'
+ * </pre>
+ *
+ * <pre>
+ * -time-limit &lt;ms&gt;
+ *    Maximum time in milliseconds for building and filling the lattice of a single test item (default 0, no
+ * limit)
+ * </pre>
+ *
+ * <pre>
+ * -time-limit-action &lt;action&gt;
+ *    What to do when the time limit is exceeded; the options are fail or approximate (classify with the approximate
+ * Johnsen-Johansson lattice instead). Default is 'fail'
+ * </pre>
+ *
+ * <pre>
+ * -partition-method &lt;method&gt;
+ *    Method of splitting labels for the distributed lattice; the options are contiguous, correlated (group features
+ * whose matches are correlated) or minimum-product (choose the span size with the lowest estimated cost). Default is
+ * 'contiguous'
+ * </pre>
+ *
+ * <pre>
+ * -subcontext-order &lt;order&gt;
+ *    Order in which subcontexts are added to the lattice; the options are natural (training data order),
+ * most-mismatches, fewest-mismatches, rare-outcomes (nondeterministic and rare outcomes first) or random. Default is
+ * 'natural'
+ * </pre>
+ *
+ * <pre>
+ * -prune-heterogeneous
+ *    Leave subcontexts which can only be in heterogeneous supracontexts out of exact lattices (default off)
+ * </pre>
+ *
+ * <pre>
+ * -reuse-lattice-storage
+ *    Let each thread keep the storage used to fill lattices and reuse it for the next classification (default off)
+ * </pre>
+ *
+ * <pre>
+ * -jmx
+ *    Register the classification statistics as an MBean so that they can be monitored with JMX (default off)
+ * </pre>
+ *
  *   <!-- options-end -->
  *
  * @author Nathan Glenn (garfieldnate at gmail dot com)
@@ -141,9 +227,9 @@ public class AnalogicalModeling extends weka.classifiers.AbstractClassifier impl
     private Instances trainingInstances;
 
     /**
-     * The training exemplars used for classification.
+     * The training exemplars used for classification, encoded for fast labeling.
      */
-    private List<Instance> trainingExemplars;
+    private ExemplarStore trainingExemplars;
 
     /**
      * The number of attributes.
@@ -162,41 +248,136 @@ public class AnalogicalModeling extends weka.classifiers.AbstractClassifier impl
      * This method is where all of the action happens! Given a test item, it uses
      * existing exemplars to assign outcome probabilities to it.
      * <p>
-     * Note that this method sets the {@link #results} variable (used by
-     * {@link weka.classifiers.evaluation.output.prediction.AnalogicalModelingOutput}) without any synchronization.
-     * This means that if you want to print results from multiple calls to this method, you should not call it
-     * in parallel. If you want to make multiple {@link #classify(Instance) classify} calls in parallel, you should
-     * create multiple classifier instances. This sort of parallelism for large-cardinality datasets is inadvisable,
-     * anyway, since a single classifier instance will attempt to saturate all of the available CPUs.
+     * This method does not modify the state of the classifier (other than the results cache), so it may be called
+     * from several threads at once; {@link #distributionsForInstances(Instances)} relies on this to classify test
+     * items in parallel.
+     * <p>
+     * If the results cache is enabled (see {@link #setCacheSize(int)}), results for items with the same features as
+     * a previously classified item are taken from the cache without running the algorithm again.
      *
      * @param testItem Item to make context base on
      * @return Analogical set which holds results of the classification for the given item
      * @throws ExecutionException   If execution is rejected for some reason
      * @throws InterruptedException If any thread is interrupted for any reason (user presses ctrl-C, etc.)
+     * @throws TimeoutException     If the time limit was exceeded and the time limit action is to fail
      */
-    private AMResults classify(Instance testItem) throws InterruptedException, ExecutionException {
+    private AMResults classify(Instance testItem) throws InterruptedException, ExecutionException, TimeoutException {
+        ResultsCache cache = getCache();
+        if (cache == null) {
+            return runAM(testItem);
+        }
+        long generation = cache.getGeneration();
+        AMResults cached = cache.get(testItem);
+        if (cached != null) {
+            if (getDebug()) System.out.println("Using cached results for: " + testItem);
+            return cached;
+        }
+        AMResults results = runAM(testItem);
+        cache.put(testItem, results, generation);
+        return results;
+    }
+
+    /**
+     * Runs the full analogical modeling algorithm for the given item; see {@link #classify(Instance)}.
+     */
+    private AMResults runAM(Instance testItem) throws InterruptedException, ExecutionException, TimeoutException {
         if (getDebug()) System.out.println("Classifying: " + testItem);
+        AMStats stats = getStats();
 
-		Labeler labeler = new LabelerFactory.CardinalityBasedLabelerFactory().createLabeler(testItem, m_ignoreUnknowns, mdc);
+        long start = System.nanoTime();
+        // the time limit starts now, so that it also covers planning and pruning
+        Duration timeLimit = m_timeLimit == 0 ? null : Duration.ofMillis(m_timeLimit);
+        FillMonitor monitor = new FillMonitor(null, timeLimit, stats);
+		Labeler labeler = createLabeler(testItem);
+		start = record(stats, Phase.LABELER, start);
 		// 3 steps to assigning outcome probabilities:
 		// 1. Place each data item in a subcontext
-		SubcontextList subList = new SubcontextList(labeler, trainingExemplars, getRemoveTestExemplar());
+		SubcontextList subList = createSubcontextList(labeler);
+		record(stats, Phase.SUBCONTEXT_LIST, start);
         // 2. Create a supracontextual lattice and fill it with subcontexts
-		LatticeFactory latticeFactory;
-		if (randomProvider == null) {
-			latticeFactory = new CardinalityBasedLatticeFactory(subList.getCardinality(), subList.getLabeler().numPartitions());
-		} else {
-			latticeFactory = new CardinalityBasedLatticeFactory(subList.getCardinality(), subList.getLabeler().numPartitions(), randomProvider);
-		}
-		Lattice lattice = latticeFactory.createLattice();
-		lattice.fill(subList);
+		Lattice lattice = fillLattice(createPlanner(), subList, testItem, monitor, stats);
 		// 3. record the analogical set and other statistics from the pointers in the
         // resulting homogeneous supracontexts
-        // we save the results for use with AnalogicalModelingOutput
-        results = new AMResults(lattice, subList, testItem, m_linearCount, labeler);
+        start = System.nanoTime();
+        AMResults results = new AMResults(lattice, subList, testItem, m_linearCount, labeler);
+        record(stats, Phase.RESULTS, start);
+        stats.recordClassification(subList.size(), lattice.getSupracontexts().size());
         return results;
     }
 
+    /**
+     * Records the time since {@code start} as the duration of {@code phase}
+     *
+     * @return the current time, as the start of the next phase
+     */
+    private static long record(AMStats stats, Phase phase, long start) {
+        long end = System.nanoTime();
+        stats.record(phase, end - start);
+        return end;
+    }
+
+    /**
+     * Plans the lattice and fills it, stopping when {@code monitor} runs out of time. Exact lattices are filled
+     * without the heterogeneous subcontexts if they are pruned; the results still show every subcontext. Pruning would
+     * change the results of an approximate lattice, which samples supracontexts from all of the subcontexts.
+     */
+    private Lattice fillLattice(LatticePlanner planner, SubcontextList subList, Instance testItem,
+                                FillMonitor monitor, AMStats stats)
+        throws InterruptedException, ExecutionException, TimeoutException {
+        LatticePlan plan = null;
+        try {
+            long start = System.nanoTime();
+            plan = planner.plan(subList, monitor);
+            start = record(stats, Phase.PLAN, start);
+            if (getDebug()) System.out.println(plan);
+            SubcontextList latticeSubList = subList;
+            if (m_pruneHeterogeneous && plan.isExact()) {
+                latticeSubList = subList.pruneHeterogeneous(monitor);
+                start = record(stats, Phase.PRUNE, start);
+            }
+            Lattice lattice = plan.createLattice();
+            lattice.fill(latticeSubList, monitor);
+            record(stats, Phase.fill(plan.getEngine()), start);
+            return lattice;
+        } catch (CancellationException e) {
+            // an approximate lattice that ran out of time would only run out of time again
+            if (m_timeLimitAction == TimeLimitAction.FAIL || (plan != null && !plan.isExact())) {
+                String step = plan == null ? "Planning the lattice" : "Filling the " + plan.getEngine() + " lattice";
+                TimeoutException timeout = new TimeoutException(
+                    step + " took longer than " + m_timeLimit + " ms for: " + testItem);
+                timeout.initCause(e);
+                throw timeout;
+            }
+            if (getDebug()) System.out.println("Time limit exceeded; approximating instead");
+            Lattice lattice = planner.createLattice(LatticePlan.Engine.JOHNSEN_JOHANSSON);
+            long start = System.nanoTime();
+            lattice.fill(subList, new FillMonitor(null, null, stats));
+            record(stats, Phase.JOHNSEN_JOHANSSON_FILL, start);
+            return lattice;
+        }
+    }
+
+    private Labeler createLabeler(Instance testItem) {
+        return new LabelerFactory.CardinalityBasedLabelerFactory().createLabeler(testItem, m_ignoreUnknowns, mdc);
+    }
+
+    private SubcontextList createSubcontextList(Labeler labeler) {
+        SubcontextList subList = new SubcontextList(labeler, trainingExemplars, getRemoveTestExemplar());
+        if (m_subcontextOrdering != SubcontextOrdering.NATURAL) {
+            subList.reorder(m_subcontextOrdering, getRandomProvider().get());
+        }
+        return subList;
+    }
+
+    private LatticePlanner createPlanner() {
+        return new LatticePlanner(getRandomProvider(), getPool(), LatticePlanner.DEFAULT_EXACT_BUDGET,
+            m_partitionMethod.getStrategy(), m_reuseLatticeStorage);
+    }
+
+    private Supplier<Random> getRandomProvider() {
+        return randomProvider == null ? CardinalityBasedLatticeFactory.DEFAULT_RANDOM_PROVIDER : randomProvider;
+    }
+
     // ////OPTION STORAGE VARIABLES
 
     /**
@@ -218,6 +399,7 @@ public class AnalogicalModeling extends weka.classifiers.AbstractClassifier impl
      */
     public void setLinearCount(boolean lc) {
         m_linearCount = lc;
+        clearCache();
     }
 
     /**
@@ -237,6 +419,7 @@ public class AnalogicalModeling extends weka.classifiers.AbstractClassifier impl
 	@SuppressWarnings("unused") // used by Weka UI
     public void setIgnoreUnknowns(boolean ignoreUnknowns) {
         m_ignoreUnknowns = ignoreUnknowns;
+        clearCache();
     }
 
 	@SuppressWarnings("unused") // used by Weka UI
@@ -261,6 +444,7 @@ public class AnalogicalModeling extends weka.classifiers.AbstractClassifier impl
      */
     public void setRemoveTestExemplar(boolean removeTestExemplar) {
         this.m_removeTestExemplar = removeTestExemplar;
+        clearCache();
     }
 
     /**
@@ -291,9 +475,452 @@ public class AnalogicalModeling extends weka.classifiers.AbstractClassifier impl
     public void setMissingDataCompare(SelectedTag newMode) {
         if (newMode.getTags() == TAGS_MISSING) {
             mdc = Enum2TagUtils.getElement(MissingDataCompare.class, newMode);
+            clearCache();
+        }
+    }
+
+    /**
+     * Maximum number of cached classification results; 0 disables the cache
+     */
+    private int m_cacheSize = 0;
+
+    /**
+     * Maximum total weight of cached classification results; 0 means no limit
+     */
+    private long m_cacheWeight = 0;
+
+    private CacheEvictionPolicy m_cachePolicy = CacheEvictionPolicy.LRU;
+
+    /**
+     * Created lazily from the cache options, and discarded whenever they change
+     */
+    private transient volatile ResultsCache resultsCache;
+
+    /**
+     * Define possible cache eviction policies
+     */
+    public static final Tag[] TAGS_CACHE_POLICY = Enum2TagUtils.getTags(CacheEvictionPolicy.class);
+
+    /**
+     * @return the maximum number of classification results to cache; 0 if caching is disabled
+     */
+    public int getCacheSize() {
+        return m_cacheSize;
+    }
+
+    /**
+     * @param cacheSize the maximum number of classification results to cache; 0 disables caching
+     * @throws IllegalArgumentException if cacheSize is negative
+     */
+    public void setCacheSize(int cacheSize) {
+        if (cacheSize < 0) throw new IllegalArgumentException("Cache size must not be negative: " + cacheSize);
+        m_cacheSize = cacheSize;
+        resultsCache = null;
+    }
+
+	@SuppressWarnings("unused") // used by Weka UI
+    public String cacheSizeTipText() {
+        return "The maximum number of classification results to keep, so that test items with the same features "
+               + "as a previous item are not classified again; 0 disables the cache";
+    }
+
+    /**
+     * @return the maximum total weight of cached classification results; 0 if there is no limit
+     */
+    public long getCacheWeight() {
+        return m_cacheWeight;
+    }
+
+    /**
+     * @param cacheWeight the maximum total weight of cached classification results, where the weight of one result is
+     *                    the number of subcontexts and supracontexts it contains; 0 for no limit
+     * @throws IllegalArgumentException if cacheWeight is negative
+     */
+    public void setCacheWeight(long cacheWeight) {
+        if (cacheWeight < 0) throw new IllegalArgumentException("Cache weight must not be negative: " + cacheWeight);
+        m_cacheWeight = cacheWeight;
+        resultsCache = null;
+    }
+
+	@SuppressWarnings("unused") // used by Weka UI
+    public String cacheWeightTipText() {
+        return "The maximum total number of subcontexts and supracontexts held by the cached classification "
+               + "results; 0 means no limit";
+    }
+
+    /**
+     * @return Selected policy for evicting entries from the results cache
+     */
+    public SelectedTag getCachePolicy() {
+        return new SelectedTag(m_cachePolicy.ordinal(), TAGS_CACHE_POLICY);
+    }
+
+    /**
+     * @param newPolicy representing choice of policy for evicting entries from the results cache
+     */
+    public void setCachePolicy(SelectedTag newPolicy) {
+        if (newPolicy.getTags() == TAGS_CACHE_POLICY) {
+            m_cachePolicy = Enum2TagUtils.getElement(CacheEvictionPolicy.class, newPolicy);
+            resultsCache = null;
+        }
+    }
+
+	@SuppressWarnings("unused") // used by Weka UI
+    public String cachePolicyTipText() {
+        return "The policy used to choose which classification results to remove when the cache is full";
+    }
+
+    /**
+     * @return the number of classifications answered from the results cache since the cache options were last set
+     */
+    public long getCacheHits() {
+        ResultsCache cache = resultsCache;
+        return cache == null ? 0 : cache.getHits();
+    }
+
+    /**
+     * @return the number of classifications not found in the results cache since the cache options were last set
+     */
+    public long getCacheMisses() {
+        ResultsCache cache = resultsCache;
+        return cache == null ? 0 : cache.getMisses();
+    }
+
+    /**
+     * Maximum time in milliseconds for building and filling the lattice of one test item; 0 means no limit
+     */
+    private long m_timeLimit = 0;
+
+    private TimeLimitAction m_timeLimitAction = TimeLimitAction.FAIL;
+
+    /**
+     * Define possible actions for when the time limit is exceeded
+     */
+    public static final Tag[] TAGS_TIME_LIMIT_ACTION = Enum2TagUtils.getTags(TimeLimitAction.class);
+
+    /**
+     * @return the maximum time in milliseconds for building and filling the lattice of one test item; 0 if there is
+     * no limit
+     */
+    public long getTimeLimit() {
+        return m_timeLimit;
+    }
+
+    /**
+     * @param timeLimit the maximum time in milliseconds for building and filling the lattice of one test item,
+     *                  starting before its subcontexts are computed, so that planning and pruning count as well; 0
+     *                  for no limit
+     * @throws IllegalArgumentException if timeLimit is negative
+     */
+    public void setTimeLimit(long timeLimit) {
+        if (timeLimit < 0) throw new IllegalArgumentException("Time limit must not be negative: " + timeLimit);
+        m_timeLimit = timeLimit;
+        clearCache();
+    }
+
+	@SuppressWarnings("unused") // used by Weka UI
+    public String timeLimitTipText() {
+        return "The maximum time in milliseconds for building and filling the lattice of a single test item, "
+               + "including planning and pruning, after which the time limit action is taken; 0 means no limit";
+    }
+
+    /**
+     * @return Selected action for when the time limit is exceeded
+     */
+    public SelectedTag getTimeLimitAction() {
+        return new SelectedTag(m_timeLimitAction.ordinal(), TAGS_TIME_LIMIT_ACTION);
+    }
+
+    /**
+     * @param newAction representing choice of action for when the time limit is exceeded
+     */
+    public void setTimeLimitAction(SelectedTag newAction) {
+        if (newAction.getTags() == TAGS_TIME_LIMIT_ACTION) {
+            m_timeLimitAction = Enum2TagUtils.getElement(TimeLimitAction.class, newAction);
+            clearCache();
+        }
+    }
+
+	@SuppressWarnings("unused") // used by Weka UI
+    public String timeLimitActionTipText() {
+        return "What to do when building and filling the lattice for a test item exceeds the time limit: fail the "
+               + "classification, or classify the item with the approximate Johnsen-Johansson lattice instead";
+    }
+
+    private PartitionMethod m_partitionMethod = PartitionMethod.CONTIGUOUS;
+
+    /**
+     * Define possible methods of splitting labels for the distributed lattice
+     */
+    public static final Tag[] TAGS_PARTITION_METHOD = Enum2TagUtils.getTags(PartitionMethod.class);
+
+    /**
+     * @return Selected method of splitting labels for the distributed lattice
+     */
+    public SelectedTag getPartitionMethod() {
+        return new SelectedTag(m_partitionMethod.ordinal(), TAGS_PARTITION_METHOD);
+    }
+
+    /**
+     * @param newMethod representing choice of method for splitting labels for the distributed lattice; this does
+     *                  not change classification results, so the results cache is kept
+     */
+    public void setPartitionMethod(SelectedTag newMethod) {
+        if (newMethod.getTags() == TAGS_PARTITION_METHOD) {
+            m_partitionMethod = Enum2TagUtils.getElement(PartitionMethod.class, newMethod);
         }
     }
 
+	@SuppressWarnings("unused") // used by Weka UI
+    public String partitionMethodTipText() {
+        return "How to split labels among the sub-lattices of the distributed lattice: into contiguous spans, "
+               + "grouping features with correlated matches, or choosing the span size with the lowest estimated "
+               + "cost; this affects speed but not results";
+    }
+
+    private boolean m_pruneHeterogeneous = false;
+
+    /**
+     * @return true if subcontexts which can only be in heterogeneous supracontexts are left out of the lattice
+     */
+    public boolean getPruneHeterogeneous() {
+        return m_pruneHeterogeneous;
+    }
+
+    /**
+     * @param pruneHeterogeneous true to leave subcontexts which can only be in heterogeneous supracontexts out of
+     *                           exact lattices (see {@link SubcontextList#pruneHeterogeneous()}); approximate
+     *                           lattices are always filled with every subcontext, so this does not change
+     *                           classification results, and the results cache is kept
+     */
+    public void setPruneHeterogeneous(boolean pruneHeterogeneous) {
+        m_pruneHeterogeneous = pruneHeterogeneous;
+    }
+
+	@SuppressWarnings("unused") // used by Weka UI
+    public String pruneHeterogeneousTipText() {
+        return "Set to true to find the subcontexts which can only be in heterogeneous supracontexts before filling "
+               + "an exact lattice, and leave them out of it; approximate lattices always use every subcontext, so "
+               + "this affects speed but not results";
+    }
+
+    private boolean m_reuseLatticeStorage = false;
+
+    /**
+     * @return true if each thread reuses the storage of the lattices it fills
+     */
+    public boolean getReuseLatticeStorage() {
+        return m_reuseLatticeStorage;
+    }
+
+    /**
+     * @param reuseLatticeStorage true to let each thread keep the maps and arrays used to fill basic and distributed
+     *                            lattices, and reuse them for the next classification instead of allocating new ones;
+     *                            each thread then holds on to the storage of the largest lattice it has filled. This
+     *                            does not change classification results, so the results cache is kept
+     */
+    public void setReuseLatticeStorage(boolean reuseLatticeStorage) {
+        m_reuseLatticeStorage = reuseLatticeStorage;
+    }
+
+	@SuppressWarnings("unused") // used by Weka UI
+    public String reuseLatticeStorageTipText() {
+        return "Set to true to let each thread keep the storage used to fill lattices and reuse it for the next "
+               + "classification, which reduces garbage collection in long runs; this affects speed and memory "
+               + "use but not results";
+    }
+
+    private SubcontextOrdering m_subcontextOrdering = SubcontextOrdering.NATURAL;
+
+    /**
+     * Define possible orders for adding subcontexts to the lattice
+     */
+    public static final Tag[] TAGS_SUBCONTEXT_ORDERING = Enum2TagUtils.getTags(SubcontextOrdering.class);
+
+    /**
+     * @return Selected order for adding subcontexts to the lattice
+     */
+    public SelectedTag getSubcontextOrdering() {
+        return new SelectedTag(m_subcontextOrdering.ordinal(), TAGS_SUBCONTEXT_ORDERING);
+    }
+
+    /**
+     * @param newOrdering representing choice of order for adding subcontexts to the lattice; this does not change
+     *                    classification results, so the results cache is kept. The random order uses the
+     *                    {@link #setRandomProvider random provider}.
+     */
+    public void setSubcontextOrdering(SelectedTag newOrdering) {
+        if (newOrdering.getTags() == TAGS_SUBCONTEXT_ORDERING) {
+            m_subcontextOrdering = Enum2TagUtils.getElement(SubcontextOrdering.class, newOrdering);
+        }
+    }
+
+	@SuppressWarnings("unused") // used by Weka UI
+    public String subcontextOrderingTipText() {
+        return "The order in which subcontexts are added to the lattice: the order of the training data, most or "
+               + "fewest mismatches first, nondeterministic and rare outcomes first, or random; this affects speed "
+               + "but not results";
+    }
+
+    private boolean m_jmx = false;
+
+    /**
+     * Created lazily, since it is not serialized
+     */
+    private transient volatile AMStats stats;
+
+    /**
+     * Name under which {@link #stats} is registered as an MBean, or null if it is not registered
+     */
+    private transient ObjectName mBeanName;
+
+    private static final AtomicInteger mBeanCount = new AtomicInteger();
+
+    /**
+     * @return statistics about the phases of classification of every test item classified since this classifier was
+     * created (or deserialized); results taken from the cache are not included
+     */
+    public AMStats getStats() {
+        AMStats currentStats = stats;
+        if (currentStats == null) {
+            synchronized (this) {
+                if (stats == null) {
+                    stats = new AMStats();
+                }
+                currentStats = stats;
+            }
+        }
+        return currentStats;
+    }
+
+    /**
+     * @return true if the classification statistics are registered as an MBean
+     */
+    public boolean getJmx() {
+        return m_jmx;
+    }
+
+    /**
+     * @param jmx true to register the {@link #getStats() classification statistics} with the platform MBean server,
+     *            false to unregister them. Each classifier is registered under its own name, of the form
+     *            {@code weka.classifiers.lazy:type=AnalogicalModeling,name=<number>}.
+     */
+    public void setJmx(boolean jmx) {
+        m_jmx = jmx;
+        updateMBeanRegistration();
+    }
+
+	@SuppressWarnings("unused") // used by Weka UI
+    public String jmxTipText() {
+        return "Set to true to register statistics about the phases of classification as an MBean, so that they "
+               + "can be monitored with JMX tools such as JConsole";
+    }
+
+    /**
+     * @return the name under which the statistics are registered as an MBean, or null if they are not registered
+     */
+    public synchronized ObjectName getMBeanName() {
+        return mBeanName;
+    }
+
+    private synchronized void updateMBeanRegistration() {
+        try {
+            if (m_jmx && mBeanName == null) {
+                ObjectName name = new ObjectName(
+                    "weka.classifiers.lazy:type=AnalogicalModeling,name=" + mBeanCount.incrementAndGet());
+                ManagementFactory.getPlatformMBeanServer().registerMBean(getStats(), name);
+                mBeanName = name;
+            } else if (!m_jmx && mBeanName != null) {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(mBeanName);
+                mBeanName = null;
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not update MBean registration", e);
+        }
+    }
+
+    /**
+     * @return the results cache, or null if caching is disabled
+     */
+    private ResultsCache getCache() {
+        if (m_cacheSize == 0) return null;
+        ResultsCache cache = resultsCache;
+        if (cache == null) {
+            synchronized (this) {
+                if (resultsCache == null) {
+                    resultsCache = new ResultsCache(m_cacheSize, m_cacheWeight, m_cachePolicy);
+                }
+                cache = resultsCache;
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Removes all cached results; this must be called whenever the training data or an option affecting
+     * classification results change.
+     */
+    private void clearCache() {
+        ResultsCache cache = resultsCache;
+        if (cache != null) cache.clear();
+    }
+
+    /**
+     * Number of threads to use for parallel work; 0 means one per available processor
+     */
+    private int m_numThreads = 0;
+
+    /**
+     * Shared by all of the lattices created by this classifier; created lazily and replaced when the number of
+     * threads changes
+     */
+    private transient volatile ForkJoinPool pool;
+
+    /**
+     * @return the number of threads used for classification; 0 means one per available processor
+     */
+    public int getNumThreads() {
+        return m_numThreads;
+    }
+
+    /**
+     * @param numThreads the number of threads to use for classification; 0 means one per available processor
+     * @throws IllegalArgumentException if numThreads is negative
+     */
+    public void setNumThreads(int numThreads) {
+        if (numThreads < 0) throw new IllegalArgumentException("Number of threads must not be negative: " + numThreads);
+        m_numThreads = numThreads;
+        // the old pool is not shut down, since classifications may still be using it; its
+        // threads will terminate on their own once they are idle
+        pool = null;
+    }
+
+	@SuppressWarnings("unused") // used by Weka UI
+    public String numThreadsTipText() {
+        return "The number of threads used for filling lattices and for classifying batches of test items; "
+               + "0 means one thread per available processor";
+    }
+
+    private int getEffectiveNumThreads() {
+        return m_numThreads == 0 ? Runtime.getRuntime().availableProcessors() : m_numThreads;
+    }
+
+    /**
+     * @return the pool in which all parallel lattice work for this classifier is done
+     */
+    private ForkJoinPool getPool() {
+        ForkJoinPool currentPool = pool;
+        if (currentPool == null) {
+            synchronized (this) {
+                if (pool == null) {
+                    pool = new ForkJoinPool(getEffectiveNumThreads());
+                }
+                currentPool = pool;
+            }
+        }
+        return currentPool;
+    }
+
 	/**
 	 * Provide the source of randomness for algorithms that require it (e.g. {@link JohnsenJohanssonLattice}). This cannot
 	 * be set from the Weka GUI and is marked {@code transient}, e.g. it cannot be serialized with the class. The provider
@@ -301,6 +928,7 @@ public class AnalogicalModeling extends weka.classifiers.AbstractClassifier impl
 	 */
 	public void setRandomProvider(Supplier<Random> randomProvider) {
     	this.randomProvider = randomProvider;
+    	clearCache();
 	}
 
     /**
@@ -362,6 +990,75 @@ public class AnalogicalModeling extends weka.classifiers.AbstractClassifier impl
                                1,
                                "-M <method>"
         ));
+        options.add(new Option("\tNumber of threads used for filling lattices and for classifying batches of test "
+                               + "items (default 0, one per available processor)",
+                               "threads",
+                               1,
+                               "-threads <num>"
+        ));
+        options.add(new Option("\tMaximum number of classification results to cache, so that test items with the "
+                               + "same features as a previous item are not classified again (default 0, no caching)",
+                               "cache-size",
+                               1,
+                               "-cache-size <num>"
+        ));
+        options.add(new Option("\tMaximum total number of subcontexts and supracontexts held by cached "
+                               + "classification results (default 0, no limit)",
+                               "cache-weight",
+                               1,
+                               "-cache-weight <num>"
+        ));
+        options.add(new Option("\tPolicy for evicting cached classification results; the options are lru "
+                               + "(least recently used) or fifo (oldest first). Default is 'lru'",
+                               "cache-policy",
+                               1,
+                               "-cache-policy <policy>"
+        ));
+        options.add(new Option("\tMaximum time in milliseconds for building and filling the lattice of a single "
+                               + "test item (default 0, no limit)",
+                               "time-limit",
+                               1,
+                               "-time-limit <ms>"
+        ));
+        options.add(new Option("\tWhat to do when the time limit is exceeded; the options are fail or approximate "
+                               + "(classify with the approximate Johnsen-Johansson lattice instead). Default is 'fail'",
+                               "time-limit-action",
+                               1,
+                               "-time-limit-action <action>"
+        ));
+        options.add(new Option("\tMethod of splitting labels for the distributed lattice; the options are "
+                               + "contiguous, correlated (group features whose matches are correlated) or "
+                               + "minimum-product (choose the span size with the lowest estimated cost). Default is "
+                               + "'contiguous'",
+                               "partition-method",
+                               1,
+                               "-partition-method <method>"
+        ));
+        options.add(new Option("\tOrder in which subcontexts are added to the lattice; the options are natural "
+                               + "(training data order), most-mismatches, fewest-mismatches, rare-outcomes "
+                               + "(nondeterministic and rare outcomes first) or random. Default is 'natural'",
+                               "subcontext-order",
+                               1,
+                               "-subcontext-order <order>"
+        ));
+        options.add(new Option("\tLeave subcontexts which can only be in heterogeneous supracontexts out of exact "
+                               + "lattices (default off)",
+                               "prune-heterogeneous",
+                               0,
+                               "-prune-heterogeneous"
+        ));
+        options.add(new Option("\tLet each thread keep the storage used to fill lattices and reuse it for the next "
+                               + "classification (default off)",
+                               "reuse-lattice-storage",
+                               0,
+                               "-reuse-lattice-storage"
+        ));
+        options.add(new Option("\tRegister the classification statistics as an MBean so that they can be monitored "
+                               + "with JMX (default off)",
+                               "jmx",
+                               0,
+                               "-jmx"
+        ));
 
         return options.elements();
     }
@@ -402,6 +1099,43 @@ public class AnalogicalModeling extends weka.classifiers.AbstractClassifier impl
         }
         options.add("-M");
         options.add(mdc.getOptionString());
+        if (getNumThreads() > 0) {
+            options.add("-threads");
+            options.add(String.valueOf(getNumThreads()));
+        }
+        if (getCacheSize() > 0) {
+            options.add("-cache-size");
+            options.add(String.valueOf(getCacheSize()));
+            if (getCacheWeight() > 0) {
+                options.add("-cache-weight");
+                options.add(String.valueOf(getCacheWeight()));
+            }
+            options.add("-cache-policy");
+            options.add(m_cachePolicy.getOptionString());
+        }
+        if (getTimeLimit() > 0) {
+            options.add("-time-limit");
+            options.add(String.valueOf(getTimeLimit()));
+            options.add("-time-limit-action");
+            options.add(m_timeLimitAction.getOptionString());
+        }
+        if (m_partitionMethod != PartitionMethod.CONTIGUOUS) {
+            options.add("-partition-method");
+            options.add(m_partitionMethod.getOptionString());
+        }
+        if (m_subcontextOrdering != SubcontextOrdering.NATURAL) {
+            options.add("-subcontext-order");
+            options.add(m_subcontextOrdering.getOptionString());
+        }
+        if (getPruneHeterogeneous()) {
+            options.add("-prune-heterogeneous");
+        }
+        if (getReuseLatticeStorage()) {
+            options.add("-reuse-lattice-storage");
+        }
+        if (getJmx()) {
+            options.add("-jmx");
+        }
         // add all options of the superclass
         options.addAll(Arrays.asList(super.getOptions()));
         return options.toArray(new String[0]);
@@ -444,6 +1178,72 @@ public class AnalogicalModeling extends weka.classifiers.AbstractClassifier impl
      * Default is 'variable'
      * </pre>
      *
+     * <pre>
+     * -threads &lt;num&gt;
+     *    Number of threads used for filling lattices and for classifying batches of test items (default 0, one per
+     * available processor)
+     * </pre>
+     *
+     * <pre>
+     * -cache-size &lt;num&gt;
+     *    Maximum number of classification results to cache, so that test items with the same features as a previous
+     * item are not classified again (default 0, no caching)
+     * </pre>
+     *
+     * <pre>
+     * -cache-weight &lt;num&gt;
+     *    Maximum total number of subcontexts and supracontexts held by cached classification results (default 0, no
+     * limit)
+     * </pre>
+     *
+     * <pre>
+     * -cache-policy &lt;policy&gt;
+     *    Policy for evicting cached classification results; the options are lru (least recently used) or fifo (oldest
+     * first). Default is 'lru'
+     * </pre>
+     *
+     * <pre>
+     * -time-limit &lt;ms&gt;
+     *    Maximum time in milliseconds for building and filling the lattice of a single test item (default 0, no
+     * limit)
+     * </pre>
+     *
+     * <pre>
+     * -time-limit-action &lt;action&gt;
+     *    What to do when the time limit is exceeded; the options are fail or approximate (classify with the
+     * approximate Johnsen-Johansson lattice instead). Default is 'fail'
+     * </pre>
+     *
+     * <pre>
+     * -partition-method &lt;method&gt;
+     *    Method of splitting labels for the distributed lattice; the options are contiguous, correlated (group
+     * features whose matches are correlated) or minimum-product (choose the span size with the lowest estimated cost).
+     * Default is 'contiguous'
+     * </pre>
+     *
+     * <pre>
+     * -subcontext-order &lt;order&gt;
+     *    Order in which subcontexts are added to the lattice; the options are natural (training data order),
+     * most-mismatches, fewest-mismatches, rare-outcomes (nondeterministic and rare outcomes first) or random. Default
+     * is 'natural'
+     * </pre>
+     *
+     * <pre>
+     * -prune-heterogeneous
+     *    Leave subcontexts which can only be in heterogeneous supracontexts out of exact lattices (default off)
+     * </pre>
+     *
+     * <pre>
+     * -reuse-lattice-storage
+     *    Let each thread keep the storage used to fill lattices and reuse it for the next classification (default
+     * off)
+     * </pre>
+     *
+     * <pre>
+     * -jmx
+     *    Register the classification statistics as an MBean so that they can be monitored with JMX (default off)
+     * </pre>
+     *
      *   <!-- options-end -->
      *
      * @param options {@inheritDoc}
@@ -463,6 +1263,50 @@ public class AnalogicalModeling extends weka.classifiers.AbstractClassifier impl
             String optionString = Utils.getOption('M', options);
             if (optionString.length() != 0) {
                 this.mdc = Enum2TagUtils.getElement(MissingDataCompare.class, optionString);
+                clearCache();
+            }
+            optionString = Utils.getOption("threads", options);
+            if (optionString.length() != 0) {
+                setNumThreads(Integer.parseInt(optionString));
+            }
+            optionString = Utils.getOption("cache-size", options);
+            if (optionString.length() != 0) {
+                setCacheSize(Integer.parseInt(optionString));
+            }
+            optionString = Utils.getOption("cache-weight", options);
+            if (optionString.length() != 0) {
+                setCacheWeight(Long.parseLong(optionString));
+            }
+            optionString = Utils.getOption("cache-policy", options);
+            if (optionString.length() != 0) {
+                m_cachePolicy = Enum2TagUtils.getElement(CacheEvictionPolicy.class, optionString);
+                resultsCache = null;
+            }
+            optionString = Utils.getOption("time-limit", options);
+            if (optionString.length() != 0) {
+                setTimeLimit(Long.parseLong(optionString));
+            }
+            optionString = Utils.getOption("time-limit-action", options);
+            if (optionString.length() != 0) {
+                m_timeLimitAction = Enum2TagUtils.getElement(TimeLimitAction.class, optionString);
+                clearCache();
+            }
+            optionString = Utils.getOption("partition-method", options);
+            if (optionString.length() != 0) {
+                m_partitionMethod = Enum2TagUtils.getElement(PartitionMethod.class, optionString);
+            }
+            optionString = Utils.getOption("subcontext-order", options);
+            if (optionString.length() != 0) {
+                m_subcontextOrdering = Enum2TagUtils.getElement(SubcontextOrdering.class, optionString);
+            }
+            if (Utils.getFlag("prune-heterogeneous", options)) {
+                setPruneHeterogeneous(true);
+            }
+            if (Utils.getFlag("reuse-lattice-storage", options)) {
+                setReuseLatticeStorage(true);
+            }
+            if (Utils.getFlag("jmx", options)) {
+                setJmx(true);
             }
         } catch (Exception e) {
             e.printStackTrace();
@@ -576,8 +1420,10 @@ public class AnalogicalModeling extends weka.classifiers.AbstractClassifier impl
         trainingInstances = new Instances(instances, 0, instances.numInstances());
 
         // create exemplars for actually running the classifier
-        trainingExemplars = new LinkedList<>();
-		trainingExemplars.addAll(instances);
+        trainingExemplars = new ExemplarStore(instances);
+        clearCache();
+        // the registration is not serialized
+        updateMBeanRegistration();
     }
 
     /**
@@ -592,6 +1438,7 @@ public class AnalogicalModeling extends weka.classifiers.AbstractClassifier impl
         if (instance.classIsMissing()) return;
         trainingInstances.add(instance);
         trainingExemplars.add(instance);
+        clearCache();
         if (getDebug()) System.out.println("Added instance: " + instance);
     }
 
@@ -602,25 +1449,135 @@ public class AnalogicalModeling extends weka.classifiers.AbstractClassifier impl
      */
     @Override
     public double[] distributionForInstance(Instance instance) throws Exception {
-        if (!trainingInstances.equalHeaders(instance.dataset())) throw new Exception(
-            "Incompatible instance types\n" + trainingInstances.equalHeadersMsg(instance.dataset()));
-
-        if (trainingInstances.numInstances() == 0) {
-            throw new Exception("No training instances!");
-        }
-
+        checkCanClassify(instance.dataset());
         if (trainingInstances.numClasses() == 1) {
             if (getDebug()) System.out.println("Training data have only one class");
             // 100 percent likelihood of belonging to the one class
             return new double[]{1};
         }
 
-        AMResults results = classify(instance);
-        if (getDebug()) System.out.println(results);
+        AMResults itemResults = classify(instance);
+        if (getDebug()) System.out.println(itemResults);
+        results = itemResults;
+        return getDistribution(itemResults);
+    }
+
+    /**
+     * Classifies the given test item and returns the full results of the classification, including the analogical
+     * set and gang effects. Unlike {@link #distributionForInstance(Instance)} followed by {@link #getResults()},
+     * this is safe to call from several threads sharing the same classifier, as long as the training data are not
+     * modified concurrently.
+     *
+     * @param instance the item to classify
+     * @return the results of classifying {@code instance}
+     * @throws Exception if the item can't be classified successfully
+     */
+    public AMResults classifyWithResults(Instance instance) throws Exception {
+        checkCanClassify(instance.dataset());
+        AMResults itemResults = classify(instance);
+        if (getDebug()) System.out.println(itemResults);
+        return itemResults;
+    }
+
+    /**
+     * Plans the classification of the given item without running it: the subcontexts are computed and the
+     * lattice implementation that would be used to classify the item is chosen, but the lattice is not filled.
+     * The returned plan contains the estimated cost of each lattice implementation, and its {@code toString()}
+     * explains the choice. This is cheap compared with classification, and can be used to find items that would
+     * take too long to classify exactly.
+     *
+     * @param instance the item to plan for
+     * @return the lattice plan for the item
+     * @throws Exception if the item is not compatible with the training data
+     */
+    public LatticePlan explain(Instance instance) throws Exception {
+        checkCanClassify(instance.dataset());
+        return createPlanner().plan(createSubcontextList(createLabeler(instance)));
+    }
+
+    /**
+     * Classifies each of the given test items independently, using {@link #getNumThreads()} threads. Items that
+     * are large enough to be classified with a multi-threaded lattice will compete with each other for the same
+     * processors, so this is most useful for batches of low-cardinality items.
+     * <p>
+     * Afterwards, {@link #getResults()} returns the results for the last item in the batch.
+     *
+     * @return the class distributions of the test items, in the same order as {@code instances}
+     * @throws Exception if any distribution can't be computed successfully
+     * @see weka.classifiers.AbstractClassifier#distributionsForInstances(weka.core.Instances)
+     */
+    @Override
+    public double[][] distributionsForInstances(Instances instances) throws Exception {
+        checkCanClassify(instances);
+        if (trainingInstances.numClasses() == 1 || instances.numInstances() < 2) {
+            return super.distributionsForInstances(instances);
+        }
+
+        List<Callable<AMResults>> tasks = new ArrayList<>(instances.numInstances());
+        for (Instance instance : instances) {
+            tasks.add(() -> classify(instance));
+        }
+        // a separate executor, since its threads block while waiting for lattices filled in the shared pool
+        int numThreads = Math.min(getEffectiveNumThreads(), instances.numInstances());
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+        double[][] distributions = new double[instances.numInstances()][];
+        try {
+            // invokeAll returns futures in the same order as the tasks
+            List<Future<AMResults>> futures = executor.invokeAll(tasks);
+            for (int i = 0; i < distributions.length; i++) {
+                AMResults itemResults = getResult(futures.get(i));
+                if (getDebug()) System.out.println(itemResults);
+                distributions[i] = getDistribution(itemResults);
+            }
+            results = getResult(futures.get(futures.size() - 1));
+        } finally {
+            executor.shutdownNow();
+        }
+        return distributions;
+    }
+
+    /**
+     * @return true, since {@link #distributionsForInstances(Instances)} classifies test items in parallel
+     */
+    @Override
+    public boolean implementsMoreEfficientBatchPrediction() {
+        return true;
+    }
 
+    /**
+     * @throws Exception if the classifier has no training data or the test data are incompatible with it
+     */
+    private void checkCanClassify(Instances testData) throws Exception {
+        if (!trainingInstances.equalHeaders(testData)) throw new Exception(
+            "Incompatible instance types\n" + trainingInstances.equalHeadersMsg(testData));
+
+        if (trainingInstances.numInstances() == 0) {
+            throw new Exception("No training instances!");
+        }
+    }
+
+    /**
+     * @return the results computed by {@code future}, with any exception thrown during classification unwrapped
+     */
+    private static AMResults getResult(Future<AMResults> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * @param itemResults results returned by {@link #classifyWithResults(Instance)}
+     * @return the probability of each class value, indexed the same as the class attribute's values
+     */
+    public double[] getDistribution(AMResults itemResults) {
         Attribute classAttribute = trainingInstances.attribute(trainingInstances.classIndex());
         double[] classProbability = new double[trainingInstances.numClasses()];
-        for (Entry<String, BigDecimal> entry : results.getClassLikelihood().entrySet())
+        for (Entry<String, BigDecimal> entry : itemResults.getClassLikelihood().entrySet())
             classProbability[classAttribute.indexOfValue(entry.getKey())] = entry.getValue().doubleValue();
 
         return classProbability;
@@ -629,17 +1586,22 @@ public class AnalogicalModeling extends weka.classifiers.AbstractClassifier impl
     /**
      * The analogical set from the last call to distributionForInstance
      */
-    private AMResults results = null;
+    private transient volatile AMResults results = null;
 
     /**
-     * Note that this is not thread-safe; see the documentation for {@link #classify(Instance) classify}.
+     * If several threads call distributionForInstance on the same object, there is no telling which of their results
+     * will be returned; use {@link #classifyWithResults(Instance)} instead.
      *
-     * @return The classification results from the last call to distributionForInstance
+     * @return The classification results from the last call to distributionForInstance (or the results for the last
+     * item from the last call to distributionsForInstances)
      * @throws IllegalStateException if you've never called distributionForInstance from this object
+     * @deprecated use {@link #classifyWithResults(Instance)}, which returns the results of each call separately
      */
+    @Deprecated
     public AMResults getResults() {
-        if (results == null) throw new IllegalStateException("Call distributionForInstance before calling this");
-        return results;
+        AMResults lastResults = results;
+        if (lastResults == null) throw new IllegalStateException("Call distributionForInstance before calling this");
+        return lastResults;
     }
 
     @Override
@@ -0,0 +1,66 @@
+package weka.classifiers.lazy.AM;
+
+import org.junit.Test;
+import weka.classifiers.lazy.AM.AMStats.Phase;
+import weka.classifiers.lazy.AM.AMStats.Snapshot;
+import weka.classifiers.lazy.AM.lattice.LatticePlan.Engine;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class AMStatsTest {
+
+    @Test
+    public void testLatencyHistogram() {
+        AMStats stats = new AMStats();
+        for (long nanos : new long[]{0, 1, 5, 6, 7, 100, 1000}) {
+            stats.record(Phase.LABELER, nanos);
+        }
+        Snapshot snapshot = stats.getLatency(Phase.LABELER);
+        assertEquals(7, snapshot.getCount());
+        assertEquals(1119, snapshot.getSum());
+        assertEquals(1000, snapshot.getMax());
+        assertEquals(1119 / 7.0, snapshot.getMean(), 1e-9);
+        // 5, 6 and 7 are in the bucket for 4 to 7
+        assertEquals(3, snapshot.getBuckets()[3]);
+        assertEquals(7, snapshot.getP50());
+        // percentiles are never reported higher than the max
+        assertEquals(1000, snapshot.getP99());
+        assertEquals(0, stats.getLatency(Phase.RESULTS).getCount());
+        assertEquals(0, stats.getLatency(Phase.RESULTS).getP50());
+    }
+
+    @Test
+    public void testRecording() {
+        AMStats stats = new AMStats();
+        stats.recordClassification(10, 4);
+        stats.recordClassification(20, 8);
+        stats.partitionFilled(50, 3);
+        stats.productComputed(70, 12);
+        stats.heterogeneousPruned(5);
+        stats.heterogeneousPruned(1);
+
+        assertEquals(2, stats.getClassifications());
+        assertEquals(30, stats.getSubcontexts().getSum());
+        assertEquals(8, stats.getSupracontexts().getMax());
+        assertEquals(12, stats.getProductSizes().getMax());
+        assertEquals(6, stats.getHeterogeneousPrunes());
+        Map<String, Snapshot> latencies = stats.getPhaseLatencies();
+        assertEquals(Phase.values().length, latencies.size());
+        assertEquals(1, latencies.get("partition_fill").getCount());
+        assertEquals(70, latencies.get("product").getSum());
+
+        stats.reset();
+        assertEquals(0, stats.getClassifications());
+        assertEquals(0, stats.getHeterogeneousPrunes());
+        assertEquals(0, stats.getLatency(Phase.PRODUCT).getCount());
+    }
+
+    @Test
+    public void testFillPhase() {
+        assertEquals(Phase.BASIC_FILL, Phase.fill(Engine.BASIC));
+        assertEquals(Phase.DISTRIBUTED_FILL, Phase.fill(Engine.DISTRIBUTED));
+        assertEquals(Phase.JOHNSEN_JOHANSSON_FILL, Phase.fill(Engine.JOHNSEN_JOHANSSON));
+    }
+}
@@ -0,0 +1,50 @@
+package weka.classifiers.lazy.AM;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class LongKeyedMapTest {
+
+	@Test
+	public void testPutAndGet() {
+		LongKeyedMap<String> map = new LongKeyedMap<>();
+		assertNull(map.get(0));
+		map.put(0, "zero");
+		map.put(-1, "minus one");
+		map.put(1L << 63, "high");
+		assertEquals("zero", map.get(0));
+		assertEquals("minus one", map.get(-1));
+		assertEquals("high", map.get(1L << 63));
+		assertNull(map.get(1));
+		assertEquals(3, map.size());
+
+		map.put(0, "replaced");
+		assertEquals("replaced", map.get(0));
+		assertEquals(3, map.size());
+	}
+
+	@Test
+	public void testGrowth() {
+		LongKeyedMap<Long> map = new LongKeyedMap<>();
+		// keys differing only in their high bits must not all collide
+		for (long i = 0; i < 10_000; i++) {
+			map.put(i << 40, i);
+		}
+		assertEquals(10_000, map.size());
+		for (long i = 0; i < 10_000; i++) {
+			assertEquals(Long.valueOf(i), map.get(i << 40));
+		}
+
+		Map<Long, Long> entries = new HashMap<>();
+		map.forEach(entries::put);
+		assertEquals(10_000, entries.size());
+
+		map.clear();
+		assertEquals(0, map.size());
+		assertNull(map.get(0));
+	}
+}
@@ -0,0 +1,99 @@
+package weka.classifiers.lazy.AM;
+
+import org.junit.Before;
+import org.junit.Test;
+import weka.classifiers.lazy.AM.data.AMResults;
+import weka.classifiers.lazy.AnalogicalModeling;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import static org.junit.Assert.*;
+
+public class ResultsCacheTest {
+    private Instances data;
+    private AMResults[] results;
+
+    @Before
+    public void setUp() throws Exception {
+        data = TestUtils.getDataSet(TestUtils.CHAPTER_3_DATA);
+        AnalogicalModeling am = new AnalogicalModeling();
+        am.buildClassifier(data);
+        results = new AMResults[3];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = am.classifyWithResults(data.get(i));
+        }
+    }
+
+    @Test
+    public void testHitsAndMisses() {
+        ResultsCache cache = new ResultsCache(10, 0, CacheEvictionPolicy.LRU);
+        assertNull(cache.get(data.get(0)));
+        cache.put(data.get(0), results[0], cache.getGeneration());
+
+        Instance sameFeatures = (Instance) data.get(0).copy();
+        sameFeatures.setClassValue(1 - sameFeatures.classValue());
+        AMResults cached = cache.get(sameFeatures);
+        assertNotNull(cached);
+        assertSame("Cached results are rebound to the new test item", sameFeatures, cached.getClassifiedEx());
+        assertEquals(results[0].getClassPointers(), cached.getClassPointers());
+
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.size());
+        assertEquals(ResultsCache.weigh(results[0]), cache.getTotalWeight());
+    }
+
+    @Test
+    public void testLruEviction() {
+        ResultsCache cache = new ResultsCache(2, 0, CacheEvictionPolicy.LRU);
+        cache.put(data.get(0), results[0], cache.getGeneration());
+        cache.put(data.get(1), results[1], cache.getGeneration());
+        // using item 0 makes item 1 the least recently used
+        assertNotNull(cache.get(data.get(0)));
+        cache.put(data.get(2), results[2], cache.getGeneration());
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get(data.get(0)));
+        assertNull(cache.get(data.get(1)));
+        assertNotNull(cache.get(data.get(2)));
+    }
+
+    @Test
+    public void testFifoEviction() {
+        ResultsCache cache = new ResultsCache(2, 0, CacheEvictionPolicy.FIFO);
+        cache.put(data.get(0), results[0], cache.getGeneration());
+        cache.put(data.get(1), results[1], cache.getGeneration());
+        assertNotNull(cache.get(data.get(0)));
+        cache.put(data.get(2), results[2], cache.getGeneration());
+
+        assertEquals(2, cache.size());
+        assertNull(cache.get(data.get(0)));
+        assertNotNull(cache.get(data.get(1)));
+        assertNotNull(cache.get(data.get(2)));
+    }
+
+    @Test
+    public void testWeightLimit() {
+        long weight = ResultsCache.weigh(results[0]);
+        ResultsCache cache = new ResultsCache(0, weight, CacheEvictionPolicy.LRU);
+        cache.put(data.get(0), results[0], cache.getGeneration());
+        assertEquals(1, cache.size());
+
+        cache = new ResultsCache(0, weight - 1, CacheEvictionPolicy.LRU);
+        cache.put(data.get(0), results[0], cache.getGeneration());
+        assertEquals("Results heavier than the limit are not stored", 0, cache.size());
+    }
+
+    @Test
+    public void testStaleResultsAreNotStored() {
+        ResultsCache cache = new ResultsCache(10, 0, CacheEvictionPolicy.LRU);
+        long generation = cache.getGeneration();
+        cache.put(data.get(0), results[0], generation);
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getTotalWeight());
+
+        cache.put(data.get(1), results[1], generation);
+        assertEquals("Results computed before clearing are ignored", 0, cache.size());
+    }
+}
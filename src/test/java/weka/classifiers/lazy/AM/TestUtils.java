@@ -268,8 +268,7 @@ public class TestUtils {
         Instance test = train.remove(index);
 
         am.buildClassifier(train);
-        am.distributionForInstance(test);
-        return am.getResults();
+        return am.classifyWithResults(test);
     }
 
     /**
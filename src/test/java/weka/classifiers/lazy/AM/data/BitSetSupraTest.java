@@ -0,0 +1,102 @@
+package weka.classifiers.lazy.AM.data;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import weka.classifiers.lazy.AM.TestUtils;
+import weka.classifiers.lazy.AM.label.IntLabel;
+import weka.classifiers.lazy.AM.label.IntLabeler;
+import weka.classifiers.lazy.AM.label.Labeler;
+import weka.classifiers.lazy.AM.label.MissingDataCompare;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class BitSetSupraTest {
+    private SubcontextList subList;
+    private List<Subcontext> subs;
+
+    @Before
+    public void setUp() throws Exception {
+        Instances train = TestUtils.getDataSet(TestUtils.FINNVERB);
+        Instance test = train.remove(0);
+        Labeler labeler = new IntLabeler(test, false, MissingDataCompare.VARIABLE);
+        subList = new SubcontextList(labeler, train, false);
+        subs = new ArrayList<>();
+        subList.forEach(subs::add);
+    }
+
+    /**
+     * Intersections of random sparse and dense supracontexts should be the same as intersections of the hash sets of
+     * their subcontexts.
+     */
+    @Test
+    public void testIntersect() {
+        Random random = new Random(0);
+        for (int i = 0; i < 100; i++) {
+            Set<Subcontext> data1 = randomSubset(random, random.nextDouble());
+            Set<Subcontext> data2 = randomSubset(random, random.nextDouble());
+            BitSetSupra supra1 = new BitSetSupra(subList, data1, BigInteger.ONE);
+            BitSetSupra supra2 = new BitSetSupra(subList, data2, BigInteger.ONE);
+            Set<Subcontext> expected = new HashSet<>(data1);
+            expected.retainAll(data2);
+
+            BitSetSupra actual = supra1.intersect(supra2);
+            if (expected.isEmpty()) {
+                assertNull(actual);
+                continue;
+            }
+            assertEquals(expected, actual.getData());
+            assertEquals(expected.size(), actual.getData().size());
+            assertEquals(new BasicSupra(expected, BigInteger.ONE), actual);
+            assertEquals(new BitSetSupra(subList, expected, BigInteger.ONE), actual);
+            assertEquals(new BasicSupra(expected, BigInteger.ONE).hashCode(), actual.hashCode());
+            assertEquals(actual, supra2.intersect(supra1));
+        }
+    }
+
+    private Set<Subcontext> randomSubset(Random random, double density) {
+        Set<Subcontext> subset = new HashSet<>();
+        for (Subcontext sub : subs) {
+            if (random.nextDouble() < density) subset.add(sub);
+        }
+        return subset;
+    }
+
+    @Test
+    public void testEqualsOtherSupracontexts() {
+        Set<Subcontext> data = new HashSet<>(subs.subList(0, 3));
+        BitSetSupra supra = new BitSetSupra(subList, data, BigInteger.TEN);
+        assertEquals(new BasicSupra(data, BigInteger.ONE), supra);
+        assertEquals(supra, new BasicSupra(data, BigInteger.ONE));
+        assertEquals(new ClassifiedSupra(data, BigInteger.ONE), new ClassifiedSupra(supra));
+        assertNotEquals(new BasicSupra(new HashSet<>(subs.subList(0, 2)), BigInteger.ONE), supra);
+        assertTrue(TestUtils.supraDeepEquals(supra.copy(), supra));
+    }
+
+    @Test
+    public void testOnlyAcceptsSubcontextsOfTheList() {
+        BitSetSupra supra = new BitSetSupra(subList);
+        assertThrows(IllegalArgumentException.class, () -> supra.add(new Subcontext(new IntLabel(0b0, 1), "foo")));
+    }
+
+    @Test
+    public void testAdd() {
+        BitSetSupra supra = new BitSetSupra(subList);
+        BitSetSupra copy = supra.copy();
+        for (Subcontext sub : subs) {
+            supra.add(sub);
+            assertTrue(supra.getData().contains(sub));
+        }
+        assertEquals(new HashSet<>(subs), supra.getData());
+        assertTrue("the copy is not changed", copy.isEmpty());
+    }
+}
@@ -0,0 +1,73 @@
+package weka.classifiers.lazy.AM.data;
+
+import org.junit.Test;
+import weka.classifiers.lazy.AM.TestUtils;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import static org.junit.Assert.*;
+
+public class ExemplarStoreTest {
+
+    @Test
+    public void testColumnsMatchInstances() throws Exception {
+        Instances data = TestUtils.getDataSet(TestUtils.FINNVERB);
+        ExemplarStore store = new ExemplarStore(new Instances(data, 0, 10));
+        // add after construction to make sure the columns grow correctly
+        for (int i = 10; i < data.numInstances(); i++) {
+            store.add(data.get(i));
+        }
+
+        assertEquals(data.numInstances(), store.size());
+        assertEquals(data.numAttributes(), store.numAttributes());
+        assertEquals(data.classIndex(), store.classIndex());
+        for (int i = 10; i < data.numInstances(); i++) {
+            assertSame(data.get(i), store.getInstance(i));
+        }
+        for (int i = 0; i < data.numInstances(); i++) {
+            Instance instance = store.getInstance(i);
+            assertEquals((int) instance.classValue(), store.classValue(i));
+            for (int att = 0; att < data.numAttributes(); att++) {
+                assertEquals(instance.isMissing(att), store.isMissing(att, i));
+                int expected = instance.isMissing(att) ? ExemplarStore.MISSING : (int) instance.value(att);
+                assertEquals("attribute " + att + " of exemplar " + i, expected, store.value(att, i));
+                assertEquals(instance.isMissing(att), store.getMissing(att).get(i));
+                if (!instance.isMissing(att)) assertTrue(store.getExemplarsWithValue(att, expected).get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testValueIndex() throws Exception {
+        Instances data = TestUtils.getDataSet(TestUtils.SOYBEAN);
+        ExemplarStore store = new ExemplarStore(data);
+        for (int att = 0; att < data.numAttributes(); att++) {
+            int total = store.getMissing(att).cardinality();
+            for (int value = 0; value < data.attribute(att).numValues(); value++) {
+                total += store.getExemplarsWithValue(att, value).cardinality();
+            }
+            // every exemplar is indexed exactly once per attribute
+            assertEquals(store.size(), total);
+        }
+        assertTrue(store.getExemplarsWithValue(0, 1000).isEmpty());
+    }
+
+    @Test
+    public void testEmptyStore() throws Exception {
+        Instances data = TestUtils.getDataSet(TestUtils.CHAPTER_3_DATA);
+        ExemplarStore store = new ExemplarStore(new Instances(data, 0));
+        assertEquals(0, store.size());
+        store.add(data.get(0));
+        assertEquals(1, store.size());
+        assertSame(data.get(0), store.getInstance(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingClassRejected() throws Exception {
+        Instances data = TestUtils.getDataSet(TestUtils.CHAPTER_3_DATA);
+        ExemplarStore store = new ExemplarStore(new Instances(data, 0));
+        Instance instance = data.get(0);
+        instance.setClassMissing();
+        store.add(instance);
+    }
+}
@@ -0,0 +1,62 @@
+package weka.classifiers.lazy.AM.data;
+
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SubcontextIdSetTest {
+    private static final int UNIVERSE = 200;
+
+    @Test
+    public void testMatchesBitSet() {
+        Random random = new Random(0);
+        for (int i = 0; i < 200; i++) {
+            BitSet expected1 = new BitSet();
+            BitSet expected2 = new BitSet();
+            SubcontextIdSet set1 = randomSet(random, expected1);
+            SubcontextIdSet set2 = randomSet(random, expected2);
+            assertMatches(expected1, set1);
+
+            SubcontextIdSet intersection = set1.intersect(set2);
+            expected1.and(expected2);
+            assertMatches(expected1, intersection);
+            assertEquals(intersection, set2.intersect(set1));
+        }
+    }
+
+    private static SubcontextIdSet randomSet(Random random, BitSet expected) {
+        double density = random.nextDouble();
+        SubcontextIdSet set = SubcontextIdSet.empty(UNIVERSE);
+        for (int id = UNIVERSE - 1; id >= 0; id--) {
+            if (random.nextDouble() < density) {
+                set = set.with(id);
+                expected.set(id);
+            }
+        }
+        return set;
+    }
+
+    private static void assertMatches(BitSet expected, SubcontextIdSet actual) {
+        assertEquals(expected.cardinality(), actual.size());
+        assertEquals("hash code does not depend on the representation", expected.hashCode(), actual.hashCode());
+        PrimitiveIterator.OfInt it = actual.iterator();
+        for (int id = expected.nextSetBit(0); id >= 0; id = expected.nextSetBit(id + 1)) {
+            assertTrue(actual.contains(id));
+            assertEquals(id, it.nextInt());
+        }
+        assertFalse(it.hasNext());
+    }
+
+    @Test
+    public void testWith() {
+        SubcontextIdSet set = SubcontextIdSet.empty(UNIVERSE).with(5);
+        assertSame("already contained", set, set.with(5));
+        assertFalse(set.contains(6));
+        assertThrows(IllegalArgumentException.class, () -> set.with(UNIVERSE));
+        assertThrows(IllegalArgumentException.class, () -> set.intersect(SubcontextIdSet.empty(UNIVERSE + 1)));
+    }
+}
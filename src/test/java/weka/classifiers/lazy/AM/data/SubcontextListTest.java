@@ -3,15 +3,28 @@ package weka.classifiers.lazy.AM.data;
 import org.junit.Test;
 
 import weka.classifiers.lazy.AM.TestUtils;
+import weka.classifiers.lazy.AM.label.BitSetLabeler;
 import weka.classifiers.lazy.AM.label.IntLabel;
 import weka.classifiers.lazy.AM.label.IntLabeler;
 import weka.classifiers.lazy.AM.label.Labeler;
 import weka.classifiers.lazy.AM.label.MissingDataCompare;
+import weka.classifiers.lazy.AM.label.MultiWordLabeler;
+import weka.classifiers.lazy.AM.lattice.Lattice;
+import weka.classifiers.lazy.AM.lattice.LatticePlan.Engine;
+import weka.classifiers.lazy.AM.lattice.LatticePlanner;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
 import weka.core.Instance;
 import weka.core.Instances;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
 
 import static org.junit.Assert.*;
 
@@ -65,6 +78,217 @@ public class SubcontextListTest {
         assertFalse("Should not contain 000 sub when ignoring full matches", getSubList(subs).contains(allMatchingSub));
     }
 
+    @Test
+    public void testExemplarStoreConstructor() throws Exception {
+        Instances train = TestUtils.getDataSet(TestUtils.FINNVERB);
+        Instance test = train.remove(0);
+        ExemplarStore store = new ExemplarStore(train);
+
+        for (MissingDataCompare mdc : MissingDataCompare.values()) {
+            Labeler labeler = new IntLabeler(test, false, mdc);
+            for (boolean ignoreFullMatches : new boolean[]{false, true}) {
+                SubcontextList expected = new SubcontextList(labeler, train, ignoreFullMatches);
+                SubcontextList actual = new SubcontextList(labeler, store, ignoreFullMatches);
+                assertEquals(mdc + " subcontexts", expected, actual);
+                assertEquals(mdc + " exemplar count", expected.getConsideredExemplarCount(),
+                        actual.getConsideredExemplarCount());
+                for (Subcontext sub : actual) {
+                    assertTrue("outcome of " + sub, getSubList(expected).stream().anyMatch(
+                            s -> s.equals(sub) && s.getOutcome() == sub.getOutcome()));
+                }
+            }
+        }
+    }
+
+    /**
+     * Labels too wide for their bits to be used as keys should be grouped the same way.
+     */
+    @Test
+    public void testWideLabels() throws Exception {
+        Instances train = TestUtils.getDataSet(TestUtils.AUDIOLOGY);
+        Instance test = train.remove(0);
+        SubcontextList wide = new SubcontextList(new MultiWordLabeler(test, false, MissingDataCompare.VARIABLE), train,
+            false);
+        SubcontextList bitSet = new SubcontextList(new BitSetLabeler(test, false, MissingDataCompare.VARIABLE), train,
+            false);
+        assertEquals(bitSet.size(), wide.size());
+        Set<Set<Instance>> expected = new HashSet<>();
+        for (Subcontext sub : bitSet) {
+            expected.add(new HashSet<>(sub.getExemplars()));
+        }
+        for (Subcontext sub : wide) {
+            assertTrue(expected.contains(new HashSet<>(sub.getExemplars())));
+        }
+    }
+
+    @Test
+    public void testSubcontextsCannotBeModified() throws Exception {
+        Instances train = TestUtils.getDataSet(TestUtils.CHAPTER_3_DATA);
+        Instance test = train.remove(0);
+        SubcontextList subs = new SubcontextList(new IntLabeler(test, false, MissingDataCompare.MATCH), train, false);
+        Subcontext sub = subs.iterator().next();
+        try {
+            sub.add(train.get(0));
+            fail("Should not be able to add exemplars to a subcontext in a list");
+        } catch (UnsupportedOperationException e) {
+            // expected; the outcome should not have been changed
+        }
+        assertEquals(getSubList(new SubcontextList(subs.getLabeler(), train, false)), getSubList(subs));
+    }
+
+    @Test
+    public void testReorder() throws Exception {
+        Instances train = TestUtils.getDataSet(TestUtils.FINNVERB);
+        Instance test = train.remove(0);
+        Labeler labeler = new IntLabeler(test, false, MissingDataCompare.VARIABLE);
+        SubcontextList natural = new SubcontextList(labeler, train, false);
+        for (SubcontextOrdering ordering : SubcontextOrdering.values()) {
+            SubcontextList subs = new SubcontextList(labeler, train, false);
+            subs.reorder(ordering, new Random(0));
+            assertEquals(ordering + " keeps the same subcontexts", natural, subs);
+            List<Subcontext> ordered = getSubList(subs);
+            for (int i = 1; i < ordered.size(); i++) {
+                int previousMatches = ordered.get(i - 1).getLabel().numMatches();
+                int matches = ordered.get(i).getLabel().numMatches();
+                if (ordering == SubcontextOrdering.MOST_MISMATCHES) assertTrue(previousMatches <= matches);
+                if (ordering == SubcontextOrdering.FEWEST_MISMATCHES) assertTrue(previousMatches >= matches);
+                if (ordering == SubcontextOrdering.RARE_OUTCOMES) {
+                    assertTrue("nondeterministic first",
+                        ordered.get(i - 1).isNondeterministic() || !ordered.get(i).isNondeterministic());
+                }
+            }
+        }
+        assertEquals(getSubList(natural), getSubList(new SubcontextList(labeler, train, false)));
+    }
+
+    @Test
+    public void testIds() throws Exception {
+        Instances train = TestUtils.getDataSet(TestUtils.FINNVERB);
+        Instance test = train.remove(0);
+        Labeler labeler = new IntLabeler(test, false, MissingDataCompare.VARIABLE);
+        SubcontextList subs = new SubcontextList(labeler, train, false);
+        List<Subcontext> natural = getSubList(subs);
+        for (int i = 0; i < natural.size(); i++) {
+            assertEquals("IDs are dense and in the original order", i, natural.get(i).getId());
+        }
+        subs.reorder(SubcontextOrdering.RANDOM, new Random(0));
+        for (Subcontext sub : subs) {
+            assertSame("reordering does not change IDs", sub, natural.get(sub.getId()));
+        }
+        for (Subcontext sub : subs.pruneHeterogeneous()) {
+            assertSame("pruning does not change IDs", sub, natural.get(sub.getId()));
+        }
+        assertEquals(-1, new Subcontext(new IntLabel(0b0, 1), "foo").getId());
+    }
+
+    @Test
+    public void testSubcontextEquality() throws Exception {
+        Instances train = TestUtils.getDataSet(TestUtils.FINNVERB);
+        Instance test = train.remove(0);
+        Labeler labeler = new IntLabeler(test, false, MissingDataCompare.VARIABLE);
+        List<Subcontext> subs = getSubList(new SubcontextList(labeler, train, false));
+        List<Subcontext> others = getSubList(new SubcontextList(labeler, train, false));
+        for (int i = 0; i < subs.size(); i++) {
+            Subcontext sub = subs.get(i);
+            assertEquals("equal by label and ID", sub, others.get(i));
+            assertEquals(sub.hashCode(), others.get(i).hashCode());
+            assertNotEquals(sub, others.get((i + 1) % subs.size()));
+
+            Subcontext copy = new Subcontext(sub.getLabel(), sub.getDisplayLabel());
+            for (Instance exemplar : sub.getExemplars()) {
+                copy.add(exemplar);
+            }
+            assertEquals("equal to a subcontext with the same instances", sub, copy);
+            assertEquals(sub.hashCode(), copy.hashCode());
+            assertEquals(sub.getOutcome(), copy.getOutcome());
+        }
+    }
+
+    /**
+     * Pruning should not change the homogeneous supracontexts or their counts.
+     */
+    @Test
+    public void testPruneHeterogeneous() throws Exception {
+        Instances data = TestUtils.getDataSet(TestUtils.FINNVERB);
+        int numPruned = 0;
+        for (int i = 0; i < 20; i++) {
+            Instances train = new Instances(data);
+            Instance test = train.remove(i);
+            SubcontextList subs = new SubcontextList(new IntLabeler(test, false, MissingDataCompare.VARIABLE), train,
+                false);
+            SubcontextList pruned = subs.pruneHeterogeneous();
+            numPruned += subs.size() - pruned.size();
+            assertEquals(subs.getConsideredExemplarCount(), pruned.getConsideredExemplarCount());
+            SubcontextList bitSetSubs = new SubcontextList(new BitSetLabeler(test, false, MissingDataCompare.VARIABLE),
+                train, false);
+            assertEquals("labels without int bits are pruned the same way", pruned.size(),
+                bitSetSubs.pruneHeterogeneous().size());
+
+            Lattice expected = new LatticePlanner().createLattice(Engine.BASIC);
+            expected.fill(subs);
+            Lattice actual = new LatticePlanner().createLattice(Engine.BASIC);
+            actual.fill(pruned);
+            assertEquals(expected.getSupracontexts(), actual.getSupracontexts());
+            Map<Supracontext, BigInteger> expectedCounts = new HashMap<>();
+            for (Supracontext supra : expected.getSupracontexts()) {
+                expectedCounts.put(supra, supra.getCount());
+            }
+            for (Supracontext supra : actual.getSupracontexts()) {
+                assertEquals(expectedCounts.get(supra), supra.getCount());
+            }
+        }
+        assertTrue("Some subcontexts should be pruned", numPruned > 0);
+    }
+
+    /**
+     * Only subcontexts whose ancestors conflict among themselves are pruned; a subcontext which conflicts with its
+     * ancestors is kept, since the supracontexts containing it would hold only its ancestors without it.
+     */
+    @Test
+    public void testPruneOnlyConflictingAncestors() throws Exception {
+        ArrayList<Attribute> atts = new ArrayList<>();
+        for (String name : List.of("a", "b", "c", "d")) {
+            atts.add(new Attribute(name, List.of("0", "1")));
+        }
+        atts.add(new Attribute("class", List.of("x", "y")));
+        Instances train = new Instances("TestInstances", atts, 0);
+        train.setClassIndex(train.numAttributes() - 1);
+        double[][] data = new double[][]{
+            new double[]{0, 0, 0, 1, 0}, new double[]{0, 0, 1, 0, 0},
+            // conflicts with its only ancestor 0001
+            new double[]{0, 0, 1, 1, 1},
+            // ancestors 0001, 0010 and 0011 conflict
+            new double[]{0, 1, 1, 1, 0},
+            new double[]{1, 0, 0, 0, 0},
+            // nondeterministic, with the single ancestor 1000
+            new double[]{1, 1, 0, 0, 0}, new double[]{1, 1, 0, 0, 1},
+            // ancestors 0001 and 1000 agree
+            new double[]{1, 0, 0, 1, 1}
+        };
+        for (double[] datum : data) {
+            train.add(new DenseInstance(datum.length, datum));
+        }
+        Instance test = new DenseInstance(5, new double[]{0, 0, 0, 0, 0});
+        test.setDataset(train);
+
+        for (Labeler labeler : List.of(new IntLabeler(test, false, MissingDataCompare.VARIABLE),
+            new BitSetLabeler(test, false, MissingDataCompare.VARIABLE))) {
+            SubcontextList subs = new SubcontextList(labeler, train, false);
+            SubcontextList pruned = subs.pruneHeterogeneous();
+            List<Subcontext> expected = getSubList(subs);
+            expected.removeIf(sub -> sub.getExemplars().contains(train.get(3)));
+            assertEquals(subs.size() - 1, expected.size());
+            assertEquals(expected, getSubList(pruned));
+
+            // the pruned list shares its subcontexts, and filling a lattice must not change them
+            Lattice full = new LatticePlanner().createLattice(Engine.BASIC);
+            full.fill(subs);
+            Lattice prunedLattice = new LatticePlanner().createLattice(Engine.BASIC);
+            prunedLattice.fill(pruned);
+            assertEquals(full.getSupracontexts(), prunedLattice.getSupracontexts());
+        }
+    }
+
     private List<Subcontext> getSubList(final SubcontextList subcontextList) {
 		return new ArrayList<>() {
 			{
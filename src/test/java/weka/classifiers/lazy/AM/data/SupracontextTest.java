@@ -64,6 +64,31 @@ public class SupracontextTest {
         assertEquals(testSupra.getCount(), BigInteger.valueOf(42));
     }
 
+    @Test
+    public void testLongCount() {
+        Supracontext testSupra = supraFactory.getSupra();
+        assertEquals(1, testSupra.getLongCount());
+        testSupra.setCount(42L);
+        assertEquals(42, testSupra.getLongCount());
+        assertEquals(BigInteger.valueOf(42), testSupra.getCount());
+
+        BigInteger big = BigInteger.valueOf(Long.MAX_VALUE).add(BigInteger.ONE);
+        testSupra.setCount(big);
+        assertEquals("count does not fit in a long", -1, testSupra.getLongCount());
+        assertEquals(big, testSupra.getCount());
+
+        testSupra.setCount(BigInteger.valueOf(Long.MAX_VALUE));
+        assertEquals(Long.MAX_VALUE, testSupra.getLongCount());
+    }
+
+    @Test
+    public void testSetLongCountThrowsErrorWhenArgIsLessThanZero() {
+        Supracontext testSupra = supraFactory.getSupra();
+        exception.expect(IllegalArgumentException.class);
+        exception.expectMessage(new StringContains("count must not be less than zero"));
+        testSupra.setCount(-1L);
+    }
+
     @Test
     public void testSetCountThrowsErrorWhenArgIsNull() {
         Supracontext testSupra = supraFactory.getSupra();
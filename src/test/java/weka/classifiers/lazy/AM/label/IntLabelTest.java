@@ -6,9 +6,14 @@ import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
 import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 public class IntLabelTest {
@@ -49,4 +54,39 @@ public class IntLabelTest {
         IntLabel thirdLabel = new IntLabel(new BitSetLabel(bitset, 6));
         assertEquals(new IntLabel(0b100001, 6), thirdLabel);
     }
+
+    @Test
+    public void testForEachDescendant() {
+        IntLabel label = new IntLabel(0b0101001111, 10);
+        Set<Label> expected = new HashSet<>();
+        Iterator<Label> si = label.descendantIterator();
+        while (si.hasNext()) expected.add(si.next());
+
+        Set<Label> actual = new HashSet<>();
+        label.forEachDescendant(bits -> assertTrue(actual.add(new IntLabel(bits, label.getCardinality()))));
+        assertEquals(expected, actual);
+
+        // the highest bit of a full-width label can be flipped too
+        IntLabel wide = new IntLabel(~(1 << 31 | 1), IntLabel.MAX_CARDINALITY);
+        Set<Integer> wideBits = new HashSet<>();
+        wide.forEachDescendant(wideBits::add);
+        assertEquals(Set.of(~1, ~(1 << 31), -1), wideBits);
+    }
+
+    @Test
+    public void testCanonicalLabels() {
+        IntLabel label = IntLabel.of(0b101, 3);
+        assertSame(label, IntLabel.of(0b101, 3));
+        assertEquals(new IntLabel(0b101, 3), label);
+        assertSame(label, label.intersect(IntLabel.of(0b001, 3)));
+        assertSame(IntLabel.of(0b001, 3), label.union(IntLabel.of(0b011, 3)));
+        assertNotSame(label, IntLabel.of(0b101, 4));
+
+        // too wide to be canonicalized, but still equal
+        int wide = IntLabel.MAX_CANONICAL_CARDINALITY + 1;
+        assertNotSame(IntLabel.of(0b101, wide), IntLabel.of(0b101, wide));
+        assertEquals(IntLabel.of(0b101, wide), IntLabel.of(0b101, wide));
+        // bits outside of the cardinality are not looked up in the table
+        assertEquals(-1, IntLabel.of(-1, 3).labelBits());
+    }
 }
@@ -0,0 +1,83 @@
+package weka.classifiers.lazy.AM.label;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import weka.classifiers.lazy.AM.TestUtils;
+import weka.core.Instances;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class LabelPartitioningTest {
+	@Rule
+	public final ExpectedException exception = ExpectedException.none();
+
+	/**
+	 * The labeler's own partitioning should give the same partitions as {@link Labeler#partition}, for every kind of
+	 * label.
+	 */
+	@Test
+	public void testLabelerPartitioning() throws Exception {
+		for (String dataSet : new String[]{TestUtils.SOYBEAN, TestUtils.AUDIOLOGY}) {
+			Instances data = TestUtils.getDataSet(dataSet);
+			List<Labeler> labelers = new ArrayList<>();
+			labelers.add(new MultiWordLabeler(data.get(0), false, MissingDataCompare.VARIABLE));
+			labelers.add(new BitSetLabeler(data.get(0), false, MissingDataCompare.VARIABLE));
+			if (data.numAttributes() - 1 <= LongLabel.MAX_CARDINALITY)
+				labelers.add(new LongLabeler(data.get(0), false, MissingDataCompare.VARIABLE));
+			for (Labeler labeler : labelers) {
+				LabelPartitioning partitioning = labeler.getPartitioning();
+				assertEquals(labeler.numPartitions(), partitioning.numPartitions());
+				for (int i = 1; i < 10; i++) {
+					Label label = labeler.label(data.get(i));
+					for (int p = 0; p < partitioning.numPartitions(); p++) {
+						assertEquals(labeler.getClass().getSimpleName(), labeler.partition(label, p),
+								partitioning.partition(label, p));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testNonContiguousPartition() {
+		LabelPartitioning partitioning = new LabelPartitioning(6, new int[][]{{5, 0, 2}, {1, 3, 4}});
+		assertEquals(3, partitioning.getMaxPartitionSize());
+		assertArrayEquals(new int[]{5, 0, 2}, partitioning.getPositions(0));
+		Label label = new IntLabel(0b110001, 6);
+		assertEquals(new IntLabel(0b011, 3), partitioning.partition(label, 0));
+		assertEquals(new IntLabel(0b100, 3), partitioning.partition(label, 1));
+		assertEquals(partitioning.partition(label, 0), partitioning.partition(new LongLabel(0b110001, 6), 0));
+		assertEquals(partitioning.partition(label, 1), partitioning.partition(new MultiWordLabel(label), 1));
+	}
+
+	@Test
+	public void testBalanced() {
+		assertEquals(LabelPartitioning.contiguous(7, 3, 2, 2), LabelPartitioning.balanced(7, 3));
+	}
+
+	@Test
+	public void testMissingPosition() {
+		exception.expect(IllegalArgumentException.class);
+		exception.expectMessage("cover 3 of 4");
+		new LabelPartitioning(4, new int[][]{{0, 1}, {3}});
+	}
+
+	@Test
+	public void testRepeatedPosition() {
+		exception.expect(IllegalArgumentException.class);
+		exception.expectMessage("more than one partition");
+		new LabelPartitioning(4, new int[][]{{0, 1}, {1, 2, 3}});
+	}
+
+	@Test
+	public void testEmptyPartition() {
+		exception.expect(IllegalArgumentException.class);
+		exception.expectMessage("has 0 positions");
+		new LabelPartitioning(2, new int[][]{{0, 1}, {}});
+	}
+}
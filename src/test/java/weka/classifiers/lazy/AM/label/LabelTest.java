@@ -49,6 +49,9 @@ public class LabelTest {
 				},
 				new Object[]{
 						"BitSetLabel", new BitSetLabelerFactory()
+				},
+				new Object[]{
+						"MultiWordLabel", new MultiWordLabelerFactory()
 				});
 	}
 
@@ -5,6 +5,7 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
 import org.junit.runners.Parameterized.Parameter;
 import weka.classifiers.lazy.AM.TestUtils;
+import weka.classifiers.lazy.AM.data.ExemplarStore;
 import weka.classifiers.lazy.AM.label.Labeler.Partition;
 import weka.classifiers.lazy.AM.label.LabelerFactory.IntLabelerFactory;
 import weka.core.Instance;
@@ -20,6 +21,7 @@ import static weka.classifiers.lazy.AM.TestUtils.mockInstance;
 import static weka.classifiers.lazy.AM.TestUtils.sixCardinalityData;
 import static weka.classifiers.lazy.AM.label.LabelerFactory.BitSetLabelerFactory;
 import static weka.classifiers.lazy.AM.label.LabelerFactory.LongLabelerFactory;
+import static weka.classifiers.lazy.AM.label.LabelerFactory.MultiWordLabelerFactory;
 import static weka.classifiers.lazy.AM.label.MissingDataCompare.MATCH;
 
 /**
@@ -49,6 +51,9 @@ public class LabelerTest {
 				},
 				new Object[]{
 						"BitSetLabeler", new BitSetLabelerFactory()
+				},
+				new Object[]{
+						"MultiWordLabeler", new MultiWordLabelerFactory()
 				});
 	}
 
@@ -62,6 +67,50 @@ public class LabelerTest {
         assertEquals(labeler.getTestInstance(), instance);
     }
 
+    @Test
+    public void testLabelFromExemplarStore() throws Exception {
+        Instances data = TestUtils.getDataSet(TestUtils.FINNVERB);
+        Instance test = data.get(0);
+        ExemplarStore store = new ExemplarStore(data);
+        for (MissingDataCompare mdc : MissingDataCompare.values()) {
+            for (boolean ignoreUnknowns : new boolean[]{false, true}) {
+                Labeler labeler = labelerFactory.createLabeler(test, ignoreUnknowns, mdc);
+                for (int i = 0; i < store.size(); i++) {
+                    assertEquals(mdc + " label for instance " + i, labeler.label(data.get(i)), labeler.label(store, i));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testLabelAll() throws Exception {
+        for (String dataSet : new String[]{TestUtils.FINNVERB, TestUtils.SOYBEAN}) {
+            Instances data = TestUtils.getDataSet(dataSet);
+            ExemplarStore store = new ExemplarStore(data);
+            // also compare with a test item that is missing values, if there is one
+            Instance withMissing = data.stream().filter(Instance::hasMissingValue).findFirst().orElse(data.get(0));
+            for (Instance test : new Instance[]{data.get(0), withMissing}) {
+                for (MissingDataCompare mdc : MissingDataCompare.values()) {
+                    for (boolean ignoreUnknowns : new boolean[]{false, true}) {
+                        int maxCardinality = labelerFactory.getMaximumCardinality();
+                        if (maxCardinality != -1 && Labeler.getCardinality(test, ignoreUnknowns) > maxCardinality) {
+                            continue;
+                        }
+                        assertLabelAll(store, labelerFactory.createLabeler(test, ignoreUnknowns, mdc), dataSet + " " + mdc);
+                    }
+                }
+            }
+        }
+    }
+
+    private void assertLabelAll(ExemplarStore store, Labeler labeler, String message) {
+        Label[] labels = labeler.labelAll(store);
+        assertEquals(store.size(), labels.length);
+        for (int i = 0; i < store.size(); i++) {
+            assertEquals(message + " label for instance " + i, labeler.label(store.getInstance(i)), labels[i]);
+        }
+    }
+
     /**
      * Test the default behavior for {@link Labeler#isIgnored(int)}.
      *
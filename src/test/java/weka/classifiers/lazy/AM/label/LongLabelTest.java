@@ -6,6 +6,9 @@ import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
 import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -59,4 +62,23 @@ public class LongLabelTest {
         LongLabel thirdLabel = new LongLabel(new BitSetLabel(bitset, 33));
         assertEquals(new LongLabel(testLong, 33), thirdLabel);
     }
+
+    @Test
+    public void testForEachDescendant() {
+        // matches only at bits 0, 2 and 32
+        LongLabel label = new LongLabel(~testLong & ((1L << 35) - 1), 35);
+        Set<Label> expected = new HashSet<>();
+        Iterator<Label> si = label.descendantIterator();
+        while (si.hasNext()) expected.add(si.next());
+
+        Set<Label> actual = new HashSet<>();
+        label.forEachDescendant(bits -> assertTrue(actual.add(new LongLabel(bits, label.getCardinality()))));
+        assertEquals(expected, actual);
+
+        // the highest bit of a full-width label can be flipped too
+        LongLabel wide = new LongLabel(~(1L << 63 | 1L), LongLabel.MAX_CARDINALITY);
+        Set<Long> wideBits = new HashSet<>();
+        wide.forEachDescendant(wideBits::add);
+        assertEquals(Set.of(~1L, ~(1L << 63), -1L), wideBits);
+    }
 }
@@ -43,6 +43,9 @@ public class MissingDataCompareTest {
         assertTrue(mc.matches(instances.get(0), instances.get(0), att));
         assertTrue(mc.matches(instances.get(0), instances.get(1), att));
         assertTrue(mc.matches(instances.get(1), instances.get(0), att));
+        assertTrue(mc.matches(true, true));
+        assertTrue(mc.matches(true, false));
+        assertTrue(mc.matches(false, true));
     }
 
     @Test
@@ -51,6 +54,9 @@ public class MissingDataCompareTest {
         assertFalse(mc.matches(instances.get(0), instances.get(0), att));
         assertFalse(mc.matches(instances.get(0), instances.get(1), att));
         assertFalse(mc.matches(instances.get(1), instances.get(0), att));
+        assertFalse(mc.matches(true, true));
+        assertFalse(mc.matches(true, false));
+        assertFalse(mc.matches(false, true));
     }
 
     @Test
@@ -59,6 +65,9 @@ public class MissingDataCompareTest {
         assertTrue(mc.matches(instances.get(0), instances.get(0), att));
         assertFalse(mc.matches(instances.get(0), instances.get(1), att));
         assertFalse(mc.matches(instances.get(1), instances.get(0), att));
+        assertTrue(mc.matches(true, true));
+        assertFalse(mc.matches(true, false));
+        assertFalse(mc.matches(false, true));
     }
 
 }
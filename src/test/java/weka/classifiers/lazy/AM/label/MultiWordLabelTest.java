@@ -0,0 +1,69 @@
+package weka.classifiers.lazy.AM.label;
+
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class MultiWordLabelTest {
+    @Test
+    public void testConstructor() {
+        MultiWordLabel label = new MultiWordLabel(new long[]{0b101, 1}, 100);
+        assertEquals(100, label.getCardinality());
+        assertFalse(label.matches(0));
+        assertTrue(label.matches(1));
+        assertFalse(label.matches(2));
+        assertFalse(label.matches(64));
+        assertEquals(97, label.numMatches());
+
+        // bits above the cardinality are dropped
+        assertEquals(new MultiWordLabel(new long[]{0b1}, 65), new MultiWordLabel(new long[]{0b1, -2L}, 65));
+    }
+
+    @Test
+    public void testCopyConstructor() {
+        BitSet bitset = new BitSet();
+        bitset.set(0);
+        bitset.set(70);
+        MultiWordLabel label = new MultiWordLabel(new BitSetLabel(bitset, 100));
+        assertEquals(new MultiWordLabel(new long[]{1, 1L << 6}, 100), label);
+        assertEquals(label, new MultiWordLabel(label));
+    }
+
+    @Test
+    public void testIntersectAndUnionAcrossWords() {
+        MultiWordLabel first = new MultiWordLabel(new long[]{0b01, 0b01}, 130);
+        MultiWordLabel second = new MultiWordLabel(new long[]{0b10, 0b01, 0b1}, 130);
+        assertEquals(new MultiWordLabel(new long[]{0b11, 0b01, 0b1}, 130), first.intersect(second));
+        assertEquals(new MultiWordLabel(new long[]{0, 0b01}, 130), first.union(second));
+        assertTrue(first.intersect(second).isDescendantOf(first));
+        assertFalse(first.isDescendantOf(second));
+    }
+
+    @Test
+    public void testDescendantsAcrossWords() {
+        // all mismatches except for bits 63, 64 and 65
+        long[] bits = {~(1L << 63), ~0b11L};
+        MultiWordLabel label = new MultiWordLabel(bits, 100);
+        Set<Label> descendants = new HashSet<>();
+        Iterator<Label> si = label.descendantIterator();
+        while (si.hasNext()) {
+            Label descendant = si.next();
+            assertTrue(descendant.isDescendantOf(label));
+            assertTrue(descendants.add(descendant));
+        }
+        assertEquals(7, descendants.size());
+        assertTrue(descendants.contains(new MultiWordLabel(new long[]{-1L, -1L}, 100)));
+    }
+
+    @Test
+    public void testToString() {
+        MultiWordLabel label = new MultiWordLabel(new long[]{-1L, 0}, 100);
+        assertEquals("0".repeat(36) + "1".repeat(64), label.toString());
+        assertEquals("", new MultiWordLabel(new long[0], 0).toString());
+    }
+}
@@ -0,0 +1,40 @@
+package weka.classifiers.lazy.AM.label;
+
+import org.junit.Test;
+
+import weka.classifiers.lazy.AM.TestUtils;
+import weka.classifiers.lazy.AM.label.LabelerFactory.CardinalityBasedLabelerFactory;
+import weka.core.Instances;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MultiWordLabelerTest {
+
+    /**
+     * Test that MultiWordLabeler gives the same labels as BitSetLabeler for data wider than 64 features.
+     */
+    @Test
+    public void testLabelLargeInstance() throws Exception {
+        Instances data = TestUtils.getDataSet(TestUtils.AUDIOLOGY);
+        MultiWordLabeler labeler = new MultiWordLabeler(data.get(0), false, MissingDataCompare.VARIABLE);
+        BitSetLabeler bitSetLabeler = new BitSetLabeler(data.get(0), false, MissingDataCompare.VARIABLE);
+        assertTrue(labeler.getCardinality() > LongLabel.MAX_CARDINALITY);
+        for (int i = 1; i < 10; i++) {
+            Label label = labeler.label(data.get(i));
+            Label expected = bitSetLabeler.label(data.get(i));
+            assertEquals(new MultiWordLabel(expected), label);
+            for (int p = 0; p < labeler.numPartitions(); p++) {
+                assertEquals(bitSetLabeler.partition(expected, p), labeler.partition(label, p));
+            }
+        }
+    }
+
+    @Test
+    public void testChosenForLargeCardinality() throws Exception {
+        Instances data = TestUtils.getDataSet(TestUtils.AUDIOLOGY);
+        Labeler labeler = new CardinalityBasedLabelerFactory().createLabeler(data.get(0), false,
+            MissingDataCompare.VARIABLE);
+        assertTrue(labeler instanceof MultiWordLabeler);
+    }
+}
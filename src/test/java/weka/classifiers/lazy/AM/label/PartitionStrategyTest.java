@@ -0,0 +1,65 @@
+package weka.classifiers.lazy.AM.label;
+
+import org.junit.Test;
+import weka.classifiers.lazy.AM.TestUtils;
+import weka.classifiers.lazy.AM.data.SubcontextList;
+import weka.core.Instances;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PartitionStrategyTest {
+
+	private static SubcontextList getSubList() throws Exception {
+		Instances data = TestUtils.getDataSet(TestUtils.SOYBEAN);
+		Labeler labeler = new LongLabeler(data.get(0), false, MissingDataCompare.VARIABLE);
+		return new SubcontextList(labeler, data, false);
+	}
+
+	@Test
+	public void testContiguous() throws Exception {
+		SubcontextList subList = getSubList();
+		assertEquals(subList.getLabeler().getPartitioning(), PartitionStrategy.CONTIGUOUS.partition(subList));
+	}
+
+	/**
+	 * Correlated partitions should have the same sizes as the labeler's partitions.
+	 */
+	@Test
+	public void testCorrelatedKeepsSizes() throws Exception {
+		SubcontextList subList = getSubList();
+		LabelPartitioning expected = subList.getLabeler().getPartitioning();
+		LabelPartitioning partitioning = new PartitionStrategy.Correlated().partition(subList);
+		assertEquals(expected.numPartitions(), partitioning.numPartitions());
+		for (int p = 0; p < partitioning.numPartitions(); p++) {
+			assertEquals(expected.getPositions(p).length, partitioning.getPositions(p).length);
+		}
+	}
+
+	@Test
+	public void testCorrelatedGroupsIdenticalPositions() {
+		// positions 0 and 3 always match together, as do 1 and 2
+		Label[] labels = new Label[]{new IntLabel(0b1001, 4), new IntLabel(0b0110, 4), new IntLabel(0b1111, 4),
+				new IntLabel(0b0000, 4), new IntLabel(0b1001, 4)};
+		double[][] correlations = PartitionStrategy.Correlated.correlations(Arrays.asList(labels), 4);
+		assertEquals(1, correlations[0][3], 1e-9);
+		assertEquals(1, correlations[1][2], 1e-9);
+		assertTrue(correlations[0][1] < 1);
+	}
+
+	/**
+	 * The chosen partitioning should be no more costly than the labeler's.
+	 */
+	@Test
+	public void testMinimumProduct() throws Exception {
+		SubcontextList subList = getSubList();
+		LabelPartitioning partitioning = new PartitionStrategy.MinimumProduct().partition(subList);
+		assertEquals(subList.getCardinality(), partitioning.getCardinality());
+		List<Label> labels = PartitionStrategy.labels(subList);
+		assertTrue(PartitionStrategy.MinimumProduct.estimateCost(partitioning, labels)
+				<= PartitionStrategy.MinimumProduct.estimateCost(subList.getLabeler().getPartitioning(), labels));
+	}
+}
@@ -0,0 +1,69 @@
+package weka.classifiers.lazy.AM.lattice;
+
+import org.junit.Test;
+import weka.classifiers.lazy.AM.data.SubcontextList;
+import weka.classifiers.lazy.AM.label.IntLabeler;
+import weka.classifiers.lazy.AM.label.Labeler;
+import weka.classifiers.lazy.AM.label.LongLabeler;
+import weka.classifiers.lazy.AM.label.MissingDataCompare;
+import weka.classifiers.lazy.AM.label.MultiWordLabeler;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BasicLatticeTest {
+	private static final int CARDINALITY = 28;
+
+	/**
+	 * Labels too large for an array of positions are looked up by their bits, skipping the descendants of positions
+	 * which are already heterogeneous; other labels are looked up one descendant at a time. Both should make the same
+	 * lattice.
+	 */
+	@Test
+	public void testPrunedTraversalMatchesFullTraversal() throws Exception {
+		Instances train = mixedOutcomeData();
+		Instance test = train.remove(0);
+		List<String> expected = fill(train, new MultiWordLabeler(test, false, MissingDataCompare.VARIABLE));
+		assertFalse(expected.isEmpty());
+		assertEquals(expected, fill(train, new IntLabeler(test, false, MissingDataCompare.VARIABLE)));
+		assertEquals(expected, fill(train, new LongLabeler(test, false, MissingDataCompare.VARIABLE)));
+	}
+
+	private static List<String> fill(Instances train, Labeler labeler) throws Exception {
+		BasicLattice lattice = new BasicLattice();
+		lattice.fill(new SubcontextList(labeler, train, false));
+		return SupraTableTest.summarize(lattice.getSupracontexts());
+	}
+
+	/**
+	 * @return random exemplars with two outcomes which mostly mismatch the first one, so that each subcontext visits
+	 * few positions
+	 */
+	private static Instances mixedOutcomeData() {
+		ArrayList<Attribute> atts = new ArrayList<>();
+		for (int i = 0; i < CARDINALITY; i++) {
+			atts.add(new Attribute("a" + i, List.of("x", "y")));
+		}
+		atts.add(new Attribute("class", List.of("e", "r")));
+		Instances dataset = new Instances("TestInstances", atts, 0);
+		dataset.setClassIndex(dataset.numAttributes() - 1);
+		Random random = new Random(42);
+		for (int n = 0; n < 60; n++) {
+			double[] datum = new double[CARDINALITY + 1];
+			for (int i = 0; i < CARDINALITY; i++) {
+				// the first exemplar is the test item
+				datum[i] = n == 0 || random.nextInt(4) == 0 ? 0 : 1;
+			}
+			datum[CARDINALITY] = random.nextInt(2);
+			dataset.add(new DenseInstance(1, datum));
+		}
+		return dataset;
+	}
+}
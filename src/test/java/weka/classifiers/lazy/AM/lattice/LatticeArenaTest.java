@@ -0,0 +1,64 @@
+package weka.classifiers.lazy.AM.lattice;
+
+import org.junit.Test;
+import weka.classifiers.lazy.AM.data.Subcontext;
+import weka.classifiers.lazy.AM.label.IntLabel;
+
+import static org.junit.Assert.*;
+
+public class LatticeArenaTest {
+	@Test
+	public void testReleasedArenaIsReused() {
+		LatticeArena arena = LatticeArena.acquire();
+		arena.release();
+		LatticeArena next = LatticeArena.acquire();
+		next.release();
+		assertSame("Thread keeps its arena", arena, next);
+	}
+
+	@Test
+	public void testArenaInUseIsNotShared() {
+		LatticeArena arena = LatticeArena.acquire();
+		LatticeArena nested = LatticeArena.acquire();
+		nested.release();
+		arena.release();
+		assertNotSame("Nested lattice gets its own storage", arena, nested);
+		LatticeArena next = LatticeArena.acquire();
+		next.release();
+		assertSame("The thread's arena is kept", arena, next);
+	}
+
+	@Test
+	public void testStorageIsEmptiedOnRelease() {
+		LatticeArena arena = LatticeArena.acquire();
+		int[] positions = arena.positions(16);
+		positions[3] = 7;
+		arena.<String>labelMap().put(null, "foo");
+		arena.<String>bitsMap().put(5, "bar");
+		arena.<String>zeroCountSupras().add("baz");
+		arena.release();
+
+		arena = LatticeArena.acquire();
+		assertSame("Positions are kept while large enough", positions, arena.positions(8));
+		assertEquals(0, positions[3]);
+		assertTrue(arena.labelMap().isEmpty());
+		assertEquals(0, arena.bitsMap().size());
+		assertTrue(arena.zeroCountSupras().isEmpty());
+		assertTrue("Positions grow as needed", arena.positions(1 << 12).length >= 1 << 12);
+		arena.release();
+	}
+
+	@Test
+	public void testTableIsReset() {
+		LatticeArena arena = LatticeArena.acquire();
+		SupraTable table = arena.table();
+		table.insertAfter(SupraTable.EMPTY, new Subcontext(new IntLabel(0, 1), "foo"), 0);
+		assertNotEquals(SupraTable.EMPTY, table.getNext(SupraTable.EMPTY));
+		arena.release();
+
+		arena = LatticeArena.acquire();
+		assertSame(table, arena.table());
+		assertEquals("Only the empty supracontext is left", SupraTable.EMPTY, table.getNext(SupraTable.EMPTY));
+		arena.release();
+	}
+}
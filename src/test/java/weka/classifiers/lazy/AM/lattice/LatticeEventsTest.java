@@ -0,0 +1,74 @@
+package weka.classifiers.lazy.AM.lattice;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Test;
+import weka.classifiers.lazy.AM.TestUtils;
+import weka.classifiers.lazy.AM.data.SubcontextList;
+import weka.classifiers.lazy.AM.label.IntLabeler;
+import weka.classifiers.lazy.AM.label.MissingDataCompare;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the Java Flight Recorder events emitted by the lattices.
+ */
+public class LatticeEventsTest {
+
+	@Test
+	public void testEvents() throws Exception {
+		Instances train = TestUtils.getDataSet(TestUtils.FINNVERB);
+		Instance test = train.remove(0);
+		SubcontextList subList = new SubcontextList(new IntLabeler(test, false, MissingDataCompare.VARIABLE), train, false);
+
+		List<RecordedEvent> events;
+		Path file = Files.createTempFile("lattice", ".jfr");
+		try (Recording recording = new Recording()) {
+			recording.enable(LatticeFillEvent.class).withThreshold(Duration.ZERO);
+			recording.enable(LatticeProductEvent.class).withThreshold(Duration.ZERO);
+			recording.enable(JJApproximationEvent.class).withThreshold(Duration.ZERO);
+			recording.start();
+			new BasicLattice().fill(subList);
+			new DistributedLattice(ForkJoinPool.commonPool()).fill(subList);
+			new JohnsenJohanssonLattice(TestUtils.getDeterministicRandomProvider()).fill(subList);
+			recording.stop();
+			recording.dump(file);
+			events = RecordingFile.readAllEvents(file);
+		} finally {
+			Files.delete(file);
+		}
+
+		List<RecordedEvent> fills = ofType(events, "weka.classifiers.lazy.AM.LatticeFill");
+		List<String> engines = fills.stream().map(e -> e.getString("engine")).collect(Collectors.toList());
+		assertTrue(engines.toString(), engines.contains("BasicLattice"));
+		assertTrue(engines.toString(), engines.contains("DistributedLattice"));
+		assertTrue(engines.toString(), engines.contains("JohnsenJohanssonLattice"));
+		// one per partition of the distributed lattice
+		assertEquals(engines.toString(), 2, engines.stream().filter("HeterogeneousLattice"::equals).count());
+		for (RecordedEvent fill : fills) {
+			assertEquals(subList.size(), fill.getInt("subcontexts"));
+			assertEquals(subList.getCardinality(), fill.getInt("cardinality"));
+		}
+
+		List<RecordedEvent> products = ofType(events, "weka.classifiers.lazy.AM.LatticeProduct");
+		assertEquals(1, products.size());
+		assertTrue(products.get(0).getBoolean("finalProduct"));
+		assertTrue(products.get(0).getInt("leftSize") > 0);
+
+		assertEquals(subList.size(), ofType(events, "weka.classifiers.lazy.AM.JJApproximation").size());
+	}
+
+	private static List<RecordedEvent> ofType(List<RecordedEvent> events, String name) {
+		return events.stream().filter(e -> e.getEventType().getName().equals(name)).collect(Collectors.toList());
+	}
+}
@@ -0,0 +1,172 @@
+package weka.classifiers.lazy.AM.lattice;
+
+import org.junit.Test;
+import weka.classifiers.lazy.AM.TestUtils;
+import weka.classifiers.lazy.AM.data.SubcontextList;
+import weka.classifiers.lazy.AM.label.IntLabeler;
+import weka.classifiers.lazy.AM.label.Labeler;
+import weka.classifiers.lazy.AM.label.LabelerFactory.CardinalityBasedLabelerFactory;
+import weka.classifiers.lazy.AM.label.LabelerFactory.IntLabelerFactory;
+import weka.classifiers.lazy.AM.label.MissingDataCompare;
+import weka.classifiers.lazy.AM.label.MultiWordLabeler;
+import weka.classifiers.lazy.AM.label.PartitionStrategy;
+import weka.classifiers.lazy.AM.lattice.LatticePlan.Engine;
+import weka.classifiers.lazy.AnalogicalModeling;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests the lattice choices and cost estimates of {@link LatticePlanner}.
+ */
+public class LatticePlannerTest {
+
+	@Test
+	public void testSmallItemUsesBasicLattice() throws Exception {
+		SubcontextList subList = chapter3SubList();
+
+		LatticePlan plan = new LatticePlanner().plan(subList);
+		assertEquals(Engine.BASIC, plan.getEngine());
+		assertTrue(plan.isExact());
+		assertTrue(plan.createLattice() instanceof BasicLattice);
+		assertEquals(3, plan.getCardinality());
+		assertEquals(subList.size(), plan.getNumSubcontexts());
+		assertEquals(subList.getConsideredExemplarCount(), plan.getNumExemplars());
+		// 210r and 032r match the test item on one attribute, 310e/311r and 212r on two
+		assertArrayEquals(new int[]{0, 2, 2, 0}, plan.getMatchCounts());
+		// 2 * 2^1 + 2 * 2^2
+		assertEquals(12, plan.getEstimatedCost(Engine.BASIC), 0);
+		// a single partition cannot be distributed
+		assertEquals(1, plan.getNumPartitions());
+		assertEquals(Double.POSITIVE_INFINITY, plan.getEstimatedCost(Engine.DISTRIBUTED), 0);
+		assertEquals(-1, plan.getNumConcepts(), 0);
+	}
+
+	@Test
+	public void testLargeExactItemIsExact() throws Exception {
+		LatticePlan plan = explainFirst(TestUtils.SOYBEAN);
+		assertTrue(plan.toString(), plan.isExact());
+		assertTrue(plan.getNumPartitions() > 1);
+	}
+
+	@Test
+	public void testIntractableItemUsesApproximateLattice() throws Exception {
+		LatticePlan plan = explainFirst(TestUtils.AUDIOLOGY);
+		assertEquals(plan.toString(), Engine.JOHNSEN_JOHANSSON, plan.getEngine());
+		assertFalse(plan.isExact());
+		assertTrue(plan.createLattice() instanceof JohnsenJohanssonLattice);
+	}
+
+	@Test
+	public void testExactBudget() throws Exception {
+		Instances data = TestUtils.getDataSet(TestUtils.AUDIOLOGY);
+		Labeler labeler = new CardinalityBasedLabelerFactory().createLabeler(data.get(0), false, MissingDataCompare.VARIABLE);
+		SubcontextList subList = new SubcontextList(labeler, data, true);
+
+		LatticePlan plan = new LatticePlanner(Random::new, ForkJoinPool.commonPool(), 0).plan(subList);
+		assertEquals(Engine.JOHNSEN_JOHANSSON, plan.getEngine());
+		plan = new LatticePlanner(Random::new, ForkJoinPool.commonPool(), Double.POSITIVE_INFINITY).plan(subList);
+		assertTrue(plan.isExact());
+	}
+
+	@Test
+	public void testExactBudgetIgnoredBelowApproximateCardinality() throws Exception {
+		Instances data = TestUtils.getDataSet(TestUtils.FINNVERB);
+		assertTrue(data.numAttributes() - 1 < LatticePlanner.MIN_APPROXIMATE_CARDINALITY);
+		Labeler labeler = new IntLabelerFactory().createLabeler(data.get(0), false, MissingDataCompare.VARIABLE);
+		SubcontextList subList = new SubcontextList(labeler, data, true);
+
+		LatticePlan plan = new LatticePlanner(Random::new, ForkJoinPool.commonPool(), 0).plan(subList);
+		assertTrue(plan.toString(), plan.isExact());
+	}
+
+	@Test
+	public void testEstimateConcepts() throws Exception {
+		SubcontextList subList = chapter3SubList();
+		// the 4 subcontext labels plus the intersection of the two labels with one match, which has no matches
+		LatticePlanner.ConceptEstimate estimate = LatticePlanner.estimateConcepts(subList, 100, new FillMonitor());
+		assertEquals(5, estimate.count, 0);
+		assertFalse(estimate.extrapolated);
+		estimate = LatticePlanner.estimateConcepts(subList, 1, new FillMonitor());
+		assertTrue(estimate.extrapolated);
+		assertTrue(estimate.count >= 2);
+	}
+
+	@Test
+	public void testEstimateConceptsOfAnyLabelType() throws Exception {
+		Instances data = TestUtils.getDataSet(TestUtils.FINNVERB);
+		Instance test = data.remove(0);
+		SubcontextList bits = new SubcontextList(new IntLabeler(test, false, MissingDataCompare.VARIABLE), data, false);
+		SubcontextList words = new SubcontextList(new MultiWordLabeler(test, false, MissingDataCompare.VARIABLE), data,
+				false);
+		LatticePlanner.ConceptEstimate expected = LatticePlanner.estimateConcepts(words, Long.MAX_VALUE, new FillMonitor());
+		assertFalse(expected.extrapolated);
+		assertEquals(expected.count, LatticePlanner.estimateConcepts(bits, Long.MAX_VALUE, new FillMonitor()).count, 0);
+	}
+
+	@Test
+	public void testPlannedDistributedLatticeDoesNotPartitionAgain() throws Exception {
+		Instances data = TestUtils.getDataSet(TestUtils.SOYBEAN);
+		Labeler labeler = new CardinalityBasedLabelerFactory().createLabeler(data.get(0), false,
+				MissingDataCompare.VARIABLE);
+		SubcontextList subList = new SubcontextList(labeler, data, true);
+		AtomicInteger partitionings = new AtomicInteger();
+		PartitionStrategy counting = s -> {
+			partitionings.incrementAndGet();
+			return PartitionStrategy.CONTIGUOUS.partition(s);
+		};
+
+		LatticePlan plan = new LatticePlanner(Random::new, ForkJoinPool.commonPool(),
+				LatticePlanner.DEFAULT_EXACT_BUDGET, counting).plan(subList);
+		assertEquals(plan.toString(), Engine.DISTRIBUTED, plan.getEngine());
+		plan.createLattice().fill(subList);
+		assertEquals(1, partitionings.get());
+	}
+
+	@Test(expected = CancellationException.class)
+	public void testPlanningStopsWhenCancelled() throws Exception {
+		Instances data = TestUtils.getDataSet(TestUtils.SOYBEAN);
+		Labeler labeler = new CardinalityBasedLabelerFactory().createLabeler(data.get(0), false,
+				MissingDataCompare.VARIABLE);
+		FillMonitor monitor = new FillMonitor();
+		monitor.cancel();
+		new LatticePlanner().plan(new SubcontextList(labeler, data, true), monitor);
+	}
+
+	@Test
+	public void testExplain() throws Exception {
+		LatticePlan plan = explainFirst(TestUtils.AUDIOLOGY);
+		String explanation = plan.toString();
+		for (Engine engine : Engine.values()) {
+			assertTrue(explanation, explanation.contains(engine.toString()));
+		}
+		assertTrue(explanation, explanation.startsWith("Lattice plan: " + plan.getEngine()));
+		assertTrue(explanation, explanation.contains("<- chosen"));
+	}
+
+	/**
+	 * @return the subcontexts for classifying the first chapter 3 instance with the rest of them
+	 */
+	private static SubcontextList chapter3SubList() throws Exception {
+		Instances train = TestUtils.getDataSet(TestUtils.CHAPTER_3_DATA);
+		Instance test = train.remove(0);
+		Labeler labeler = new IntLabelerFactory().createLabeler(test, false, MissingDataCompare.MATCH);
+		return new SubcontextList(labeler, train, false);
+	}
+
+	/**
+	 * @return the plan for classifying the first instance of the dataset with the rest of it
+	 */
+	private static LatticePlan explainFirst(String dataSet) throws Exception {
+		Instances data = TestUtils.getDataSet(dataSet);
+		AnalogicalModeling am = new AnalogicalModeling();
+		am.buildClassifier(data);
+		return am.explain(data.get(0));
+	}
+}
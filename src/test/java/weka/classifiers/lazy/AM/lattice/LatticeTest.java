@@ -15,13 +15,17 @@ import weka.classifiers.lazy.AM.label.*;
 import weka.core.Instance;
 import weka.core.Instances;
 
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Supplier;
 
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.not;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assume.assumeThat;
 import static org.mockito.Mockito.mock;
 
@@ -45,23 +49,52 @@ public class LatticeTest {
      * @return A collection of argument arrays for running tests. In each array: <ol> <li>arg[0] is the test name.</li>
      * <li>arg[1] is a supplier of {@link Lattice} test instances.</li> </ol>
      */
+	private static final ForkJoinPool SMALL_POOL = new ForkJoinPool(2);
+
 	@Parameterized.Parameters(name = "{0}")
 	public static Collection<Object[]> instancesToTest() {
 		return List.of(
 				new Object[]{
 						"BasicLattice", (Supplier<Lattice>) BasicLattice::new
 				},
+				new Object[]{
+						"BasicLattice reusing storage", (Supplier<Lattice>) () -> new BasicLattice(null, true)
+				},
+				new Object[]{
+						"BasicLattice filled in parallel", (Supplier<Lattice>) () -> new BasicLattice(SMALL_POOL, 0, false)
+				},
+				new Object[]{
+						"BasicLattice filled in parallel reusing storage", (Supplier<Lattice>) () -> new BasicLattice(SMALL_POOL, 0, true)
+				},
 				new Object[]{
 						"Distributed Lattice", (Supplier<Lattice>) DistributedLattice::new
 				},
+				new Object[]{
+						"Distributed Lattice with a dedicated pool", (Supplier<Lattice>) () -> new DistributedLattice(SMALL_POOL)
+				},
+				new Object[]{
+						"Distributed Lattice with correlated partitions", (Supplier<Lattice>) () -> new DistributedLattice(SMALL_POOL, new PartitionStrategy.Correlated())
+				},
+				new Object[]{
+						"Distributed Lattice with minimum-product partitions", (Supplier<Lattice>) () -> new DistributedLattice(SMALL_POOL, new PartitionStrategy.MinimumProduct())
+				},
+				new Object[]{
+						"Distributed Lattice reusing storage", (Supplier<Lattice>) () -> new DistributedLattice(SMALL_POOL, PartitionStrategy.CONTIGUOUS, true)
+				},
 				new Object[]{
 						"Sparse Lattice", (Supplier<Lattice>) SparseLattice::new
 				},
 				new Object[]{
 						"Johnsen-Johansson Lattice", (Supplier<Lattice>) () -> new JohnsenJohanssonLattice(TestUtils.getDeterministicRandomProvider())
 				},
+				new Object[]{
+						"Johnsen-Johansson Lattice with a dedicated pool", (Supplier<Lattice>) () -> new JohnsenJohanssonLattice(TestUtils.getDeterministicRandomProvider(), SMALL_POOL)
+				},
 				new Object[]{
 						"Heterogeneous Lattice", (Supplier<Lattice>) () -> new HeterogeneousLattice(0)
+				},
+				new Object[]{
+						"Heterogeneous Lattice reusing storage", (Supplier<Lattice>) () -> new HeterogeneousLattice(null, 0, true)
 				});
 	}
 
@@ -138,6 +171,41 @@ public class LatticeTest {
         testSupras(train, 0, expectedSupras);
     }
 
+	@Test
+	public void testFillReportsProgress() throws Exception {
+		SubcontextList subList = finnverbSubList();
+		List<Double> progress = new ArrayList<>();
+		latticeSupplier.get().fill(subList, new FillMonitor(progress::add, null));
+
+		assertTrue("Progress was reported", progress.size() > 1);
+		for (int i = 1; i < progress.size(); i++) {
+			assertTrue("Progress never decreases: " + progress, progress.get(i) >= progress.get(i - 1));
+		}
+		assertEquals(1.0, progress.get(progress.size() - 1), 0);
+	}
+
+	@Test
+	public void testCancelledFillStops() throws Exception {
+		FillMonitor monitor = new FillMonitor();
+		monitor.cancel();
+		exception.expect(CancellationException.class);
+		exception.expectMessage(new StringContains("cancelled"));
+		latticeSupplier.get().fill(finnverbSubList(), monitor);
+	}
+
+	@Test
+	public void testFillStopsAtDeadline() throws Exception {
+		exception.expect(CancellationException.class);
+		exception.expectMessage(new StringContains("ran out of time"));
+		latticeSupplier.get().fill(finnverbSubList(), new FillMonitor(null, Duration.ZERO));
+	}
+
+	private SubcontextList finnverbSubList() throws Exception {
+		Instances train = TestUtils.getReducedDataSet(TestUtils.FINNVERB, "6-10");
+		Instance test = train.remove(0);
+		return new SubcontextList(getFullSplitLabeler(test), train, false);
+	}
+
     /**
      * Test that the given test/train combination yields the given list of
      * supracontexts.
@@ -80,8 +80,22 @@ public class LinkedLatticeNodeTest {
 		assertEquals(BigInteger.ONE, testNode.getCount());
 		testNode.incrementCount();
 		assertEquals(testNode.getCount(), BigInteger.valueOf(2));
-		testNode.decrementCount();
+		assertFalse(testNode.decrementCount());
 		assertEquals(testNode.getCount(), BigInteger.ONE);
+		assertTrue("count reached zero", testNode.decrementCount());
+	}
+
+	@Test
+	public void testCountPastLongRange() {
+		@SuppressWarnings({"rawtypes", "unchecked"}) LinkedLatticeNode testNode = new LinkedLatticeNode(supraSupplier
+				.get());
+		testNode.setCount(Long.MAX_VALUE);
+		testNode.incrementCount();
+		BigInteger big = BigInteger.valueOf(Long.MAX_VALUE).add(BigInteger.ONE);
+		assertEquals(big, testNode.getCount());
+		assertEquals(-1, testNode.getLongCount());
+		assertFalse(testNode.decrementCount());
+		assertEquals(Long.MAX_VALUE, testNode.getLongCount());
 	}
 
 	@Test
@@ -143,6 +157,27 @@ public class LinkedLatticeNodeTest {
 		assertSame(testNode2.getNext(), testNode4);
 		assertSame(testNode4.getNext(), testNode3);
 	}
+
+	@Test
+	@SuppressWarnings({"rawtypes", "unchecked"})
+	public void testUnlink() {
+		LinkedLatticeNode head = new LinkedLatticeNode(supraSupplier.get());
+		head.setNext(head);
+		LinkedLatticeNode node1 = head.insertAfter(new Subcontext(new IntLabel(0b0, 1), "foo"), 1);
+		LinkedLatticeNode node2 = node1.insertAfter(new Subcontext(new IntLabel(0b1, 1), "foo"), 2);
+		node1.copy();
+		assertSame("copying does not change the list", head.getNext(), node1);
+
+		node1.unlink();
+		assertSame(head.getNext(), node2);
+		assertSame("unlinked node keeps its next node", node1.getNext(), node2);
+		node2.unlink();
+		assertSame(head.getNext(), head);
+
+		exception.expect(IllegalStateException.class);
+		node1.unlink();
+	}
+
 	// TODO: test copy, equals and hashCode for correctness regarding next
 	// variable
 }
@@ -0,0 +1,116 @@
+package weka.classifiers.lazy.AM.lattice;
+
+import org.junit.Test;
+import weka.classifiers.lazy.AM.TestUtils;
+import weka.classifiers.lazy.AM.data.Subcontext;
+import weka.classifiers.lazy.AM.data.SubcontextList;
+import weka.classifiers.lazy.AM.data.Supracontext;
+import weka.classifiers.lazy.AM.label.IntLabel;
+import weka.classifiers.lazy.AM.label.IntLabeler;
+import weka.classifiers.lazy.AM.label.MissingDataCompare;
+import weka.classifiers.lazy.AM.label.MultiWordLabel;
+import weka.classifiers.lazy.AM.label.MultiWordLabeler;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class SupraTableTest {
+
+	@Test
+	public void testUseDense() {
+		assertTrue(SupraTable.useDense(SupraTable.ALWAYS_DENSE_CARDINALITY, 1));
+		assertFalse("too few visits", SupraTable.useDense(20, 1000));
+		assertTrue(SupraTable.useDense(20, 1 << 20));
+		assertFalse("too large", SupraTable.useDense(SupraTable.MAX_DENSE_CARDINALITY + 1, Double.MAX_VALUE));
+
+		assertNotNull(SupraTable.toDenseLabel(new IntLabel(0b101, 3)));
+		assertNull(SupraTable.toDenseLabel(new MultiWordLabel(new long[]{0b101}, 3)));
+	}
+
+	@Test
+	public void testSlots() {
+		Subcontext sub1 = new Subcontext(new IntLabel(0b01, 2), "foo");
+		Subcontext sub2 = new Subcontext(new IntLabel(0b10, 2), "foo");
+		SupraTable table = new SupraTable();
+		assertFalse(table.wouldBeHetero(SupraTable.EMPTY, sub1));
+
+		int slot1 = table.insertAfter(SupraTable.EMPTY, sub1, 0);
+		assertEquals(slot1, table.getNext(SupraTable.EMPTY));
+		assertEquals(SupraTable.EMPTY, table.getNext(slot1));
+		assertEquals(1, table.getCount(slot1));
+		assertEquals(0, table.getIndex(slot1));
+		assertEquals(Set.of(sub1), table.getData(slot1));
+
+		int slot2 = table.insertAfter(slot1, sub2, 1);
+		assertEquals(Set.of(sub1, sub2), table.getData(slot2));
+		assertEquals(slot2, table.getNext(slot1));
+
+		table.decrementCount(slot1);
+		table.clean();
+		assertEquals("zero counts are removed", slot2, table.getNext(SupraTable.EMPTY));
+		assertEquals("removed slots are reused", slot1, table.insertAfter(slot2, sub1, 2));
+	}
+
+	/**
+	 * The same lattice should be made with an array of positions (for {@link IntLabel IntLabels}) and with a map (for
+	 * other labels).
+	 */
+	@Test
+	public void testDenseAndMapFillsAgree() throws Exception {
+		Instances train = TestUtils.getDataSet(TestUtils.FINNVERB);
+		Instance test = train.remove(0);
+		SubcontextList denseSubs = new SubcontextList(new IntLabeler(test, false, MissingDataCompare.VARIABLE), train,
+				false);
+		SubcontextList mapSubs = new SubcontextList(new MultiWordLabeler(test, false, MissingDataCompare.VARIABLE), train,
+				false);
+		BasicLattice dense = new BasicLattice();
+		dense.fill(denseSubs);
+		BasicLattice map = new BasicLattice();
+		map.fill(mapSubs);
+		assertFalse(dense.getSupracontexts().isEmpty());
+		assertEquals(summarize(map.getSupracontexts()), summarize(dense.getSupracontexts()));
+	}
+
+	/**
+	 * Filling a lattice in shards on several threads should make the same supracontexts as filling it on one.
+	 */
+	@Test
+	public void testParallelAndSequentialFillsAgree() throws Exception {
+		Instances train = TestUtils.getDataSet(TestUtils.FINNVERB);
+		Instance test = train.remove(0);
+		SubcontextList subs = new SubcontextList(new IntLabeler(test, false, MissingDataCompare.VARIABLE), train, false);
+		BasicLattice sequential = new BasicLattice();
+		sequential.fill(subs);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			BasicLattice parallel = new BasicLattice(pool, 0, false);
+			parallel.fill(subs);
+			assertEquals(summarize(sequential.getSupracontexts()), summarize(parallel.getSupracontexts()));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * @return the count and exemplars of each supracontext, sorted; the labels of the two lattices differ
+	 */
+	static List<String> summarize(Set<Supracontext> supras) {
+		List<String> summaries = new ArrayList<>();
+		for (Supracontext supra : supras) {
+			List<String> exemplars = new ArrayList<>();
+			for (Subcontext sub : supra.getData()) {
+				sub.getExemplars().forEach(e -> exemplars.add(e.toString()));
+			}
+			exemplars.sort(null);
+			summaries.add(supra.getCount() + "x" + exemplars);
+		}
+		summaries.sort(null);
+		return summaries;
+	}
+}
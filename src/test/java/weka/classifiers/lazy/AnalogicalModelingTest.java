@@ -19,14 +19,35 @@ package weka.classifiers.lazy;
 import junit.framework.TestSuite;
 import org.junit.Assert;
 import weka.classifiers.AbstractClassifierTest;
+import weka.classifiers.lazy.AM.AMStats;
+import weka.classifiers.lazy.AM.AMStats.Phase;
+import weka.classifiers.lazy.AM.CacheEvictionPolicy;
+import weka.classifiers.lazy.AM.PartitionMethod;
 import weka.classifiers.lazy.AM.TestUtils;
+import weka.classifiers.lazy.AM.TimeLimitAction;
+import weka.classifiers.lazy.AM.data.AMResults;
+import weka.classifiers.lazy.AM.data.SubcontextOrdering;
 import weka.classifiers.lazy.AM.label.MissingDataCompare;
 import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.SelectedTag;
+import weka.core.Utils;
 
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+import java.lang.management.ManagementFactory;
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
 
 import static weka.classifiers.lazy.AnalogicalModeling.TAGS_MISSING;
 
@@ -134,7 +155,7 @@ public class AnalogicalModelingTest extends AbstractClassifierTest {
         }, am.getResults().getClassPointers());
     }
 
-    // larger set that forces use of BitSetLabel and JohnsenJohansson lattice
+    // larger set that forces use of MultiWordLabel and JohnsenJohansson lattice
     // without JohnsenJohansson, this ends with "java.lang.OutOfMemoryError: GC overhead limit exceeded"
     public void testAudiology() throws Exception {
         Instances train = TestUtils.getDataSet(TestUtils.AUDIOLOGY);
@@ -142,6 +163,225 @@ public class AnalogicalModelingTest extends AbstractClassifierTest {
         assertTrue("Leave-one-out accuracy on audiology dataset should be >= 155; was " + numCorrect, numCorrect >= 155);
     }
 
+    public void testDistributionsForInstancesMatchesSequentialClassification() throws Exception {
+        Instances data = TestUtils.getDataSet(TestUtils.FINNVERB);
+        Instances train = new Instances(data, 0, 100);
+        Instances test = new Instances(data, 100, data.numInstances() - 100);
+        AnalogicalModeling am = getClassifier();
+        am.buildClassifier(train);
+        assertTrue(am.implementsMoreEfficientBatchPrediction());
+
+        double[][] batch = am.distributionsForInstances(test);
+        assertEquals("One distribution per test item", test.numInstances(), batch.length);
+        Assert.assertEquals("Results are kept for the last item in the batch",
+                test.lastInstance(), am.getResults().getClassifiedEx());
+        for (int i = 0; i < test.numInstances(); i++) {
+            Assert.assertArrayEquals("Class distribution for item " + i,
+                    am.distributionForInstance(test.get(i)), batch[i], DELTA);
+        }
+    }
+
+    public void testConcurrentClassifyWithResults() throws Exception {
+        Instances data = TestUtils.getDataSet(TestUtils.FINNVERB);
+        Instances train = new Instances(data, 0, 100);
+        Instances test = new Instances(data, 100, data.numInstances() - 100);
+        AnalogicalModeling am = getClassifier();
+        am.buildClassifier(train);
+
+        List<AMResults> expected = new ArrayList<>();
+        for (Instance instance : test) {
+            expected.add(am.classifyWithResults(instance));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<AMResults>> futures = new ArrayList<>();
+            for (Instance instance : test) {
+                futures.add(executor.submit(() -> am.classifyWithResults(instance)));
+            }
+            for (int i = 0; i < test.numInstances(); i++) {
+                AMResults actual = futures.get(i).get();
+                assertSame("Results belong to the item that was classified", test.get(i), actual.getClassifiedEx());
+                Assert.assertEquals("Class pointer counts for item " + i,
+                        expected.get(i).getClassPointers(), actual.getClassPointers());
+                Assert.assertArrayEquals("Class distribution for item " + i,
+                        am.getDistribution(expected.get(i)), am.getDistribution(actual), DELTA);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void testResultsCache() throws Exception {
+        Instances train = TestUtils.getDataSet(TestUtils.CHAPTER_3_DATA);
+        Instance test = train.get(0);
+        AnalogicalModeling am = getClassifier();
+        am.setCacheSize(10);
+        am.buildClassifier(train);
+
+        double[] first = am.distributionForInstance(test);
+        double[] second = am.distributionForInstance(test);
+        Assert.assertArrayEquals("Cached distribution", first, second, DELTA);
+        assertEquals(1, am.getCacheHits());
+        assertEquals(1, am.getCacheMisses());
+
+        // results depend on the training data
+        am.updateClassifier(train.get(1));
+        am.distributionForInstance(test);
+        assertEquals("updateClassifier invalidates the cache", 2, am.getCacheMisses());
+
+        // and on the options
+        am.setLinearCount(true);
+        double[] linear = am.distributionForInstance(test);
+        assertEquals("changing an option invalidates the cache", 3, am.getCacheMisses());
+        assertEquals(1, am.getCacheHits());
+        AnalogicalModeling uncached = getClassifier();
+        uncached.setLinearCount(true);
+        uncached.buildClassifier(train);
+        uncached.updateClassifier(train.get(1));
+        Assert.assertArrayEquals(uncached.distributionForInstance(test), linear, DELTA);
+
+        am.buildClassifier(train);
+        am.distributionForInstance(test);
+        assertEquals("buildClassifier invalidates the cache", 4, am.getCacheMisses());
+    }
+
+    public void testNumThreads() throws Exception {
+        Instances train = TestUtils.getDataSet(TestUtils.SOYBEAN);
+        Instance test = train.remove(15);
+        AnalogicalModeling am = getClassifier();
+        am.buildClassifier(train);
+        double[] expected = am.distributionForInstance(test);
+
+        for (int numThreads : new int[]{1, 3}) {
+            am.setNumThreads(numThreads);
+            Assert.assertArrayEquals(numThreads + " threads", expected, am.distributionForInstance(test), DELTA);
+        }
+        try {
+            am.setNumThreads(-1);
+            fail("Negative number of threads should be rejected");
+        } catch (IllegalArgumentException e) {
+            assertEquals(3, am.getNumThreads());
+        }
+    }
+
+    public void testSubcontextOrdering() throws Exception {
+        Instances train = TestUtils.getDataSet(TestUtils.FINNVERB);
+        Instance test = train.remove(0);
+        AnalogicalModeling am = getClassifier();
+        am.buildClassifier(train);
+        am.distributionForInstance(test);
+        Map<String, BigInteger> expected = am.getResults().getClassPointers();
+
+        for (SubcontextOrdering ordering : SubcontextOrdering.values()) {
+            am.setSubcontextOrdering(new SelectedTag(ordering.ordinal(), AnalogicalModeling.TAGS_SUBCONTEXT_ORDERING));
+            am.distributionForInstance(test);
+            assertEquals(ordering + " ordering", expected, am.getResults().getClassPointers());
+        }
+    }
+
+    public void testPruneHeterogeneous() throws Exception {
+        Instances train = TestUtils.getDataSet(TestUtils.SOYBEAN);
+        Instance test = train.remove(15);
+        AnalogicalModeling am = getClassifier();
+        am.buildClassifier(train);
+        am.distributionForInstance(test);
+        AMResults expected = am.getResults();
+
+        am.setPruneHeterogeneous(true);
+        assertTrue("Only exact lattices are pruned", am.explain(test).isExact());
+        assertTrue(expected.getSubList().pruneHeterogeneous().size() < expected.getSubList().size());
+        am.distributionForInstance(test);
+        assertEquals(1, am.getStats().getLatency(Phase.PRUNE).getCount());
+        assertEquals(expected.getClassPointers(), am.getResults().getClassPointers());
+        assertEquals("The results include pruned subcontexts", expected.getSubList().size(),
+            am.getResults().getSubList().size());
+    }
+
+    public void testReuseLatticeStorage() throws Exception {
+        Instances data = TestUtils.getDataSet(TestUtils.FINNVERB);
+        Instances train = new Instances(data, 0, 100);
+        Instances test = new Instances(data, 100, 20);
+        AnalogicalModeling am = getClassifier();
+        am.buildClassifier(train);
+        double[][] expected = am.distributionsForInstances(test);
+
+        AnalogicalModeling reusing = getClassifier();
+        reusing.setReuseLatticeStorage(true);
+        reusing.buildClassifier(train);
+        // each thread reuses its storage for several items
+        for (int i = 0; i < test.numInstances(); i++) {
+            Assert.assertArrayEquals("Item " + i, expected[i], reusing.distributionForInstance(test.get(i)), 1e-10);
+        }
+    }
+
+    public void testTimeLimit() throws Exception {
+        Instances train = TestUtils.getDataSet(TestUtils.SOYBEAN);
+        Instance test = train.remove(15);
+        AnalogicalModeling am = getClassifier();
+        am.buildClassifier(train);
+        am.setTimeLimit(1);
+        try {
+            am.distributionForInstance(test);
+            fail("Exact classification of a soybean item should not finish in 1 ms");
+        } catch (TimeoutException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("1 ms"));
+        }
+
+        am.setTimeLimitAction(new SelectedTag(TimeLimitAction.APPROXIMATE.ordinal(), AnalogicalModeling.TAGS_TIME_LIMIT_ACTION));
+        double[] approximate = am.distributionForInstance(test);
+        assertEquals(1, Arrays.stream(approximate).sum(), DELTA);
+        assertEquals("The approximation still predicts the right class", 1, Utils.maxIndex(approximate));
+    }
+
+    public void testStats() throws Exception {
+        Instances train = TestUtils.getDataSet(TestUtils.SOYBEAN);
+        Instance test = train.remove(15);
+        AnalogicalModeling am = getClassifier();
+        am.buildClassifier(train);
+        AMResults results = am.classifyWithResults(test);
+
+        AMStats stats = am.getStats();
+        assertEquals(1, stats.getClassifications());
+        assertEquals(results.getSubList().size(), stats.getSubcontexts().getSum());
+        assertEquals(results.getSupraList().size(), stats.getSupracontexts().getSum());
+        for (Phase phase : new Phase[]{Phase.LABELER, Phase.SUBCONTEXT_LIST, Phase.PLAN, Phase.DISTRIBUTED_FILL,
+            Phase.RESULTS}) {
+            assertEquals(phase.toString(), 1, stats.getLatency(phase).getCount());
+        }
+        assertEquals("Pruning is off", 0, stats.getLatency(Phase.PRUNE).getCount());
+        assertEquals(0, stats.getLatency(Phase.BASIC_FILL).getCount());
+        int numPartitions = results.getSubList().getLabeler().numPartitions();
+        assertEquals(numPartitions, stats.getLatency(Phase.PARTITION_FILL).getCount());
+        assertEquals(numPartitions - 1, stats.getLatency(Phase.PRODUCT).getCount());
+        assertEquals(numPartitions - 1, stats.getProductSizes().getCount());
+        assertTrue(stats.getHeterogeneousPrunes() > 0);
+    }
+
+    public void testJmx() throws Exception {
+        Instances train = TestUtils.getDataSet(TestUtils.CHAPTER_3_DATA);
+        AnalogicalModeling am = getClassifier();
+        assertNull(am.getMBeanName());
+        am.setJmx(true);
+        ObjectName name = am.getMBeanName();
+        assertNotNull(name);
+        try {
+            am.buildClassifier(train);
+            am.distributionForInstance(train.get(0));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            assertEquals(1L, server.getAttribute(name, "Classifications"));
+            CompositeData subcontexts = (CompositeData) server.getAttribute(name, "Subcontexts");
+            assertEquals(1L, subcontexts.get("count"));
+            assertTrue(server.getAttribute(name, "PhaseLatencies") instanceof TabularData);
+            server.invoke(name, "reset", null, null);
+            assertEquals(0L, server.getAttribute(name, "Classifications"));
+        } finally {
+            am.setJmx(false);
+        }
+        assertNull(am.getMBeanName());
+        assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+    }
+
     public void testGetOptions() {
         AnalogicalModeling am = new AnalogicalModeling();
         Assert.assertArrayEquals("Default options", am.getOptions(), new String[]{"-R", "-M", "variable"});
@@ -151,6 +391,31 @@ public class AnalogicalModelingTest extends AbstractClassifierTest {
         am.setLinearCount(true);
         am.setIgnoreUnknowns(true);
         Assert.assertArrayEquals("Custom options", am.getOptions(), new String[]{"-L", "-I", "-M", "mismatch"});
+
+        am.setNumThreads(2);
+        am.setCacheSize(100);
+        am.setCacheWeight(5000);
+        am.setCachePolicy(new SelectedTag(CacheEvictionPolicy.FIFO.ordinal(), AnalogicalModeling.TAGS_CACHE_POLICY));
+        am.setTimeLimit(1000);
+        am.setJmx(true);
+        am.setTimeLimitAction(new SelectedTag(TimeLimitAction.APPROXIMATE.ordinal(), AnalogicalModeling.TAGS_TIME_LIMIT_ACTION));
+        am.setPartitionMethod(new SelectedTag(PartitionMethod.CORRELATED.ordinal(), AnalogicalModeling.TAGS_PARTITION_METHOD));
+        am.setSubcontextOrdering(new SelectedTag(SubcontextOrdering.RARE_OUTCOMES.ordinal(), AnalogicalModeling.TAGS_SUBCONTEXT_ORDERING));
+        am.setPruneHeterogeneous(true);
+        am.setReuseLatticeStorage(true);
+        String[] extraOptions = new String[]{"-L", "-I", "-M", "mismatch", "-threads", "2", "-cache-size", "100",
+            "-cache-weight", "5000", "-cache-policy", "fifo", "-time-limit", "1000", "-time-limit-action", "approximate",
+            "-partition-method", "correlated", "-subcontext-order", "rare-outcomes",
+            "-prune-heterogeneous", "-reuse-lattice-storage", "-jmx"};
+        Assert.assertArrayEquals("Thread, cache and time limit options", extraOptions, am.getOptions());
+
+        AnalogicalModeling parsed = new AnalogicalModeling();
+        // -R is on by default and has no option to turn it off
+        parsed.setRemoveTestExemplar(false);
+        parsed.setOptions(extraOptions.clone());
+        Assert.assertArrayEquals("Parsed thread, cache and time limit options", extraOptions, parsed.getOptions());
+        am.setJmx(false);
+        parsed.setJmx(false);
     }
 
     public static junit.framework.Test suite() {